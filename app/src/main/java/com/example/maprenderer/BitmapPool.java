@@ -0,0 +1,51 @@
+package com.example.maprenderer;
+
+import android.graphics.Bitmap;
+
+import java.util.ArrayDeque;
+
+public class BitmapPool {
+    private final int width;
+    private final int height;
+    private final int maxSize;
+    private final ArrayDeque<Bitmap> pool;
+    private Bitmap.Config config;
+
+    public BitmapPool(int width, int height, Bitmap.Config config, int maxSize) {
+        this.width = width;
+        this.height = height;
+        this.config = config;
+        this.maxSize = maxSize;
+        this.pool = new ArrayDeque<>(maxSize);
+    }
+
+    public synchronized Bitmap acquire() {
+        Bitmap bitmap = pool.poll();
+        return bitmap != null ? bitmap : Bitmap.createBitmap(width, height, config);
+    }
+    public synchronized void release(Bitmap bitmap) {
+        if (bitmap == null || bitmap.isRecycled()) return;
+        if (!bitmap.isMutable() || bitmap.getConfig() != config || pool.size() >= maxSize
+                || bitmap.getAllocationByteCount() < width * height * bytesPerPixel(config)) {
+            bitmap.recycle();
+            return;
+        }
+        pool.push(bitmap);
+    }
+    public synchronized void setConfig(Bitmap.Config config) {
+        if (this.config == config) return;
+        this.config = config;
+        for (Bitmap bitmap : pool) bitmap.recycle();
+        pool.clear();
+    }
+    public synchronized Bitmap.Config config() {
+        return config;
+    }
+    public synchronized int size() {
+        return pool.size();
+    }
+
+    public static int bytesPerPixel(Bitmap.Config config) {
+        return config == Bitmap.Config.RGB_565 ? 2 : 4;
+    }
+}
@@ -0,0 +1,120 @@
+package com.example.maprenderer;
+
+/**
+ * AIMD limit for concurrent tile downloads. Each window of completions the limit grows by one
+ * while smoothed latency stays near the best latency seen recently, and shrinks by a quarter when
+ * latency inflates or a download fails, i.e. when extra requests only queue behind each other.
+ * Throughput is measured per window and smoothed. Fed by TileHttpClient, whose timings leave out
+ * the wait for a host permit, so the limit does not back off from queueing of its own making.
+ */
+public class FetchConcurrency implements TileHttpClient.RequestListener {
+    public static final int DEFAULT_MIN_LIMIT = 2;
+    public static final int DEFAULT_MAX_LIMIT = 16;
+    private static final int UNKNOWN_LINK_LIMIT = 4;
+    private static final double LATENCY_TOLERANCE = 2.0;
+    private static final double DECREASE_FACTOR = 0.75;
+    private static final double LATENCY_SMOOTHING = 0.2;
+    private static final double THROUGHPUT_SMOOTHING = 0.3;
+    private static final long BASELINE_WINDOW_NANOS = 30_000_000_000L;
+    private static final double ASSUMED_TILE_KBITS = 24 * 8;
+    private static final double ASSUMED_RTT_SECONDS = 0.15;
+
+    private final int minLimit;
+    private final int maxLimit;
+    private volatile int limit;
+    private volatile long throughputBytesPerSecond;
+    private double smoothedLatencyNanos;
+    private long baselineLatencyNanos = Long.MAX_VALUE;
+    private long baselineStartNanos;
+    private int windowSamples;
+    private long windowBytes;
+    private long windowStartNanos = -1;
+    private boolean windowFailed;
+
+    public FetchConcurrency() {
+        this(DEFAULT_MIN_LIMIT, DEFAULT_MAX_LIMIT, UNKNOWN_LINK_LIMIT);
+    }
+    public FetchConcurrency(int minLimit, int maxLimit, int initialLimit) {
+        if (minLimit < 1 || maxLimit < minLimit) throw new IllegalArgumentException("Invalid limits " + minLimit + ".." + maxLimit);
+        this.minLimit = minLimit;
+        this.maxLimit = maxLimit;
+        this.limit = clamp(initialLimit);
+    }
+
+    // Little's law: requests in flight = tiles per second the link carries * round trip time.
+    public static int initialLimit(double bandwidthKbps, int minLimit, int maxLimit) {
+        if (!(bandwidthKbps > 0)) return Math.max(minLimit, Math.min(maxLimit, UNKNOWN_LINK_LIMIT));
+        long limit = Math.round(bandwidthKbps / ASSUMED_TILE_KBITS * ASSUMED_RTT_SECONDS);
+        return (int) Math.max(minLimit, Math.min(maxLimit, limit));
+    }
+
+    public int limit() {
+        return limit;
+    }
+    public int minLimit() {
+        return minLimit;
+    }
+    public int maxLimit() {
+        return maxLimit;
+    }
+    public long throughputBytesPerSecond() {
+        return throughputBytesPerSecond;
+    }
+    public synchronized long latencyNanos() {
+        return (long) smoothedLatencyNanos;
+    }
+    public synchronized void reset(int initialLimit) {
+        limit = clamp(initialLimit);
+        smoothedLatencyNanos = 0;
+        baselineLatencyNanos = Long.MAX_VALUE;
+        windowSamples = 0;
+        windowBytes = 0;
+        windowStartNanos = -1;
+        windowFailed = false;
+    }
+
+    @Override
+    public synchronized void onSuccess(long latencyNanos, int bytes, long nowNanos) {
+        startWindow(nowNanos, latencyNanos);
+        smoothedLatencyNanos = smoothedLatencyNanos == 0 ? latencyNanos
+                : smoothedLatencyNanos + LATENCY_SMOOTHING * (latencyNanos - smoothedLatencyNanos);
+        if (nowNanos - baselineStartNanos > BASELINE_WINDOW_NANOS) {
+            // Let the baseline rise again after a route or network change.
+            baselineLatencyNanos = (long) smoothedLatencyNanos;
+            baselineStartNanos = nowNanos;
+        }
+        baselineLatencyNanos = Math.min(baselineLatencyNanos, latencyNanos);
+        windowBytes += bytes;
+        if (++windowSamples >= limit) endWindow(nowNanos);
+    }
+    @Override
+    public synchronized void onFailure(long nowNanos) {
+        startWindow(nowNanos, 0);
+        windowFailed = true;
+        if (++windowSamples >= limit) endWindow(nowNanos);
+    }
+
+    private void startWindow(long nowNanos, long latencyNanos) {
+        if (windowStartNanos >= 0) return;
+        windowStartNanos = nowNanos - latencyNanos;
+        if (baselineLatencyNanos == Long.MAX_VALUE) baselineStartNanos = nowNanos;
+    }
+    private void endWindow(long nowNanos) {
+        long duration = nowNanos - windowStartNanos;
+        if (duration > 0 && windowBytes > 0) {
+            double sample = windowBytes * 1e9 / duration;
+            long previous = throughputBytesPerSecond;
+            throughputBytesPerSecond = previous == 0 ? (long) sample
+                    : (long) (previous + THROUGHPUT_SMOOTHING * (sample - previous));
+        }
+        boolean congested = windowFailed || smoothedLatencyNanos > baselineLatencyNanos * LATENCY_TOLERANCE;
+        limit = congested ? clamp((int) (limit * DECREASE_FACTOR)) : clamp(limit + 1);
+        windowSamples = 0;
+        windowBytes = 0;
+        windowStartNanos = -1;
+        windowFailed = false;
+    }
+    private int clamp(int value) {
+        return Math.max(minLimit, Math.min(maxLimit, value));
+    }
+}
@@ -0,0 +1,49 @@
+package com.example.maprenderer;
+
+/**
+ * Sums the touch input of one vsync interval so MapController publishes a single Viewport per
+ * frame instead of one per touch event: pan deltas add up, scale factors multiply and the latest
+ * focus wins. Not thread-safe; touch events and the Choreographer callback share the UI thread.
+ */
+public class GestureAccumulator {
+    private float deltaX;
+    private float deltaY;
+    private float scaleFactor = 1f;
+    private float focusX;
+    private float focusY;
+    private boolean pending;
+
+    public void addMove(float deltaX, float deltaY) {
+        this.deltaX += deltaX;
+        this.deltaY += deltaY;
+        pending = true;
+    }
+    public void addZoom(float scaleFactor, float focusX, float focusY) {
+        if (!(scaleFactor > 0)) return;
+        this.scaleFactor *= scaleFactor;
+        this.focusX = focusX;
+        this.focusY = focusY;
+        pending = true;
+    }
+    public boolean isPending() {
+        return pending;
+    }
+
+    // Applies the accumulated input and starts a new interval; returns true when the view moved.
+    public boolean flush(MapController controller, int viewWidth, int viewHeight, long nowNanos) {
+        if (!pending) return false;
+        boolean changed = false;
+        if (deltaX != 0 || deltaY != 0) {
+            controller.pan(deltaX, deltaY, viewWidth, viewHeight, nowNanos);
+            changed = true;
+        }
+        if (scaleFactor != 1f) {
+            changed |= controller.zoom(scaleFactor, focusX, focusY, viewWidth, viewHeight, nowNanos);
+        }
+        deltaX = 0;
+        deltaY = 0;
+        scaleFactor = 1f;
+        pending = false;
+        return changed;
+    }
+}
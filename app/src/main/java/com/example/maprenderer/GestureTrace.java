@@ -0,0 +1,129 @@
+package com.example.maprenderer;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Reader;
+import java.io.Writer;
+import java.util.Arrays;
+import java.util.Locale;
+
+/**
+ * Recorded pan and zoom input with timestamps relative to the first event. The text form is one
+ * event per line ("<ms> move <dx> <dy>" or "<ms> zoom <scale> <focusX> <focusY>") after a
+ * "# view <w> <h>" header, so traces captured on a device can be replayed by the headless simulator.
+ * A zoom without focus is centered on the view.
+ */
+public class GestureTrace {
+    public static final int MOVE = 0;
+    public static final int ZOOM = 1;
+
+    private final int viewWidth;
+    private final int viewHeight;
+    private long firstNanos = -1;
+    private long[] times = new long[64];
+    private int[] types = new int[64];
+    private float[] values = new float[3 * 64];
+    private int size;
+
+    public GestureTrace(int viewWidth, int viewHeight) {
+        this.viewWidth = viewWidth;
+        this.viewHeight = viewHeight;
+    }
+
+    public synchronized void recordMove(long nowNanos, float deltaX, float deltaY) {
+        add(nowNanos, MOVE, deltaX, deltaY, 0);
+    }
+    public synchronized void recordZoom(long nowNanos, float scaleFactor, float focusX, float focusY) {
+        add(nowNanos, ZOOM, scaleFactor, focusX, focusY);
+    }
+    public int viewWidth() {
+        return viewWidth;
+    }
+    public int viewHeight() {
+        return viewHeight;
+    }
+    public synchronized int size() {
+        return size;
+    }
+    public synchronized long timeNanos(int event) {
+        return times[event];
+    }
+    public synchronized int type(int event) {
+        return types[event];
+    }
+    public synchronized float deltaX(int event) {
+        return values[3 * event];
+    }
+    public synchronized float deltaY(int event) {
+        return values[3 * event + 1];
+    }
+    public synchronized float scaleFactor(int event) {
+        return values[3 * event];
+    }
+    public synchronized float focusX(int event) {
+        return values[3 * event + 1];
+    }
+    public synchronized float focusY(int event) {
+        return values[3 * event + 2];
+    }
+    public synchronized long durationNanos() {
+        return size == 0 ? 0 : times[size - 1];
+    }
+
+    public synchronized void write(Writer out) throws IOException {
+        out.write("# view " + viewWidth + " " + viewHeight + "\n");
+        for (int i = 0; i < size; i++) {
+            double millis = times[i] / 1e6;
+            if (types[i] == MOVE) {
+                out.write(String.format(Locale.ROOT, "%.3f move %.3f %.3f%n", millis, values[3 * i], values[3 * i + 1]));
+            } else {
+                out.write(String.format(Locale.ROOT, "%.3f zoom %.5f %.1f %.1f%n", millis, values[3 * i], values[3 * i + 1], values[3 * i + 2]));
+            }
+        }
+        out.flush();
+    }
+    public static GestureTrace read(Reader in) throws IOException {
+        BufferedReader reader = new BufferedReader(in);
+        String line = reader.readLine();
+        if (line == null || !line.startsWith("# view ")) throw new IOException("Missing trace header");
+        String[] header = line.substring(7).trim().split("\\s+");
+        GestureTrace trace = new GestureTrace(Integer.parseInt(header[0]), Integer.parseInt(header[1]));
+        trace.firstNanos = 0;
+        while ((line = reader.readLine()) != null) {
+            line = line.trim();
+            if (line.isEmpty() || line.startsWith("#")) continue;
+            String[] parts = line.split("\\s+");
+            long nanos = Math.round(Double.parseDouble(parts[0]) * 1e6);
+            try {
+                if (parts[1].equals("move")) {
+                    trace.add(nanos, MOVE, Float.parseFloat(parts[2]), Float.parseFloat(parts[3]), 0);
+                } else if (parts[1].equals("zoom")) {
+                    boolean focused = parts.length >= 5;
+                    trace.add(nanos, ZOOM, Float.parseFloat(parts[2]),
+                            focused ? Float.parseFloat(parts[3]) : trace.viewWidth / 2f,
+                            focused ? Float.parseFloat(parts[4]) : trace.viewHeight / 2f);
+                } else {
+                    throw new IOException("Unknown trace event: " + line);
+                }
+            } catch (ArrayIndexOutOfBoundsException | NumberFormatException e) {
+                throw new IOException("Malformed trace event: " + line, e);
+            }
+        }
+        return trace;
+    }
+
+    private void add(long nowNanos, int type, float a, float b, float c) {
+        if (firstNanos < 0) firstNanos = nowNanos;
+        if (size == times.length) {
+            times = Arrays.copyOf(times, size * 2);
+            types = Arrays.copyOf(types, size * 2);
+            values = Arrays.copyOf(values, size * 6);
+        }
+        times[size] = nowNanos - firstNanos;
+        types[size] = type;
+        values[3 * size] = a;
+        values[3 * size + 1] = b;
+        values[3 * size + 2] = c;
+        size++;
+    }
+}
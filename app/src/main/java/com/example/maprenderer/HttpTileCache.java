@@ -0,0 +1,131 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.TileBuffer;
+
+import java.io.IOException;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+
+/**
+ * Tile store that follows the tile server's caching headers. Each tile has its TileFreshness in a
+ * small metadata store. Expired tiles are still served at once (stale-while-revalidate) and are
+ * revalidated on the background executor with a conditional request, so an unchanged tile costs
+ * a 304 without a body. A failed revalidation keeps the stale tile and is retried later.
+ */
+public class HttpTileCache {
+    public static final long RETRY_AFTER_MILLIS = 10L * 60 * 1000;
+
+    public interface Listener {
+        // The server sent a new body for a stored tile; anything derived from the old one is outdated.
+        void onTileChanged(long key);
+    }
+
+    private final TileStore tiles;
+    private final TileStore metadata;
+    private final TileSource source;
+    private final Executor background;
+    private final LongSupplier clock;
+    private final Set<Long> revalidating = ConcurrentHashMap.newKeySet();
+    private final ThreadLocal<TileBuffer> revalidateBuffer = new ThreadLocal<TileBuffer>() {
+        @Override
+        protected TileBuffer initialValue() {
+            return new TileBuffer(64 * 1024);
+        }
+    };
+    private final AtomicLong revalidations = new AtomicLong();
+    private final AtomicLong changed = new AtomicLong();
+    private volatile Listener listener;
+
+    public HttpTileCache(TileStore tiles, TileStore metadata, TileSource source, Executor background) {
+        this(tiles, metadata, source, background, System::currentTimeMillis);
+    }
+    HttpTileCache(TileStore tiles, TileStore metadata, TileSource source, Executor background, LongSupplier clock) {
+        this.tiles = tiles;
+        this.metadata = metadata;
+        this.source = source;
+        this.background = background;
+        this.clock = clock;
+    }
+
+    public void setListener(Listener listener) {
+        this.listener = listener;
+    }
+    public long revalidationCount() {
+        return revalidations.get();
+    }
+    public long changedCount() {
+        return changed.get();
+    }
+
+    // Reads a stored tile, fresh or not; stale tiles are queued for revalidation.
+    public boolean get(long key, TileBuffer out) throws IOException {
+        if (!tiles.get(key, out)) return false;
+        TileFreshness freshness = freshness(key);
+        if (freshness == null || freshness.isStale(clock.getAsLong())) revalidateLater(key, freshness);
+        return true;
+    }
+    // For tiles served from a copy derived from the stored one, such as the ETC1 transcode.
+    public void revalidateIfStale(long key) throws IOException {
+        TileFreshness freshness = freshness(key);
+        if (freshness != null && freshness.isStale(clock.getAsLong())) revalidateLater(key, freshness);
+    }
+    public TileFreshness download(long key, TileBuffer out) throws IOException {
+        return source.fetch(key, out);
+    }
+    public void put(long key, TileBuffer data, TileFreshness freshness) throws IOException {
+        tiles.put(key, data.array(), data.length());
+        metadata.put(key, freshness.encode());
+    }
+    public void flush() throws IOException {
+        tiles.flush();
+        metadata.flush();
+    }
+    public TileFreshness freshness(long key) throws IOException {
+        byte[] record = metadata.get(key);
+        return record == null ? null : TileFreshness.decode(record);
+    }
+
+    private void revalidateLater(long key, TileFreshness cached) {
+        if (!revalidating.add(key)) return;
+        try {
+            background.execute(() -> {
+                try {
+                    revalidate(key, cached);
+                } finally {
+                    revalidating.remove(key);
+                }
+            });
+        } catch (RuntimeException e) {
+            revalidating.remove(key);
+        }
+    }
+    private void revalidate(long key, TileFreshness cached) {
+        revalidations.incrementAndGet();
+        TileBuffer body = revalidateBuffer.get();
+        try {
+            // Tiles stored before metadata was kept have no validators and are simply downloaded again.
+            TileFreshness response = cached != null && cached.hasValidators()
+                    ? source.fetchIfModified(key, cached, body)
+                    : source.fetch(key, body);
+            if (response.isNotModified()) {
+                metadata.put(key, response.encode());
+                return;
+            }
+            put(key, body, response);
+            changed.incrementAndGet();
+            Listener current = listener;
+            if (current != null) current.onTileChanged(key);
+        } catch (IOException e) {
+            // Keep serving the stale copy, but do not ask again on every read while offline.
+            try {
+                TileFreshness retry = cached != null ? cached : new TileFreshness(null, null, 0);
+                metadata.put(key, retry.withExpiry(clock.getAsLong() + RETRY_AFTER_MILLIS).encode());
+            } catch (IOException ignored) {
+                // the next read retries sooner
+            }
+        }
+    }
+}
@@ -2,6 +2,7 @@ package com.example.maprenderer;
 
 import static androidx.core.content.PermissionChecker.PERMISSION_GRANTED;
 
+import android.app.ActivityManager;
 import android.content.Context;
 import android.content.pm.PackageManager;
 import android.net.ConnectivityManager;
@@ -20,7 +21,6 @@ public class MainActivity extends AppCompatActivity {
     private MapRenderer mapRenderer;
     boolean network;
     double netSpeed;
-    boolean zoomchanged;
     float lastTouchX = 0;
     float lastTouchY = 0;
     Runnable onPermissionGrantedCallback;
@@ -32,16 +32,20 @@ public class MainActivity extends AppCompatActivity {
         checkPermission(() -> {
             initNetwork(this);
             glSurfaceView = new GLSurfaceView(this);
-            glSurfaceView.setEGLContextClientVersion(2);
-            mapRenderer = new MapRenderer(this, glSurfaceView);
+            boolean gles3 = ((ActivityManager) getSystemService(Context.ACTIVITY_SERVICE))
+                    .getDeviceConfigurationInfo().reqGlEsVersion >= 0x30000;
+            glSurfaceView.setEGLContextClientVersion(gles3 ? 3 : 2);
+            mapRenderer = new MapRenderer(this, glSurfaceView, gles3);
+            mapRenderer.setLinkBandwidth(netSpeed);
             glSurfaceView.setRenderer(mapRenderer);
+            glSurfaceView.setRenderMode(GLSurfaceView.RENDERMODE_WHEN_DIRTY);
             setContentView(glSurfaceView);
             scaleGestureDetector = new ScaleGestureDetector(this, new ScaleGestureDetector.SimpleOnScaleGestureListener() {
                 @Override
                 public boolean onScale(ScaleGestureDetector detector) {
                     Log.e("ZoomEvent", "🔍 Gesto detekováno!");
                     Log.e("ZoomEvent", "🔍 Průměrná pozice prstů: X=" + detector.getFocusX() + ", Y=" + detector.getFocusY());
-                    zoomchanged = mapRenderer.handleTouchZoom(detector);
+                    mapRenderer.handleTouchZoom(detector);
                     return true;
                 }
             });
@@ -51,6 +55,7 @@ public class MainActivity extends AppCompatActivity {
     @Override
     protected void onPause() {
         super.onPause();
+        if (mapRenderer != null) mapRenderer.saveViewport();
         glSurfaceView.onPause();
     }
     @Override
@@ -61,7 +66,7 @@ public class MainActivity extends AppCompatActivity {
     @Override
     public boolean onTouchEvent(MotionEvent event) {
         scaleGestureDetector.onTouchEvent(event);
-        if(zoomchanged) return true;
+        if (scaleGestureDetector.isInProgress()) return true;
         float deltaX;
         float deltaY;
         float currentX = event.getX();
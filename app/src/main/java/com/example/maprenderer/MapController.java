@@ -0,0 +1,411 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.TileKey;
+import com.example.maprenderer.util.TileMath;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.LongConsumer;
+
+/**
+ * Frame logic of the map without GL: viewport and gesture handling, visible tile requests,
+ * fallback selection and batch building. MapRenderer drives it on the GL thread; the headless
+ * simulator drives it with a fake tile source and slot allocator. Gestures may arrive on another
+ * thread: they publish immutable Viewports through an atomic reference, and each frame works on
+ * the single snapshot taken by beginFrame().
+ */
+public class MapController {
+    public static final int TILE_SIZE = 256;
+    public static final int MIN_ZOOM = 4;
+    public static final int MAX_ZOOM = 20;
+    public static final int TILES_X = 4;
+    public static final int TILES_Y = 4;
+    public static final int FALLBACK_DEPTH = 3;
+    public static final int PREFETCH_MAX_TILES = 4;
+    private static final float PREFETCH_LOOKAHEAD_SECONDS = 0.6f;
+    private static final long PREFETCH_BANDWIDTH_BYTES = 256L * 1024;
+    static final float DEPTH_TILE = 0.5f;
+    static final float DEPTH_CHILD = 0.4f;
+    static final float DEPTH_ANCESTOR = 0.3f;
+    private static final long RECENTER_NANOS = 600_000_000L;
+    private static final float PAN_DAMPING = 0.8f;
+
+    public interface SlotAllocator {
+        int allocate();
+        void free(int slot);
+    }
+
+    private final int tileBytes;
+    private final SlotAllocator slots;
+    private final TextureCache textureCache;
+    private final TileScheduler tileScheduler;
+    private final TilePrefetcher tilePrefetcher = new TilePrefetcher(PREFETCH_LOOKAHEAD_SECONDS, PREFETCH_MAX_TILES, PREFETCH_BANDWIDTH_BYTES);
+    private final TilePrefetcher.TileFilter cachedTileFilter;
+    private final TileBatch tileBatch;
+    private VectorBatch vectorBatch;
+    private int maxTileZoom = MAX_ZOOM;
+    private final AtomicReference<Viewport> viewport = new AtomicReference<>(new Viewport(15, 0, 0, 0, 0, 1f));
+    private Viewport frame = viewport.get();
+    private volatile boolean userMoved;
+    private long recenterStart;
+    private double recenterFromX, recenterFromY, recenterToX, recenterToY;
+    private int batchVersion = -1;
+    private int batchZ = -1, batchX, batchY;
+    private int drawnVersion = -1;
+    // The window the previous updateVisibleTiles() went through, at the data zoom.
+    private int scannedZoom = -1, scannedOverzoom, scannedX, scannedY;
+    private Viewport drawn;
+    private int missingTiles;
+    private int blankTiles;
+    private LongConsumer drawListener;
+
+    public MapController(int tileBytes, long textureCacheBytes, int maxInFlight, int atlasPageSize, SlotAllocator slots) {
+        this.tileBytes = tileBytes;
+        this.slots = slots;
+        this.textureCache = new TextureCache(textureCacheBytes, (int) (textureCacheBytes / tileBytes),
+                (key, slot) -> this.slots.free(slot));
+        this.tileScheduler = new TileScheduler(maxInFlight, Math.max(TILES_X, TILES_Y) + 2 + PREFETCH_MAX_TILES);
+        this.tileScheduler.setZoomRange(FALLBACK_DEPTH, 1);
+        this.tilePrefetcher.setZoomRange(MIN_ZOOM, MAX_ZOOM);
+        this.cachedTileFilter = textureCache::contains;
+        this.tileBatch = new TileBatch(atlasPageSize, TILE_SIZE);
+    }
+
+    public TextureCache textureCache() {
+        return textureCache;
+    }
+    public TileScheduler scheduler() {
+        return tileScheduler;
+    }
+    public TilePrefetcher prefetcher() {
+        return tilePrefetcher;
+    }
+    public TileBatch batch() {
+        return tileBatch;
+    }
+    public void setDrawListener(LongConsumer listener) {
+        drawListener = listener;
+    }
+    // Vector tile mode: the tiles to draw go to this batch instead of TileBatch.
+    public void setVectorBatch(VectorBatch batch) {
+        vectorBatch = batch;
+        batchVersion = -1;
+    }
+    // Deepest level the tile source has; closer views scale up its tiles instead of requesting more.
+    public void setMaxTileZoom(int zoom) {
+        maxTileZoom = zoom;
+        tilePrefetcher.setZoomRange(MIN_ZOOM, Math.min(zoom, MAX_ZOOM));
+        batchVersion = -1;
+    }
+    // Latest published view; may be newer than the snapshot of the frame being drawn.
+    public Viewport viewport() {
+        return viewport.get();
+    }
+    public int zoom() {
+        return viewport.get().zoom();
+    }
+    public int tileX() {
+        return viewport.get().tileX();
+    }
+    public int tileY() {
+        return viewport.get().tileY();
+    }
+    // GPU scale applied to the tiles of the current level, kept within [1/sqrt(2), sqrt(2)).
+    public float scale() {
+        return viewport.get().scale();
+    }
+    public double zoomLevel() {
+        return viewport.get().zoomLevel();
+    }
+    // World units per screen pixel of the orthographic projection set up by MapRenderer.
+    public static float unitsPerPixel(int viewWidth, int viewHeight) {
+        return viewWidth > viewHeight ? (float) TILES_X * TILE_SIZE / viewWidth : (float) TILES_Y * TILE_SIZE / viewHeight;
+    }
+    public boolean userMoved() {
+        return userMoved;
+    }
+    public int missingTileCount() {
+        return missingTiles;
+    }
+    public int blankTileCount() {
+        return blankTiles;
+    }
+
+    // Applies the adaptive download limit; the prefetch lookahead shrinks with it so that prefetches
+    // never take the slots needed by visible tiles.
+    public void setFetchLimit(int maxInFlight) {
+        if (maxInFlight == tileScheduler.maxInFlight()) return;
+        tileScheduler.setMaxInFlight(maxInFlight);
+        tilePrefetcher.setDepthLimit(maxInFlight - 2);
+    }
+
+    public void setTile(int zoom, int x, int y) {
+        viewport.set(new Viewport(zoom, x, y, 0, 0, 1f));
+    }
+    // Fractional tile coordinates of the screen center, e.g. from TileMath.
+    public void setCenter(int zoom, double x, double y) {
+        viewport.updateAndGet(current -> Viewport.centered(zoom, x, y, current.scale()));
+    }
+    public double centerX() {
+        return viewport.get().centerX();
+    }
+    public double centerY() {
+        return viewport.get().centerY();
+    }
+    public void animateTo(double x, double y, long nowNanos) {
+        recenterFromX = centerX();
+        recenterFromY = centerY();
+        recenterToX = x;
+        recenterToY = y;
+        recenterStart = nowNanos;
+    }
+    public boolean isAnimating() {
+        return recenterStart != 0;
+    }
+
+    // Safe to call from any thread.
+    public void pan(float deltaX, float deltaY, int viewWidth, int viewHeight, long nowNanos) {
+        float normalizedX = -deltaX / viewWidth;
+        float normalizedY = -deltaY / viewHeight;
+        userMoved = true;
+        Viewport current;
+        Viewport next;
+        do {
+            current = viewport.get();
+            next = current.panned(normalizedX * TILE_SIZE * 15 / current.scale() * PAN_DAMPING,
+                    normalizedY * TILE_SIZE * 15 / current.scale() * PAN_DAMPING);
+        } while (!viewport.compareAndSet(current, next));
+        tilePrefetcher.onPan((float) (next.centerX() - current.centerX()), (float) (next.centerY() - current.centerY()), nowNanos);
+    }
+    public boolean zoom(float scaleFactor, long nowNanos) {
+        return zoomAround(scaleFactor, 0, 0, nowNanos);
+    }
+    // Continuous pinch zoom: the tiles are scaled on the GPU around the focus point (screen pixels)
+    // and the tile level only changes when the scale crosses sqrt(2) either way.
+    public boolean zoom(float scaleFactor, float focusX, float focusY, int viewWidth, int viewHeight, long nowNanos) {
+        float unitsPerPixel = unitsPerPixel(viewWidth, viewHeight);
+        return zoomAround(scaleFactor, (focusX - viewWidth / 2f) * unitsPerPixel / TILE_SIZE,
+                (focusY - viewHeight / 2f) * unitsPerPixel / TILE_SIZE, nowNanos);
+    }
+
+    // Takes the viewport snapshot the rest of the frame works on; call once per frame on the GL thread.
+    public Viewport beginFrame(long nowNanos) {
+        tileScheduler.setTime(nowNanos);
+        animate(nowNanos);
+        frame = viewport.get();
+        return frame;
+    }
+    private void animate(long nowNanos) {
+        if (recenterStart == 0) return;
+        if (userMoved) {
+            recenterStart = 0;
+            return;
+        }
+        double t = Math.min(1.0, (double) (nowNanos - recenterStart) / RECENTER_NANOS);
+        double eased = t * t * (3 - 2 * t);
+        double x = recenterFromX + (recenterToX - recenterFromX) * eased;
+        double y = recenterFromY + (recenterToY - recenterFromY) * eased;
+        viewport.updateAndGet(current -> Viewport.centered(current.zoom(), x, y, current.scale()));
+        if (t == 1.0) recenterStart = 0;
+    }
+    public int dispatch(TileScheduler.Dispatcher dispatcher) {
+        return tileScheduler.dispatch(dispatcher);
+    }
+    public void updateVisibleTiles() {
+        int zoom = frame.zoom();
+        int tileX = frame.tileX();
+        int tileY = frame.tileY();
+        int overzoom = Math.max(0, zoom - maxTileZoom);
+        int dataZoom = zoom - overzoom;
+        tileScheduler.setViewport(dataZoom, tileX >> overzoom, tileY >> overzoom);
+        for (int x = -TILES_X; x < TILES_X; x++) {
+            for (int y = -TILES_Y; y < TILES_Y; y++) {
+                int visibleX = tileX + x;
+                int visibleY = tileY + y;
+                if (!TileKey.isValid(zoom, visibleX, visibleY)) continue;
+                long key = TileKey.of(dataZoom, visibleX >> overzoom, visibleY >> overzoom);
+                if (!lookUp(key)) tileScheduler.request(key, TileScheduler.PRIORITY_VISIBLE);
+            }
+        }
+        keepFallbackPyramid(dataZoom, tileX >> overzoom, tileY >> overzoom);
+        scannedZoom = dataZoom;
+        scannedOverzoom = overzoom;
+        scannedX = tileX;
+        scannedY = tileY;
+    }
+    // Returns true when the batch was rebuilt and its vertices need uploading.
+    public boolean rebuildBatch() {
+        int zoom = frame.zoom();
+        int tileX = frame.tileX();
+        int tileY = frame.tileY();
+        if (batchVersion == textureCache.version() && batchZ == zoom && batchX == tileX && batchY == tileY) return false;
+        batchVersion = textureCache.version();
+        batchZ = zoom;
+        batchX = tileX;
+        batchY = tileY;
+        missingTiles = 0;
+        blankTiles = 0;
+        tileBatch.reset();
+        if (vectorBatch != null) vectorBatch.reset();
+        for (int x = -TILES_X; x < TILES_X; x++) {
+            for (int y = -TILES_Y; y < TILES_Y; y++) {
+                int visibleX = tileX + x;
+                int visibleY = tileY + y;
+                if (!TileKey.isValid(zoom, visibleX, visibleY)) continue;
+                addTile(TileKey.of(zoom, visibleX, visibleY), x * TILE_SIZE, -y * TILE_SIZE);
+            }
+        }
+        tileBatch.finish();
+        return true;
+    }
+    // True when the view or the texture cache changed since the previous call, i.e. the frame about
+    // to be drawn differs from the last one. Frames where this is false are idle redraws.
+    public boolean frameChanged() {
+        if (drawnVersion == textureCache.version() && frame.sameView(drawn)) return false;
+        drawnVersion = textureCache.version();
+        drawn = frame;
+        return true;
+    }
+    public void prefetch(long nowNanos) {
+        int overzoom = Math.max(0, frame.zoom() - maxTileZoom);
+        tilePrefetcher.prefetch(frame.zoom() - overzoom, frame.tileX() >> overzoom, frame.tileY() >> overzoom,
+                TILES_X, TILES_Y, nowNanos, tileScheduler, cachedTileFilter);
+    }
+
+    public void onTileFailed(long key, long nowNanos) {
+        tileScheduler.fail(key, nowNanos);
+    }
+    // Allocates a texture slot for a loaded tile, evicting least recently used tiles when full.
+    public int allocateSlot() {
+        int slot = slots.allocate();
+        while (slot == TextureCache.NO_TEXTURE && textureCache.evictEldest()) {
+            slot = slots.allocate();
+        }
+        return slot;
+    }
+    public void onTileLoaded(long key, int slot) {
+        onTileLoaded(key, slot, tileBytes);
+    }
+    // For tiles whose GPU size varies, such as vector tile meshes.
+    public void onTileLoaded(long key, int slot, int bytes) {
+        tileScheduler.complete(key);
+        if (slot != TextureCache.NO_TEXTURE) textureCache.put(key, slot, bytes);
+    }
+
+    // focusX/Y: distance of the focus point from the screen center in tiles at scale 1.
+    private boolean zoomAround(float scaleFactor, double focusX, double focusY, long nowNanos) {
+        if (!(scaleFactor > 0) || scaleFactor == 1f) return false;
+        userMoved = true;
+        Viewport current;
+        Viewport next;
+        do {
+            current = viewport.get();
+            next = current.zoomed(scaleFactor, focusX, focusY);
+            if (next == current) return false;
+        } while (!viewport.compareAndSet(current, next));
+        tilePrefetcher.onZoom(scaleFactor > 1 ? 1 : -1, nowNanos);
+        return true;
+    }
+    private void keepFallbackPyramid(int zoom, int tileX, int tileY) {
+        for (int dz = 1; dz <= FALLBACK_DEPTH && zoom - dz >= MIN_ZOOM; dz++) {
+            int level = zoom - dz;
+            for (int x = (tileX - TILES_X) >> dz; x <= (tileX + TILES_X - 1) >> dz; x++) {
+                for (int y = (tileY - TILES_Y) >> dz; y <= (tileY + TILES_Y - 1) >> dz; y++) {
+                    if (!TileKey.isValid(level, x, y)) continue;
+                    long key = TileKey.of(level, x, y);
+                    if (!lookUp(key)) tileScheduler.request(key, TileScheduler.PRIORITY_VISIBLE);
+                }
+            }
+        }
+    }
+    // Only tiles the view did not need in the previous scan count as texture cache hits or misses;
+    // the ones it keeps needing frame after frame are just kept recently used.
+    private boolean lookUp(long key) {
+        if (wasScanned(key)) return textureCache.touch(key);
+        return textureCache.get(key) != TextureCache.NO_TEXTURE;
+    }
+    private boolean wasScanned(long key) {
+        if (scannedZoom < 0) return false;
+        int level = TileKey.zoom(key);
+        int x = TileKey.x(key);
+        int y = TileKey.y(key);
+        if (level == scannedZoom) {
+            int o = scannedOverzoom;
+            return x >= (scannedX - TILES_X) >> o && x <= (scannedX + TILES_X - 1) >> o
+                    && y >= (scannedY - TILES_Y) >> o && y <= (scannedY + TILES_Y - 1) >> o;
+        }
+        int dz = scannedZoom - level;
+        if (dz < 1 || dz > FALLBACK_DEPTH) return false;
+        int centerX = scannedX >> scannedOverzoom;
+        int centerY = scannedY >> scannedOverzoom;
+        return x >= (centerX - TILES_X) >> dz && x <= (centerX + TILES_X - 1) >> dz
+                && y >= (centerY - TILES_Y) >> dz && y <= (centerY + TILES_Y - 1) >> dz;
+    }
+    private void addTile(long key, float centerX, float centerY) {
+        int overzoom = TileKey.zoom(key) - maxTileZoom;
+        if (overzoom > 0) {
+            // Past the deepest level of the tile source its tiles are scaled up like ancestors.
+            if (addRegion(key, overzoom, centerX, centerY, DEPTH_TILE)) return;
+            missingTiles++;
+            if (!addAncestor(key, centerX, centerY, overzoom)) blankTiles++;
+            return;
+        }
+        int slot = textureCache.peek(key);
+        if (slot != TextureCache.NO_TEXTURE) {
+            addQuad(slot, centerX, centerY, TILE_SIZE, DEPTH_TILE, 1, 0, 0);
+            drawn(key);
+            return;
+        }
+        missingTiles++;
+        int fallbacks = addChildMosaic(key, centerX, centerY);
+        if (!addAncestor(key, centerX, centerY, 0) && fallbacks == 0) blankTiles++;
+    }
+    private int addChildMosaic(long key, float centerX, float centerY) {
+        int level = TileKey.zoom(key) + 1;
+        if (level > MAX_ZOOM) return 0;
+        float childSize = TILE_SIZE / 2f;
+        int added = 0;
+        for (int i = 0; i < 2; i++) {
+            for (int j = 0; j < 2; j++) {
+                long child = TileKey.of(level, 2 * TileKey.x(key) + i, 2 * TileKey.y(key) + j);
+                int slot = textureCache.peek(child);
+                if (slot == TextureCache.NO_TEXTURE) continue;
+                addQuad(slot, centerX + (i - 0.5f) * childSize, centerY - (j - 0.5f) * childSize,
+                        childSize, DEPTH_CHILD, 1, 0, 0);
+                drawn(child);
+                added++;
+            }
+        }
+        return added;
+    }
+    // overzoom: levels between key and the deepest level the tile source has.
+    private boolean addAncestor(long key, float centerX, float centerY, int overzoom) {
+        for (int dz = overzoom + 1; dz <= overzoom + FALLBACK_DEPTH && TileKey.zoom(key) - dz >= 0; dz++) {
+            if (addRegion(key, dz, centerX, centerY, DEPTH_ANCESTOR - (dz - overzoom) * 0.1f)) return true;
+        }
+        return false;
+    }
+    // Draws the part of the tile dz levels up that covers key, if it is loaded.
+    private boolean addRegion(long key, int dz, float centerX, float centerY, float depth) {
+        int x = TileKey.x(key);
+        int y = TileKey.y(key);
+        long ancestor = TileKey.of(TileKey.zoom(key) - dz, x >> dz, y >> dz);
+        int slot = textureCache.peek(ancestor);
+        if (slot == TextureCache.NO_TEXTURE) return false;
+        int mask = (1 << dz) - 1;
+        float regionScale = 1f / (1 << dz);
+        addQuad(slot, centerX, centerY, TILE_SIZE, depth, regionScale, (x & mask) * regionScale, (y & mask) * regionScale);
+        drawn(ancestor);
+        return true;
+    }
+    private void addQuad(int slot, float centerX, float centerY, float size, float depth,
+                         float regionScale, float regionX, float regionY) {
+        if (vectorBatch != null) {
+            vectorBatch.add(slot, centerX, centerY, size, depth, regionScale, regionX, regionY);
+        } else {
+            tileBatch.add(slot, centerX, centerY, size, depth, regionScale, regionX, regionY);
+        }
+    }
+    private void drawn(long key) {
+        if (drawListener != null) drawListener.accept(key);
+    }
+}
@@ -4,22 +4,21 @@ import android.content.Context;
 import android.graphics.Bitmap;
 import android.opengl.GLES20;
 import android.opengl.GLSurfaceView;
-import android.opengl.GLUtils;
 import android.opengl.Matrix;
 import android.util.Log;
+import android.view.Choreographer;
 import android.view.ScaleGestureDetector;
 
+import com.example.maprenderer.util.Etc1;
 import com.example.maprenderer.util.Position;
+import com.example.maprenderer.util.TileKey;
+import com.example.maprenderer.util.TileMath;
+import com.example.maprenderer.util.VectorMesh;
 
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
 import java.nio.FloatBuffer;
 import java.nio.ShortBuffer;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.LinkedList;
-import java.util.Map;
-import java.util.Queue;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 
@@ -27,35 +26,112 @@ import javax.microedition.khronos.egl.EGLConfig;
 import javax.microedition.khronos.opengles.GL10;
 
 public class MapRenderer implements GLSurfaceView.Renderer {
-    private static final int TILE_SIZE = 256;
-    private static final int MIN_ZOOM = 4;
-    private static final int MAX_ZOOM = 20;
+    private static final String TAG = "MapRenderer";
+    private static final int TILE_SIZE = MapController.TILE_SIZE;
+    private static final int TILE_WORKERS = FetchConcurrency.DEFAULT_MAX_LIMIT;
+    private static final long TEXTURE_CACHE_BYTES = 48L * 1024 * 1024;
+    private static final Bitmap.Config TILE_CONFIG = Bitmap.Config.RGB_565;
+    private static final int TILE_TEXTURE_BYTES = TextureCache.textureBytes(TILE_SIZE, TILE_SIZE, BitmapPool.bytesPerPixel(TILE_CONFIG));
+    private static final int COMPRESSED_TILE_BYTES = Etc1.encodedSize(TILE_SIZE, TILE_SIZE);
+    private static final int ATLAS_PAGE_SIZE = 2048;
+    // Rough GPU size of a vector tile mesh, only used to size the cache's bookkeeping.
+    private static final int VECTOR_TILE_BYTES = 128 * 1024;
+    private static final int VECTOR_MAX_TILES = 512;
+    private static final int ATLAS_SLOTS_PER_PAGE = (ATLAS_PAGE_SIZE / TILE_SIZE) * (ATLAS_PAGE_SIZE / TILE_SIZE);
+    private static final int LOCATION_ZOOM = 15;
+    private static final double RECENTER_MAX_TILES = 16;
     private final Position position;
     private final TileLoader tileLoader;
     private GLSurfaceView glSurfaceView;
-    private float offsetX = 0.0f;
-    private float offsetY = 0.0f;
     private final float[] mProjectionMatrix = new float[16];
     private final float[] mModelMatrix = new float[16];
-    private ShortBuffer indexBuffer;
-    private final int tilesX = 4;
-    private final int tilesY = 4;
     private int shaderProgram;
-    FloatBuffer vertexBuffer, texCoordBuffer;
+    FloatBuffer vertexBuffer;
     private int positionHandle, textCoordHandle, mvpMatrixHandle;
-    private final Map<String, Integer> tileTextures = new HashMap<>();
-    private int vboId, txoId;
-    private int lastBoundTexture;
-    private long lastTime = System.nanoTime();
-    private int frameCount = 0;
-    private long lastZoomTime = 0;
-    private final Queue<String> tileLoadQueue = new LinkedList<>();
-    private final ExecutorService tileLoaderExecutor = Executors.newFixedThreadPool(6);
+    private TileAtlas tileAtlas;
+    private final boolean compressedTextures;
+    private final boolean vectorTiles;
+    private VectorLayer vectorLayer;
+    private final VectorBatch vectorBatch = new VectorBatch();
+    private float unitsPerPixel = 1f;
+    private final int tileTextureBytes;
+    private final MapController controller;
+    private final TileBatch tileBatch;
+    private final TextureCache textureCache;
+    private ByteBuffer compressedUpload;
+    private int vboId, iboId;
+    private int indexCapacity;
+    private final RenderMetrics metrics = new RenderMetrics();
+    private final boolean viewportRestored;
+    private boolean firstTileDrawn;
+    private long retryWakeupNanos = Long.MAX_VALUE;
+    private final Runnable requestRender = () -> glSurfaceView.requestRender();
+    private volatile GestureTrace gestureTrace;
+    private final TileScheduler.Dispatcher tileDispatcher = this::fetchTile;
+    private final FetchConcurrency fetchConcurrency;
+    private final ExecutorService tileLoaderExecutor = Executors.newFixedThreadPool(TILE_WORKERS);
+    private final float[] mvpMatrix = new float[16];
+    private final Choreographer choreographer = Choreographer.getInstance();
+    private final GestureAccumulator gestures = new GestureAccumulator();
+    private final Choreographer.FrameCallback applyGestures = this::applyGestures;
+    private boolean gesturesScheduled;
 
-    public MapRenderer(Context context, GLSurfaceView glSurfaceView) {
-        this.tileLoader = new TileLoader(context);
+    // compressedTextures needs a GLES 3 context: tiles are then kept as ETC1 in the cache and in VRAM.
+    // Must be created on the UI thread: touch input is coalesced per vsync with its Choreographer.
+    public MapRenderer(Context context, GLSurfaceView glSurfaceView, boolean compressedTextures) {
+        this(context, glSurfaceView, compressedTextures, false);
+    }
+    // vectorTiles draws Mapbox Vector Tiles, tessellated on the tile workers, instead of raster tiles.
+    public MapRenderer(Context context, GLSurfaceView glSurfaceView, boolean compressedTextures, boolean vectorTiles) {
+        this.vectorTiles = vectorTiles;
+        this.compressedTextures = compressedTextures && !vectorTiles;
+        this.tileTextureBytes = vectorTiles ? VECTOR_TILE_BYTES : this.compressedTextures ? COMPRESSED_TILE_BYTES : TILE_TEXTURE_BYTES;
+        this.controller = new MapController(tileTextureBytes, TEXTURE_CACHE_BYTES, FetchConcurrency.DEFAULT_MIN_LIMIT,
+                ATLAS_PAGE_SIZE, new MapController.SlotAllocator() {
+                    @Override
+                    public int allocate() {
+                        return vectorTiles ? vectorLayer.allocate() : tileAtlas.allocate();
+                    }
+                    @Override
+                    public void free(int slot) {
+                        if (vectorTiles) {
+                            if (vectorLayer != null) vectorLayer.free(slot);
+                        } else if (tileAtlas != null) {
+                            tileAtlas.free(slot);
+                        }
+                    }
+                });
+        this.tileBatch = controller.batch();
+        this.textureCache = controller.textureCache();
+        this.tileLoader = vectorTiles ? TileLoader.forVectorTiles(context, metrics) : new TileLoader(context, metrics);
+        if (vectorTiles) {
+            controller.setVectorBatch(vectorBatch);
+            controller.setMaxTileZoom(TileLoader.VECTOR_MAX_ZOOM);
+        }
+        this.fetchConcurrency = tileLoader.fetchConcurrency();
         this.position = new Position(context);
         this.glSurfaceView = glSurfaceView;
+        this.tileLoader.setOpaqueTiles(TILE_CONFIG == Bitmap.Config.RGB_565);
+        this.metrics.setListener(m -> Log.d(TAG, m.toJson()), 5000);
+        this.viewportRestored = position.restore();
+        this.controller.setTile(position.z, position.x, position.y);
+        this.position.requestNetPosition((latitude, longitude) ->
+                runOnGlThread(() -> recenter(latitude, longitude)));
+    }
+    public RenderMetrics getMetrics() {
+        return metrics;
+    }
+    // Seeds the adaptive download limit from the platform's link estimate; measurements take over from there.
+    public void setLinkBandwidth(double kbps) {
+        fetchConcurrency.reset(FetchConcurrency.initialLimit(kbps, fetchConcurrency.minLimit(), fetchConcurrency.maxLimit()));
+    }
+    public void saveViewport() {
+        Viewport viewport = controller.viewport();
+        position.z = viewport.zoom();
+        position.x = viewport.tileX();
+        position.y = viewport.tileY();
+        position.save();
+        tileLoaderExecutor.execute(tileLoader::flushStores);
     }
     @Override
     public void onSurfaceCreated(GL10 gl, EGLConfig config) {
@@ -71,51 +147,70 @@ public class MapRenderer implements GLSurfaceView.Renderer {
         positionHandle = GLES20.glGetAttribLocation(shaderProgram, "a_Position");
         GLES20.glEnableVertexAttribArray(positionHandle);
         GLES20.glEnableVertexAttribArray(textCoordHandle);
-        generateBuffers();
-        int[] vboHandles = new int[2];
-        GLES20.glGenBuffers(2, vboHandles, 0);
-        vboId = vboHandles[0];
-        txoId = vboHandles[1];
-        position.getNetPosition();
+        int[] bufferHandles = new int[2];
+        GLES20.glGenBuffers(2, bufferHandles, 0);
+        vboId = bufferHandles[0];
+        iboId = bufferHandles[1];
+        indexCapacity = 0;
+        if (tileAtlas != null || vectorLayer != null) textureCache.clear();
+        if (vectorTiles) {
+            vectorLayer = new VectorLayer(VECTOR_MAX_TILES);
+            return;
+        }
+        int pages = (int) Math.max(1, TEXTURE_CACHE_BYTES / ((long) tileTextureBytes * ATLAS_SLOTS_PER_PAGE));
+        tileAtlas = compressedTextures ? TileAtlas.compressed(ATLAS_PAGE_SIZE, TILE_SIZE, pages)
+                : new TileAtlas(ATLAS_PAGE_SIZE, TILE_SIZE, pages, TILE_CONFIG);
     }
     @Override
     public void onDrawFrame(GL10 gl) {
+        long frameStart = System.nanoTime();
         GLES20.glClear(GLES20.GL_COLOR_BUFFER_BIT | GLES20.GL_DEPTH_BUFFER_BIT);
-        processTileQueue();
-        cleanupOldTextures();
+        Viewport viewport = controller.beginFrame(frameStart);
+        controller.setFetchLimit(fetchConcurrency.limit());
+        controller.dispatch(tileDispatcher);
+        long queueDone = System.nanoTime();
+        controller.updateVisibleTiles();
+        if (controller.rebuildBatch() && !vectorTiles) uploadBatch();
+        boolean changed = controller.frameChanged();
         Matrix.setIdentityM(mModelMatrix, 0);
-        Matrix.translateM(mModelMatrix, 0, offsetX, offsetY, 0.0f);
-        float[] mvpMatrix = new float[16];
+        Matrix.scaleM(mModelMatrix, 0, viewport.scale(), viewport.scale(), 1.0f);
+        Matrix.translateM(mModelMatrix, 0, -viewport.offsetX(), viewport.offsetY(), 0.0f);
         Matrix.multiplyMM(mvpMatrix, 0, mProjectionMatrix, 0, mModelMatrix, 0);
-        GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
-        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vboId);
-        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, vertexBuffer.capacity() * 4, vertexBuffer, GLES20.GL_STATIC_DRAW);
-        GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, 3*4, 0);
-        GLES20.glEnableVertexAttribArray(positionHandle);
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, txoId);
-        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, texCoordBuffer.capacity() * 4, texCoordBuffer, GLES20.GL_STATIC_DRAW);
-        GLES20.glVertexAttribPointer(textCoordHandle, 2, GLES20.GL_FLOAT, false, 2*4, 0);
-        GLES20.glEnableVertexAttribArray(textCoordHandle);
-        drawTileGrid();
-        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
-        long currentTime = System.nanoTime();
-        frameCount++;
-        if (currentTime - lastTime >= 1_000_000_000) {
-            Log.e("DEBUG", "FPS: " + frameCount);
-            Log.e("DEBUG", "Tile cache size: " + tileTextures.size());
-            Log.e("DEBUG", "OffsetX: " + offsetX + ", OffsetY: " + offsetY);
-            Log.e("DEBUG", "Position X: " + position.x + ", Position Y: " + position.y + " , Position Z: " + position.z);
-            frameCount = 0;
-            lastTime = currentTime;
+        if (vectorTiles) {
+            vectorLayer.draw(vectorBatch, mvpMatrix, unitsPerPixel / viewport.scale());
+        } else {
+            GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
+            drawBatch();
+        }
+        long drawDone = System.nanoTime();
+        controller.prefetch(drawDone);
+        long frameEnd = System.nanoTime();
+        metrics.recordFirstFrame(frameEnd);
+        if (!firstTileDrawn && (vectorTiles ? vectorBatch.count() : tileBatch.quadCount()) > 0) {
+            firstTileDrawn = true;
+            metrics.recordFirstTile(frameEnd);
         }
+        metrics.recordFrame(frameEnd - frameStart, queueDone - frameStart, drawDone - queueDone, frameEnd - drawDone);
+        metrics.recordFrameActivity(changed);
+        if (controller.isAnimating()) glSurfaceView.requestRender();
+        scheduleRetryFrame(frameEnd);
+        metrics.recordQueue(controller.scheduler().pendingCount(), controller.scheduler().inFlightCount(),
+                controller.scheduler().droppedCount(), controller.prefetcher().requestedCount());
+        metrics.recordTextureCache(textureCache.hitCount(), textureCache.missCount(), textureCache.evictionCount());
+        metrics.recordHttp(tileLoader.httpClient().requestCount(), tileLoader.httpClient().coalescedCount());
+        metrics.recordHedging(tileLoader.tileSource().hedgedCount(), tileLoader.tileSource().hedgeWinCount(),
+                tileLoader.tileSource().failoverCount());
+        metrics.recordRevalidation(tileLoader.httpCache().revalidationCount(), tileLoader.httpClient().notModifiedCount());
+        metrics.recordFetchLimit(fetchConcurrency.limit(), fetchConcurrency.throughputBytesPerSecond());
+        metrics.maybeReport(frameEnd);
     }
     @Override
     public void onSurfaceChanged(GL10 gl, int width, int height) {
         GLES20.glViewport(0, 0, width, height);
+        unitsPerPixel = MapController.unitsPerPixel(width, height);
         float aspectRatio = (float) width / height;
-        float worldWidth = tilesX * TILE_SIZE;
-        float worldHeight = tilesY * TILE_SIZE;
+        float worldWidth = MapController.TILES_X * TILE_SIZE;
+        float worldHeight = MapController.TILES_Y * TILE_SIZE;
         if (width > height) {
             Matrix.orthoM(mProjectionMatrix, 0, -worldWidth / 2, worldWidth / 2,
                     -worldWidth / (2 * aspectRatio), worldWidth / (2 * aspectRatio), -1, 1);
@@ -124,113 +219,156 @@ public class MapRenderer implements GLSurfaceView.Renderer {
                     -worldHeight / 2, worldHeight / 2, -1, 1);
         }
     }
-    private void drawTileGrid() {
-        for (int x = -tilesX; x < tilesX; x++) {
-            for (int y = -tilesY; y < tilesY; y++) {
-                int tileX = position.x + x;
-                int tileY = position.y + y;
-                String key = position.z + "_" + tileX + "_" + tileY;
-                if (!tileTextures.containsKey(key) && !tileLoadQueue.contains(key)) {
-                    tileLoadQueue.add(key);
-                }
-                drawTile(x, y);
-            }
+    // Failed tiles wait out a backoff in the scheduler; make sure a frame runs when it expires.
+    private void scheduleRetryFrame(long nowNanos) {
+        long retryAt = controller.scheduler().nextRetryNanos();
+        if (retryAt == Long.MAX_VALUE || retryAt == retryWakeupNanos) return;
+        retryWakeupNanos = retryAt;
+        glSurfaceView.postDelayed(requestRender, Math.max(0, (retryAt - nowNanos) / 1_000_000L) + 1);
+    }
+    private void uploadBatch() {
+        int floats = tileBatch.quadCount() * TileBatch.FLOATS_PER_QUAD;
+        if (vertexBuffer == null || vertexBuffer.capacity() < floats) {
+            vertexBuffer = createBuffer(new float[Math.max(floats, 64 * TileBatch.FLOATS_PER_QUAD)]);
+        }
+        vertexBuffer.clear();
+        vertexBuffer.put(tileBatch.vertices(), 0, floats).position(0);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vboId);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, floats * 4, vertexBuffer, GLES20.GL_DYNAMIC_DRAW);
+        if (tileBatch.quadCount() > indexCapacity) {
+            indexCapacity = Math.max(tileBatch.quadCount(), 2 * indexCapacity);
+            ShortBuffer indices = createShortBuffer(TileBatch.buildIndices(indexCapacity));
+            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, iboId);
+            GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexCapacity * 6 * 2, indices, GLES20.GL_STATIC_DRAW);
+        }
+    }
+    private void drawBatch() {
+        if (tileBatch.quadCount() == 0) return;
+        GLES20.glActiveTexture(GLES20.GL_TEXTURE0);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vboId);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, iboId);
+        int stride = TileBatch.FLOATS_PER_VERTEX * 4;
+        GLES20.glVertexAttribPointer(positionHandle, 3, GLES20.GL_FLOAT, false, stride, 0);
+        GLES20.glVertexAttribPointer(textCoordHandle, 2, GLES20.GL_FLOAT, false, stride, 3 * 4);
+        for (int range = 0; range < tileBatch.rangeCount(); range++) {
+            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, tileAtlas.pageTexture(tileBatch.rangePage(range)));
+            GLES20.glDrawElements(GLES20.GL_TRIANGLES, tileBatch.rangeQuadCount(range) * 6,
+                    GLES20.GL_UNSIGNED_SHORT, tileBatch.rangeFirstQuad(range) * 6 * 2);
         }
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
     }
-    private void drawTile(int x, int y) {
-        int tileX = position.x + x;
-        int tileY = position.y + y;
-        int zoom = position.z;
-        String key = zoom + "_" + tileX + "_" + tileY;
-        int textureId = tileTextures.getOrDefault(key, -1);
-        if (textureId == -1) { return; }
-        if (textureId != lastBoundTexture) {
-            GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureId);
-            lastBoundTexture = textureId;
+    // Runs on the GL thread once the location fix arrives. A restored viewport pans smoothly to the fix,
+    // the cold-start overview jumps straight to street level; nothing moves if the user already navigated.
+    private void recenter(double latitude, double longitude) {
+        if (controller.userMoved()) return;
+        if (!viewportRestored) {
+            controller.setCenter(LOCATION_ZOOM, TileMath.tileX(longitude, LOCATION_ZOOM), TileMath.tileY(latitude, LOCATION_ZOOM));
+            return;
+        }
+        int zoom = controller.zoom();
+        double targetX = TileMath.tileX(longitude, zoom);
+        double targetY = TileMath.tileY(latitude, zoom);
+        if (Math.abs(targetX - controller.centerX()) > RECENTER_MAX_TILES || Math.abs(targetY - controller.centerY()) > RECENTER_MAX_TILES) {
+            controller.setCenter(zoom, targetX, targetY);
+            return;
         }
-        float tileScreenX = (x * TILE_SIZE) - offsetX;
-        float tileScreenY = (-y * TILE_SIZE) + offsetY;
-        float[] tileModelMatrix = new float[16];
-        Matrix.setIdentityM(tileModelMatrix, 0);
-        Matrix.translateM(tileModelMatrix, 0, tileScreenX, tileScreenY, 0);
-        Matrix.scaleM(tileModelMatrix, 0, TILE_SIZE, TILE_SIZE, 1);
-        float[] mvpMatrix = new float[16];
-        Matrix.multiplyMM(mvpMatrix, 0, mProjectionMatrix, 0, tileModelMatrix, 0);
-        GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
-        GLES20.glDrawElements(GLES20.GL_TRIANGLES, 6, GLES20.GL_UNSIGNED_SHORT, indexBuffer);
+        controller.animateTo(targetX, targetY, System.nanoTime());
     }
-    private void processTileQueue() {
-        if (!tileLoadQueue.isEmpty()) {
-            String key = tileLoadQueue.poll();
-            String[] parts = key.split("_");
-            int zoom = Integer.parseInt(parts[0]);
-            int tileX = Integer.parseInt(parts[1]);
-            int tileY = Integer.parseInt(parts[2]);
-            if(tileX < 0 || tileY < 0 || tileX > Math.pow(2, zoom) || tileY > Math.pow(2, zoom)) return;
+    private void fetchTile(long key) {
+        if (vectorTiles) {
+            tileLoaderExecutor.execute(() -> {
+                VectorMesh.Packed mesh = tileLoader.getVectorTile(TileKey.zoom(key), TileKey.x(key), TileKey.y(key));
+                if (mesh == null) {
+                    Log.e("TileLoader", "❌ Nepodařilo se získat vektorovou dlaždici: " + TileKey.toString(key));
+                }
+                runOnGlThread(() -> {
+                    if (mesh == null) {
+                        controller.onTileFailed(key, System.nanoTime());
+                        return;
+                    }
+                    long uploadStart = System.nanoTime();
+                    int slot = loadVectorTile(mesh);
+                    metrics.recordUpload(System.nanoTime() - uploadStart);
+                    controller.onTileLoaded(key, slot, mesh.byteSize());
+                });
+            });
+            return;
+        }
+        if (compressedTextures) {
             tileLoaderExecutor.execute(() -> {
-                Bitmap tileBitmap = tileLoader.getTile(zoom, tileX, tileY);
-                if (tileBitmap != null) {
-                    glSurfaceView.queueEvent(() -> {
-                        int textureId = loadTexture(tileBitmap);
-                        tileTextures.put(key, textureId);
-                    });
-                } else {
-                    Log.e("TileLoader", "❌ Nepodařilo se získat bitmapu dlaždice: " + key);
+                byte[] packed = tileLoader.getCompressedTile(TileKey.zoom(key), TileKey.x(key), TileKey.y(key));
+                if (packed == null) {
+                    Log.e("TileLoader", "❌ Nepodařilo se získat komprimovanou dlaždici: " + TileKey.toString(key));
                 }
+                runOnGlThread(() -> {
+                    if (packed == null) {
+                        controller.onTileFailed(key, System.nanoTime());
+                        return;
+                    }
+                    long uploadStart = System.nanoTime();
+                    int slot = loadCompressedTexture(packed);
+                    metrics.recordUpload(System.nanoTime() - uploadStart);
+                    controller.onTileLoaded(key, slot);
+                });
             });
+            return;
         }
+        tileLoaderExecutor.execute(() -> {
+            ByteBuffer pixels = tileLoader.getTilePixels(TileKey.zoom(key), TileKey.x(key), TileKey.y(key));
+            if (pixels == null) {
+                Log.e("TileLoader", "❌ Nepodařilo se získat pixely dlaždice: " + TileKey.toString(key));
+            }
+            runOnGlThread(() -> {
+                if (pixels == null) {
+                    controller.onTileFailed(key, System.nanoTime());
+                    return;
+                }
+                long uploadStart = System.nanoTime();
+                int slot = loadTexture(pixels);
+                metrics.recordUpload(System.nanoTime() - uploadStart);
+                controller.onTileLoaded(key, slot);
+            });
+        });
+    }
+    // In on-demand render mode a frame is only drawn when requested, so every state change from
+    // another thread asks for one after it has been applied.
+    private void runOnGlThread(Runnable event) {
+        glSurfaceView.queueEvent(() -> {
+            event.run();
+            glSurfaceView.requestRender();
+        });
     }
-    private int loadTexture(Bitmap bitmap) {
-        final int[] textureHandle = new int[1];
-        GLES20.glGenTextures(1, textureHandle, 0);
-        if (textureHandle[0] == 0) {
+    private int loadTexture(ByteBuffer pixels) {
+        int slot = controller.allocateSlot();
+        if (slot == TileAtlas.NO_SLOT) {
             Log.e("OpenGL", "❌ Nepodařilo se vytvořit texturu!");
-            return -1;
+        } else {
+            tileAtlas.upload(slot, pixels);
         }
-        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, textureHandle[0]);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
-        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
-        GLUtils.texImage2D(GLES20.GL_TEXTURE_2D, 0, bitmap, 0);
-        bitmap.recycle();
-        return textureHandle[0];
+        tileLoader.releasePixels(pixels);
+        return slot;
     }
-    private void cleanupOldTextures() {
-        Iterator<Map.Entry<String, Integer>> iterator = tileTextures.entrySet().iterator();
-        while (iterator.hasNext()) {
-            Map.Entry<String, Integer> entry = iterator.next();
-            String key = entry.getKey();
-            String[] parts = key.split("_");
-            int zoom = Integer.parseInt(parts[0]);
-            int tileX = Integer.parseInt(parts[1]);
-            int tileY = Integer.parseInt(parts[2]);
-            if (Math.abs(tileX - position.x) > tilesX + 2 || Math.abs(tileY - position.y) > tilesY + 2) {
-                GLES20.glDeleteTextures(1, new int[]{entry.getValue()}, 0);
-                iterator.remove();
-            }
+    private int loadVectorTile(VectorMesh.Packed mesh) {
+        int slot = controller.allocateSlot();
+        if (slot == VectorLayer.NO_SLOT) {
+            Log.e("OpenGL", "❌ Nepodařilo se vytvořit buffery vektorové dlaždice!");
+            return slot;
         }
+        vectorLayer.upload(slot, mesh);
+        return slot;
     }
-    private void generateBuffers() {
-        float[] vertices = {
-                -0.5f,  0.5f, 0,  // Top-left
-                -0.5f, -0.5f, 0,  // Bottom-left
-                0.5f, -0.5f, 0,  // Bottom-right
-                0.5f,  0.5f, 0   // Top-right
-        };
-
-        float[] texCoords = {
-                0, 0,   // Top-left
-                0, 1,   // Bottom-left
-                1, 1,   // Bottom-right
-                1, 0    // Top-right
-        };
-
-        short[] indices = { 0, 1, 2, 0, 2, 3 };
-
-        vertexBuffer = createBuffer(vertices);
-        texCoordBuffer = createBuffer(texCoords);
-        indexBuffer = createShortBuffer(indices);
+    private int loadCompressedTexture(byte[] packed) {
+        int slot = controller.allocateSlot();
+        if (slot == TileAtlas.NO_SLOT) {
+            Log.e("OpenGL", "❌ Nepodařilo se vytvořit texturu!");
+            return slot;
+        }
+        if (compressedUpload == null) compressedUpload = ByteBuffer.allocateDirect(COMPRESSED_TILE_BYTES);
+        compressedUpload.clear();
+        compressedUpload.put(packed, Etc1.HEADER_BYTES, COMPRESSED_TILE_BYTES).flip();
+        tileAtlas.uploadCompressed(slot, compressedUpload);
+        return slot;
     }
     private FloatBuffer createBuffer(float[] data) {
         FloatBuffer buffer = ByteBuffer.allocateDirect(data.length * 4)
@@ -280,47 +418,43 @@ public class MapRenderer implements GLSurfaceView.Renderer {
 
         return shaderProgram;
     }
+    public void setPrefetchLookahead(float seconds, int maxTiles) {
+        controller.prefetcher().setLookahead(seconds, Math.min(maxTiles, MapController.PREFETCH_MAX_TILES));
+    }
+    public void setPrefetchBandwidth(long bytesPerSecond) {
+        controller.prefetcher().setBandwidthBudget(bytesPerSecond);
+    }
+    // Records subsequent touch input for replay in the headless simulator; null stops recording.
+    public void setGestureTrace(GestureTrace trace) {
+        gestureTrace = trace;
+    }
     public void handleTouchMove(float deltaX, float deltaY) {
-        float normalizedX = -deltaX / glSurfaceView.getWidth();
-        float normalizedY = -deltaY / glSurfaceView.getHeight();
-        offsetX = lerp(offsetX, offsetX + normalizedX * TILE_SIZE * 15, 0.8f);
-        offsetY = lerp(offsetY, offsetY + normalizedY * TILE_SIZE * 15, 0.8f);
-        if (offsetX > TILE_SIZE) {
-            position.x++;
-            offsetX -= TILE_SIZE;
-        }
-        if (offsetX < -TILE_SIZE) {
-            position.x--;
-            offsetX += TILE_SIZE;
-        }
-        if (offsetY > TILE_SIZE) {
-            position.y++;
-            offsetY -= TILE_SIZE;
-        }
-        if (offsetY < -TILE_SIZE) {
-            position.y--;
-            offsetY += TILE_SIZE;
-        }
+        GestureTrace trace = gestureTrace;
+        if (trace != null) trace.recordMove(System.nanoTime(), deltaX, deltaY);
+        gestures.addMove(deltaX, deltaY);
+        scheduleGestures();
     }
     public boolean handleTouchZoom(ScaleGestureDetector detector){
         float scaleFactor = detector.getScaleFactor();
         Log.e("scalefactor", "ScaleFactor: " + scaleFactor);
-        int newZoom = position.z +
-                (scaleFactor > 1.0 ? 1 : scaleFactor < 1.0 ? -1 : 0);
-        newZoom = Math.max(MIN_ZOOM, Math.min(MAX_ZOOM, newZoom));
-        offsetX = 0;
-        offsetY = 0;
-        long currentTime = System.currentTimeMillis();
-        if (currentTime - lastZoomTime > 300) {
-            if (newZoom != position.z) {
-                position.changeZoom(newZoom);
-                lastZoomTime = currentTime;
-                return true;
-            }
-        }
-        return false;
+        GestureTrace trace = gestureTrace;
+        float focusX = detector.getFocusX();
+        float focusY = detector.getFocusY();
+        if (trace != null) trace.recordZoom(System.nanoTime(), scaleFactor, focusX, focusY);
+        gestures.addZoom(scaleFactor, focusX, focusY);
+        scheduleGestures();
+        return true;
+    }
+    // Input arriving within one vsync interval becomes a single viewport update at the next frame.
+    private void scheduleGestures() {
+        if (gesturesScheduled || !gestures.isPending()) return;
+        gesturesScheduled = true;
+        choreographer.postFrameCallback(applyGestures);
     }
-    private float lerp(float start, float end, float alpha) {
-        return start + alpha * (end - start);
+    private void applyGestures(long frameTimeNanos) {
+        gesturesScheduled = false;
+        if (gestures.flush(controller, glSurfaceView.getWidth(), glSurfaceView.getHeight(), frameTimeNanos)) {
+            glSurfaceView.requestRender();
+        }
     }
 }
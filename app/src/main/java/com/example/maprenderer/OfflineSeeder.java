@@ -0,0 +1,337 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.TileBuffer;
+import com.example.maprenderer.util.TileKey;
+import com.example.maprenderer.util.TileMath;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Bulk download of a bounding box over a zoom range into a TileStore. Tiles are fetched through
+ * the TileSource mirrors in batches by a bounded worker pool under a rate limit, each batch is
+ * written with one index journal write, and a checkpoint file records the next tile and the
+ * tiles that failed, so an interrupted run resumes where it stopped and a repeated run retries
+ * the failures. Tiles already in the store are skipped.
+ */
+public class OfflineSeeder {
+    private static final int MAX_ATTEMPTS = 3;
+    private static final long RETRY_BACKOFF_MS = 500;
+    // download() result for a tile the server does not have; nothing to store or retry.
+    private static final byte[] NO_TILE = new byte[0];
+
+    public static final class Region {
+        public final double north, west, south, east;
+        public final int minZoom, maxZoom;
+        private final int[] minX, maxX, minY, maxY;
+        private final long[] firstIndex;
+        private final long tileCount;
+
+        public Region(double north, double west, double south, double east, int minZoom, int maxZoom) {
+            if (north <= south || east <= west || minZoom > maxZoom) {
+                throw new IllegalArgumentException("Invalid region " + north + "," + west + "," + south + "," + east);
+            }
+            this.north = north;
+            this.west = west;
+            this.south = south;
+            this.east = east;
+            this.minZoom = minZoom;
+            this.maxZoom = maxZoom;
+            int levels = maxZoom - minZoom + 1;
+            minX = new int[levels];
+            maxX = new int[levels];
+            minY = new int[levels];
+            maxY = new int[levels];
+            firstIndex = new long[levels + 1];
+            for (int level = 0; level < levels; level++) {
+                int zoom = minZoom + level;
+                int last = (1 << zoom) - 1;
+                minX[level] = clamp((int) Math.floor(TileMath.tileX(west, zoom)), last);
+                maxX[level] = clamp((int) Math.floor(TileMath.tileX(east, zoom)), last);
+                minY[level] = clamp((int) Math.floor(TileMath.tileY(north, zoom)), last);
+                maxY[level] = clamp((int) Math.floor(TileMath.tileY(south, zoom)), last);
+                long count = (long) (maxX[level] - minX[level] + 1) * (maxY[level] - minY[level] + 1);
+                firstIndex[level + 1] = firstIndex[level] + count;
+            }
+            tileCount = firstIndex[levels];
+        }
+
+        public long tileCount() {
+            return tileCount;
+        }
+        // Tiles are ordered by zoom, then row, then column.
+        public long tileAt(long index) {
+            int level = 0;
+            while (index >= firstIndex[level + 1]) level++;
+            long offset = index - firstIndex[level];
+            int width = maxX[level] - minX[level] + 1;
+            return TileKey.of(minZoom + level, minX[level] + (int) (offset % width), minY[level] + (int) (offset / width));
+        }
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%.6f,%.6f,%.6f,%.6f,%d-%d", north, west, south, east, minZoom, maxZoom);
+        }
+        private static int clamp(int tile, int last) {
+            return Math.max(0, Math.min(last, tile));
+        }
+    }
+
+    public static final class Progress {
+        public final long done;
+        public final long total;
+        public final long failed;
+        public final long bytes;
+        public final double tilesPerSecond;
+        public final long etaSeconds;
+
+        Progress(long done, long total, long failed, long bytes, double tilesPerSecond) {
+            this.done = done;
+            this.total = total;
+            this.failed = failed;
+            this.bytes = bytes;
+            this.tilesPerSecond = tilesPerSecond;
+            this.etaSeconds = tilesPerSecond > 0 ? (long) Math.ceil((total - done) / tilesPerSecond) : -1;
+        }
+        // Failed tiles stay missing until a later run of the region fetches them.
+        public boolean isComplete() {
+            return done == total && failed == 0;
+        }
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT, "%d/%d tiles, %d failed, %d B, %.1f tiles/s, ETA %d s",
+                    done, total, failed, bytes, tilesPerSecond, etaSeconds);
+        }
+    }
+
+    public interface Listener {
+        void onProgress(Progress progress);
+    }
+
+    private final TileStore store;
+    private final TileSource source;
+    private final File checkpointFile;
+    private final Set<Long> failedKeys = new LinkedHashSet<>();
+    private final List<Future<byte[]>> pending = new ArrayList<>();
+    private int concurrency = 4;
+    private int batchSize = 64;
+    private long permitIntervalNanos;
+    private long nextPermitNanos;
+    private volatile boolean cancelled;
+
+    // Bulk downloads need the tile server's permission: the public OpenStreetMap servers forbid
+    // them, so their mirrors are refused, and every run is paced at tilesPerSecond.
+    public OfflineSeeder(TileStore store, TileSource source, double tilesPerSecond, File checkpointFile) {
+        for (int i = 0; i < source.mirrorCount(); i++) {
+            String host = host(source.mirror(i).template());
+            if (host.equals("openstreetmap.org") || host.endsWith(".openstreetmap.org")) {
+                throw new IllegalArgumentException("Bulk downloads from " + host + " are not allowed by its tile usage policy");
+            }
+        }
+        this.store = store;
+        this.source = source;
+        this.checkpointFile = checkpointFile;
+        setRateLimit(tilesPerSecond);
+    }
+
+    public void setConcurrency(int workers) {
+        concurrency = Math.max(1, workers);
+    }
+    public void setBatchSize(int tiles) {
+        batchSize = Math.max(1, tiles);
+    }
+    public synchronized void setRateLimit(double tilesPerSecond) {
+        if (!(tilesPerSecond > 0)) throw new IllegalArgumentException("Seeding needs a rate limit: " + tilesPerSecond);
+        permitIntervalNanos = (long) (1e9 / tilesPerSecond);
+    }
+    public void cancel() {
+        cancelled = true;
+    }
+
+    // Blocks until the region is stored, the run is cancelled or the thread is interrupted. Tiles
+    // that failed in an earlier run of the same region are tried again first. Throws
+    // TileStore.FullException when the region does not fit the store; the checkpoint then still
+    // points at the first batch that was not stored.
+    public Progress seed(Region region, Listener listener) throws IOException {
+        cancelled = false;
+        long[] checkpoint = readCheckpoint(region);
+        long next = checkpoint[0];
+        long bytes = checkpoint[1];
+        long resumedAt = next;
+        long start = System.nanoTime();
+        ExecutorService workers = Executors.newFixedThreadPool(concurrency);
+        long[] keys = new long[batchSize];
+        byte[][] tiles = new byte[batchSize][];
+        try {
+            Long[] retry = failedKeys.toArray(new Long[0]);
+            for (int first = 0; first < retry.length && !cancelled; first += batchSize) {
+                int count = Math.min(batchSize, retry.length - first);
+                for (int i = 0; i < count; i++) keys[i] = retry[first + i];
+                bytes += fetchBatch(workers, keys, count, tiles);
+                writeCheckpoint(region, next, bytes);
+                if (listener != null) listener.onProgress(progress(region, next, bytes, next - resumedAt, start));
+            }
+            while (next < region.tileCount() && !cancelled) {
+                long end = Math.min(region.tileCount(), next + batchSize);
+                int count = (int) (end - next);
+                for (int i = 0; i < count; i++) keys[i] = region.tileAt(next + i);
+                bytes += fetchBatch(workers, keys, count, tiles);
+                next = end;
+                writeCheckpoint(region, next, bytes);
+                if (listener != null) listener.onProgress(progress(region, next, bytes, next - resumedAt, start));
+            }
+        } finally {
+            workers.shutdownNow();
+        }
+        return progress(region, next, bytes, next - resumedAt, start);
+    }
+
+    // Downloads the keys not stored yet and stores them with one journal write; failures are
+    // remembered for the next run. Returns the bytes stored.
+    private long fetchBatch(ExecutorService workers, long[] keys, int count, byte[][] tiles) throws IOException {
+        pending.clear();
+        for (int i = 0; i < count; i++) {
+            long key = keys[i];
+            pending.add(store.contains(key) ? null : workers.submit(() -> download(key)));
+        }
+        long[] stored = new long[count];
+        int storedCount = 0;
+        long bytes = 0;
+        for (int i = 0; i < count; i++) {
+            Future<byte[]> download = pending.get(i);
+            if (download == null) {
+                failedKeys.remove(keys[i]);
+                continue;
+            }
+            byte[] data = await(download);
+            if (data == NO_TILE) {
+                failedKeys.remove(keys[i]);
+                continue;
+            }
+            if (data == null) {
+                failedKeys.add(keys[i]);
+                continue;
+            }
+            stored[storedCount] = keys[i];
+            tiles[storedCount++] = data;
+            bytes += data.length;
+        }
+        try {
+            store.putAll(stored, tiles, storedCount);
+            store.flush();
+        } finally {
+            Arrays.fill(tiles, null);
+        }
+        for (int i = 0; i < storedCount; i++) failedKeys.remove(stored[i]);
+        return bytes;
+    }
+    private byte[] download(long key) throws IOException {
+        TileBuffer buffer = new TileBuffer(32 * 1024);
+        for (int attempt = 1; ; attempt++) {
+            acquirePermit();
+            try {
+                source.fetchUnhedged(key, buffer);
+                return Arrays.copyOf(buffer.array(), buffer.length());
+            } catch (TileHttpClient.NoTileException e) {
+                return NO_TILE;
+            } catch (InterruptedIOException e) {
+                throw e;
+            } catch (IOException e) {
+                if (attempt == MAX_ATTEMPTS || cancelled) return null;
+                sleep(RETRY_BACKOFF_MS * attempt);
+            }
+        }
+    }
+    private void acquirePermit() throws InterruptedIOException {
+        long wait;
+        synchronized (this) {
+            long now = System.nanoTime();
+            long permit = Math.max(now, nextPermitNanos);
+            nextPermitNanos = permit + permitIntervalNanos;
+            wait = permit - now;
+        }
+        if (wait > 0) sleep(wait / 1_000_000L);
+    }
+    private static void sleep(long millis) throws InterruptedIOException {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Seeding interrupted");
+        }
+    }
+    private static byte[] await(Future<byte[]> pending) throws IOException {
+        try {
+            return pending.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Seeding interrupted");
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof IOException) throw (IOException) e.getCause();
+            throw new IOException(e.getCause());
+        }
+    }
+    private Progress progress(Region region, long done, long bytes, long doneThisRun, long startNanos) {
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        double rate = seconds > 0 ? doneThisRun / seconds : 0;
+        return new Progress(done, region.tileCount(), failedKeys.size(), bytes, rate);
+    }
+    private static String host(String template) {
+        int start = template.indexOf("://");
+        start = start < 0 ? 0 : start + 3;
+        int end = start;
+        while (end < template.length() && "/:?".indexOf(template.charAt(end)) < 0) end++;
+        return template.substring(start, end).toLowerCase(Locale.ROOT);
+    }
+
+    // Checkpoint format: "<region> <next index> <bytes>" and a second line with the keys that
+    // failed; a different region starts over.
+    private long[] readCheckpoint(Region region) {
+        failedKeys.clear();
+        try {
+            if (!checkpointFile.isFile()) return new long[2];
+            String[] lines = new String(Files.readAllBytes(checkpointFile.toPath()), StandardCharsets.UTF_8).split("\n");
+            String[] parts = lines[0].trim().split(" ");
+            if (parts.length != 3 || !parts[0].equals(region.toString())) return new long[2];
+            long[] checkpoint = { Long.parseLong(parts[1]), Long.parseLong(parts[2]) };
+            if (lines.length > 1 && !lines[1].trim().isEmpty()) {
+                for (String key : lines[1].trim().split(" ")) failedKeys.add(Long.parseLong(key));
+            }
+            return checkpoint;
+        } catch (IOException | NumberFormatException e) {
+            failedKeys.clear();
+            return new long[2];
+        }
+    }
+    private void writeCheckpoint(Region region, long next, long bytes) throws IOException {
+        File parent = checkpointFile.getParentFile();
+        if (parent != null && !parent.isDirectory() && !parent.mkdirs()) {
+            throw new IOException("Cannot create checkpoint directory " + parent);
+        }
+        File tmp = new File(checkpointFile.getPath() + ".tmp");
+        try (FileOutputStream stream = new FileOutputStream(tmp);
+             Writer writer = new OutputStreamWriter(stream, StandardCharsets.UTF_8)) {
+            writer.write(region + " " + next + " " + bytes + "\n");
+            for (long key : failedKeys) writer.write(key + " ");
+            writer.write("\n");
+            writer.flush();
+            stream.getFD().sync();
+        }
+        if (!tmp.renameTo(checkpointFile)) throw new IOException("Cannot write checkpoint " + checkpointFile);
+    }
+}
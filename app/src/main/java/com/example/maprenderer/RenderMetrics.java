@@ -0,0 +1,208 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.Histogram;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Frame and tile pipeline metrics. Timings are recorded in nanoseconds into histograms and
+ * counters from the GL thread and the tile workers; toJson() renders a snapshot for export.
+ */
+public class RenderMetrics {
+    public interface Listener {
+        void onMetrics(RenderMetrics metrics);
+    }
+
+    public final Histogram frameTime = new Histogram();
+    public final Histogram queueTime = new Histogram();
+    public final Histogram drawTime = new Histogram();
+    public final Histogram prefetchTime = new Histogram();
+    public final Histogram networkTime = new Histogram();
+    public final Histogram decodeTime = new Histogram();
+    public final Histogram transcodeTime = new Histogram();
+    public final Histogram uploadTime = new Histogram();
+    public final Histogram queueDepth = new Histogram();
+    private final AtomicLong bytesDownloaded = new AtomicLong();
+    private final AtomicLong tilesDownloaded = new AtomicLong();
+    private final AtomicLong downloadFailures = new AtomicLong();
+    private final AtomicLong storeHits = new AtomicLong();
+    private final AtomicLong storeMisses = new AtomicLong();
+    private final long startNanos = System.nanoTime();
+    private volatile long frames;
+    private volatile long activeFrames;
+    private volatile long idleFrames;
+    private volatile long textureHits;
+    private volatile long textureMisses;
+    private volatile long textureEvictions;
+    private volatile int pendingTiles;
+    private volatile int inFlightTiles;
+    private volatile long droppedTiles;
+    private volatile long prefetchedTiles;
+    private volatile long httpRequests;
+    private volatile long coalescedRequests;
+    private volatile long revalidations;
+    private volatile long hedgedRequests;
+    private volatile long hedgeWins;
+    private volatile long failovers;
+    private volatile long notModifiedResponses;
+    private volatile int fetchLimit;
+    private volatile long throughputBytesPerSecond;
+    private volatile long firstFrameNanos = -1;
+    private volatile long firstTileNanos = -1;
+    private volatile Listener listener;
+    private volatile long listenerIntervalNanos;
+    private long lastReportNanos = startNanos;
+
+    public void setListener(Listener listener, long intervalMillis) {
+        this.listenerIntervalNanos = intervalMillis * 1_000_000L;
+        this.listener = listener;
+    }
+    public void recordFrame(long frameNanos, long queueNanos, long drawNanos, long prefetchNanos) {
+        frames++;
+        frameTime.record(frameNanos);
+        queueTime.record(queueNanos);
+        drawTime.record(drawNanos);
+        prefetchTime.record(prefetchNanos);
+    }
+    // Active frames changed what is on screen; idle frames redrew the same picture.
+    public void recordFrameActivity(boolean active) {
+        if (active) {
+            activeFrames++;
+        } else {
+            idleFrames++;
+        }
+    }
+    public void recordFirstFrame(long nowNanos) {
+        if (firstFrameNanos < 0) firstFrameNanos = nowNanos - startNanos;
+    }
+    public void recordFirstTile(long nowNanos) {
+        if (firstTileNanos < 0) firstTileNanos = nowNanos - startNanos;
+    }
+    public long timeToFirstTileNanos() {
+        return firstTileNanos;
+    }
+    public void recordQueue(int pending, int inFlight, long dropped, long prefetched) {
+        pendingTiles = pending;
+        inFlightTiles = inFlight;
+        droppedTiles = dropped;
+        prefetchedTiles = prefetched;
+        queueDepth.record(pending + inFlight);
+    }
+    public void recordTextureCache(long hits, long misses, long evictions) {
+        textureHits = hits;
+        textureMisses = misses;
+        textureEvictions = evictions;
+    }
+    public void recordHttp(long requests, long coalesced) {
+        httpRequests = requests;
+        coalescedRequests = coalesced;
+    }
+    public void recordHedging(long hedged, long wins, long failedOver) {
+        hedgedRequests = hedged;
+        hedgeWins = wins;
+        failovers = failedOver;
+    }
+    public void recordRevalidation(long revalidated, long notModified) {
+        revalidations = revalidated;
+        notModifiedResponses = notModified;
+    }
+    public void recordFetchLimit(int limit, long bytesPerSecond) {
+        fetchLimit = limit;
+        throughputBytesPerSecond = bytesPerSecond;
+    }
+    public void recordDownload(long nanos, int bytes) {
+        networkTime.record(nanos);
+        bytesDownloaded.addAndGet(bytes);
+        tilesDownloaded.incrementAndGet();
+    }
+    public void recordDownloadFailure() {
+        downloadFailures.incrementAndGet();
+    }
+    public void recordDecode(long nanos) {
+        decodeTime.record(nanos);
+    }
+    public void recordTranscode(long nanos) {
+        transcodeTime.record(nanos);
+    }
+    public void recordUpload(long nanos) {
+        uploadTime.record(nanos);
+    }
+    public void recordStoreLookup(boolean hit) {
+        (hit ? storeHits : storeMisses).incrementAndGet();
+    }
+    public long frames() {
+        return frames;
+    }
+    public long bytesDownloaded() {
+        return bytesDownloaded.get();
+    }
+    public long tilesDownloaded() {
+        return tilesDownloaded.get();
+    }
+
+    public void maybeReport(long nowNanos) {
+        Listener current = listener;
+        if (current == null || nowNanos - lastReportNanos < listenerIntervalNanos) return;
+        lastReportNanos = nowNanos;
+        current.onMetrics(this);
+    }
+
+    public String toJson() {
+        StringBuilder json = new StringBuilder(1024);
+        json.append('{');
+        field(json, "uptimeMs", (System.nanoTime() - startNanos) / 1_000_000L).append(',');
+        field(json, "frames", frames).append(',');
+        field(json, "activeFrames", activeFrames).append(',');
+        field(json, "idleFrames", idleFrames).append(',');
+        field(json, "firstFrameMs", millis(firstFrameNanos)).append(',');
+        field(json, "firstTileMs", millis(firstTileNanos)).append(',');
+        histogram(json, "frameTime", frameTime).append(',');
+        histogram(json, "queueTime", queueTime).append(',');
+        histogram(json, "drawTime", drawTime).append(',');
+        histogram(json, "prefetchTime", prefetchTime).append(',');
+        histogram(json, "networkTime", networkTime).append(',');
+        histogram(json, "decodeTime", decodeTime).append(',');
+        histogram(json, "transcodeTime", transcodeTime).append(',');
+        histogram(json, "uploadTime", uploadTime).append(',');
+        histogram(json, "queueDepth", queueDepth).append(',');
+        field(json, "pendingTiles", pendingTiles).append(',');
+        field(json, "inFlightTiles", inFlightTiles).append(',');
+        field(json, "droppedTiles", droppedTiles).append(',');
+        field(json, "prefetchedTiles", prefetchedTiles).append(',');
+        field(json, "tilesDownloaded", tilesDownloaded.get()).append(',');
+        field(json, "bytesDownloaded", bytesDownloaded.get()).append(',');
+        field(json, "downloadFailures", downloadFailures.get()).append(',');
+        field(json, "httpRequests", httpRequests).append(',');
+        field(json, "coalescedRequests", coalescedRequests).append(',');
+        field(json, "hedgedRequests", hedgedRequests).append(',');
+        field(json, "hedgeWins", hedgeWins).append(',');
+        field(json, "failovers", failovers).append(',');
+        field(json, "revalidations", revalidations).append(',');
+        field(json, "notModifiedResponses", notModifiedResponses).append(',');
+        field(json, "fetchLimit", fetchLimit).append(',');
+        field(json, "throughputBytesPerSecond", throughputBytesPerSecond).append(',');
+        field(json, "storeHits", storeHits.get()).append(',');
+        field(json, "storeMisses", storeMisses.get()).append(',');
+        field(json, "textureHits", textureHits).append(',');
+        field(json, "textureMisses", textureMisses).append(',');
+        field(json, "textureEvictions", textureEvictions);
+        return json.append('}').toString();
+    }
+
+    private static StringBuilder field(StringBuilder json, String name, long value) {
+        return json.append('"').append(name).append("\":").append(value);
+    }
+    private static long millis(long nanos) {
+        return nanos < 0 ? -1 : nanos / 1_000_000L;
+    }
+    private static StringBuilder histogram(StringBuilder json, String name, Histogram histogram) {
+        json.append('"').append(name).append("\":{");
+        field(json, "count", histogram.count()).append(',');
+        field(json, "mean", Math.round(histogram.mean())).append(',');
+        field(json, "p50", histogram.percentile(50)).append(',');
+        field(json, "p90", histogram.percentile(90)).append(',');
+        field(json, "p99", histogram.percentile(99)).append(',');
+        field(json, "max", histogram.max());
+        return json.append('}');
+    }
+}
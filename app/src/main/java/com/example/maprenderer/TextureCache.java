@@ -0,0 +1,192 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.LongIntMap;
+
+import java.util.Arrays;
+
+/**
+ * GPU texture cache with a byte budget. Entries live in parallel arrays linked into an LRU list,
+ * so lookup, touch and eviction are O(1) and do not allocate.
+ */
+public class TextureCache {
+    public static final int NO_TEXTURE = -1;
+    private static final int NIL = -1;
+
+    public interface EvictionListener {
+        void onEvict(long key, int textureId);
+    }
+
+    private final long budgetBytes;
+    private final EvictionListener listener;
+    private final LongIntMap slotsByKey;
+    private long[] keys;
+    private int[] textures;
+    private int[] sizes;
+    private int[] prev;
+    private int[] next;
+    private int head = NIL;
+    private int tail = NIL;
+    private int freeHead = NIL;
+    private int used;
+    private long usedBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+    private int version;
+
+    public TextureCache(long budgetBytes, int expectedEntries, EvictionListener listener) {
+        this.budgetBytes = budgetBytes;
+        this.listener = listener;
+        this.slotsByKey = new LongIntMap(expectedEntries, NIL);
+        allocate(Math.max(4, expectedEntries));
+    }
+
+    public static int textureBytes(int width, int height, int bytesPerPixel) {
+        return width * height * bytesPerPixel;
+    }
+
+    public int get(long key) {
+        int slot = slotsByKey.get(key);
+        if (slot == NIL) {
+            misses++;
+            return NO_TEXTURE;
+        }
+        hits++;
+        moveToTail(slot);
+        return textures[slot];
+    }
+    // Keeps a tile in use recently used without counting a lookup, e.g. on every frame it is drawn.
+    public boolean touch(long key) {
+        int slot = slotsByKey.get(key);
+        if (slot == NIL) return false;
+        moveToTail(slot);
+        return true;
+    }
+    public int peek(long key) {
+        int slot = slotsByKey.get(key);
+        return slot == NIL ? NO_TEXTURE : textures[slot];
+    }
+    public boolean contains(long key) {
+        return slotsByKey.containsKey(key);
+    }
+    public void put(long key, int textureId, int byteSize) {
+        version++;
+        int slot = slotsByKey.get(key);
+        if (slot != NIL) {
+            if (textures[slot] != textureId) listener.onEvict(key, textures[slot]);
+            usedBytes += byteSize - sizes[slot];
+            textures[slot] = textureId;
+            sizes[slot] = byteSize;
+            moveToTail(slot);
+        } else {
+            slot = takeFreeSlot();
+            keys[slot] = key;
+            textures[slot] = textureId;
+            sizes[slot] = byteSize;
+            usedBytes += byteSize;
+            slotsByKey.put(key, slot);
+            linkTail(slot);
+        }
+        while (usedBytes > budgetBytes && head != slot) {
+            evict(head);
+        }
+    }
+    public boolean remove(long key) {
+        int slot = slotsByKey.remove(key);
+        if (slot == NIL) return false;
+        version++;
+        unlink(slot);
+        usedBytes -= sizes[slot];
+        releaseSlot(slot);
+        return true;
+    }
+    public void clear() {
+        while (head != NIL) evict(head);
+    }
+    public boolean evictEldest() {
+        if (head == NIL) return false;
+        evict(head);
+        return true;
+    }
+    public int version() {
+        return version;
+    }
+    public int size() {
+        return slotsByKey.size();
+    }
+    public long usedBytes() {
+        return usedBytes;
+    }
+    public long budgetBytes() {
+        return budgetBytes;
+    }
+    public long hitCount() {
+        return hits;
+    }
+    public long missCount() {
+        return misses;
+    }
+    public long evictionCount() {
+        return evictions;
+    }
+
+    private void evict(int slot) {
+        long key = keys[slot];
+        int textureId = textures[slot];
+        slotsByKey.remove(key);
+        unlink(slot);
+        usedBytes -= sizes[slot];
+        releaseSlot(slot);
+        evictions++;
+        version++;
+        listener.onEvict(key, textureId);
+    }
+    private int takeFreeSlot() {
+        if (freeHead == NIL) {
+            if (used == keys.length) grow();
+            return used++;
+        }
+        int slot = freeHead;
+        freeHead = next[slot];
+        return slot;
+    }
+    private void releaseSlot(int slot) {
+        next[slot] = freeHead;
+        freeHead = slot;
+    }
+    private void moveToTail(int slot) {
+        if (slot == tail) return;
+        unlink(slot);
+        linkTail(slot);
+    }
+    private void linkTail(int slot) {
+        prev[slot] = tail;
+        next[slot] = NIL;
+        if (tail != NIL) next[tail] = slot;
+        tail = slot;
+        if (head == NIL) head = slot;
+    }
+    private void unlink(int slot) {
+        int p = prev[slot];
+        int n = next[slot];
+        if (p != NIL) next[p] = n; else head = n;
+        if (n != NIL) prev[n] = p; else tail = p;
+        prev[slot] = NIL;
+        next[slot] = NIL;
+    }
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        textures = new int[capacity];
+        sizes = new int[capacity];
+        prev = new int[capacity];
+        next = new int[capacity];
+    }
+    private void grow() {
+        int capacity = keys.length << 1;
+        keys = Arrays.copyOf(keys, capacity);
+        textures = Arrays.copyOf(textures, capacity);
+        sizes = Arrays.copyOf(sizes, capacity);
+        prev = Arrays.copyOf(prev, capacity);
+        next = Arrays.copyOf(next, capacity);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.maprenderer;
+
+import android.graphics.Bitmap;
+import android.opengl.GLES20;
+import android.opengl.GLES30;
+
+import com.example.maprenderer.util.Etc1;
+
+import java.nio.ByteBuffer;
+
+public class TileAtlas {
+    public static final int NO_SLOT = -1;
+
+    private final int pageSize;
+    private final int tileSize;
+    private final int slotsPerRow;
+    private final int slotsPerPage;
+    private final int maxPages;
+    private final int format;
+    private final int type;
+    private final boolean compressed;
+    private final int[] pageTextures;
+    private final int[] freeSlots;
+    private int pageCount;
+    private int freeCount;
+
+    public TileAtlas(int pageSize, int tileSize, int maxPages, Bitmap.Config config) {
+        this(pageSize, tileSize, maxPages, config, false);
+    }
+    // Pages in ETC2 RGB8, filled with ETC1 tiles; sub-image updates of compressed pages need GLES 3.
+    public static TileAtlas compressed(int pageSize, int tileSize, int maxPages) {
+        return new TileAtlas(pageSize, tileSize, maxPages, Bitmap.Config.RGB_565, true);
+    }
+    private TileAtlas(int pageSize, int tileSize, int maxPages, Bitmap.Config config, boolean compressed) {
+        this.pageSize = pageSize;
+        this.tileSize = tileSize;
+        this.slotsPerRow = pageSize / tileSize;
+        this.slotsPerPage = slotsPerRow * slotsPerRow;
+        this.maxPages = maxPages;
+        this.compressed = compressed;
+        boolean opaque = config == Bitmap.Config.RGB_565;
+        this.format = compressed ? GLES30.GL_COMPRESSED_RGB8_ETC2 : opaque ? GLES20.GL_RGB : GLES20.GL_RGBA;
+        this.type = opaque ? GLES20.GL_UNSIGNED_SHORT_5_6_5 : GLES20.GL_UNSIGNED_BYTE;
+        this.pageTextures = new int[maxPages];
+        this.freeSlots = new int[maxPages * slotsPerPage];
+    }
+
+    public int allocate() {
+        if (freeCount == 0 && !addPage()) return NO_SLOT;
+        return freeSlots[--freeCount];
+    }
+    public void free(int handle) {
+        freeSlots[freeCount++] = handle;
+    }
+    // Pixels in the atlas format: RGB565 in native order for opaque atlases, RGBA8888 otherwise.
+    public void upload(int handle, ByteBuffer pixels) {
+        int slot = handle % slotsPerPage;
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, pageTextures[handle / slotsPerPage]);
+        GLES20.glTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, (slot % slotsPerRow) * tileSize, (slot / slotsPerRow) * tileSize,
+                tileSize, tileSize, format, type, pixels);
+    }
+    public void uploadCompressed(int handle, ByteBuffer blocks) {
+        int slot = handle % slotsPerPage;
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, pageTextures[handle / slotsPerPage]);
+        GLES20.glCompressedTexSubImage2D(GLES20.GL_TEXTURE_2D, 0, (slot % slotsPerRow) * tileSize, (slot / slotsPerRow) * tileSize,
+                tileSize, tileSize, format, Etc1.encodedSize(tileSize, tileSize), blocks);
+    }
+    public boolean isCompressed() {
+        return compressed;
+    }
+    public int pageTexture(int page) {
+        return pageTextures[page];
+    }
+    public int capacity() {
+        return maxPages * slotsPerPage;
+    }
+    public void release() {
+        GLES20.glDeleteTextures(pageCount, pageTextures, 0);
+        pageCount = 0;
+        freeCount = 0;
+    }
+
+    private boolean addPage() {
+        if (pageCount == maxPages) return false;
+        int[] texture = new int[1];
+        GLES20.glGenTextures(1, texture, 0);
+        if (texture[0] == 0) return false;
+        GLES20.glBindTexture(GLES20.GL_TEXTURE_2D, texture[0]);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MIN_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_MAG_FILTER, GLES20.GL_LINEAR);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_S, GLES20.GL_CLAMP_TO_EDGE);
+        GLES20.glTexParameteri(GLES20.GL_TEXTURE_2D, GLES20.GL_TEXTURE_WRAP_T, GLES20.GL_CLAMP_TO_EDGE);
+        if (compressed) {
+            int size = Etc1.encodedSize(pageSize, pageSize);
+            GLES20.glCompressedTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, pageSize, pageSize, 0, size, ByteBuffer.allocateDirect(size));
+        } else {
+            GLES20.glTexImage2D(GLES20.GL_TEXTURE_2D, 0, format, pageSize, pageSize, 0, format, type, null);
+        }
+        int page = pageCount++;
+        pageTextures[page] = texture[0];
+        for (int slot = slotsPerPage - 1; slot >= 0; slot--) {
+            freeSlots[freeCount++] = page * slotsPerPage + slot;
+        }
+        return true;
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.maprenderer;
+
+import java.util.Arrays;
+
+/**
+ * Builds the interleaved vertex data (x, y, depth, u, v) for a set of tile quads whose textures
+ * live in atlas pages. Quads are grouped by page so that each page is drawn with one call.
+ */
+public class TileBatch {
+    public static final int FLOATS_PER_VERTEX = 5;
+    public static final int FLOATS_PER_QUAD = 4 * FLOATS_PER_VERTEX;
+
+    private final int slotsPerRow;
+    private final int slotsPerPage;
+    private final float slotSpan;
+    private final float texelInset;
+    private float[] staged = new float[64 * FLOATS_PER_QUAD];
+    private int[] stagedPages = new int[64];
+    private float[] vertices = new float[64 * FLOATS_PER_QUAD];
+    private int quadCount;
+    private int[] rangePages = new int[4];
+    private int[] rangeFirstQuads = new int[4];
+    private int[] rangeQuadCounts = new int[4];
+    private int rangeCount;
+
+    public TileBatch(int pageSize, int tileSize) {
+        this.slotsPerRow = pageSize / tileSize;
+        this.slotsPerPage = slotsPerRow * slotsPerRow;
+        this.slotSpan = (float) tileSize / pageSize;
+        this.texelInset = 0.5f / pageSize;
+    }
+
+    public void reset() {
+        quadCount = 0;
+        rangeCount = 0;
+    }
+    public void add(int slotHandle, float centerX, float centerY, float size, float depth,
+                    float regionScale, float regionX, float regionY) {
+        if (quadCount == stagedPages.length) {
+            stagedPages = Arrays.copyOf(stagedPages, quadCount * 2);
+            staged = Arrays.copyOf(staged, quadCount * 2 * FLOATS_PER_QUAD);
+        }
+        int slot = slotHandle % slotsPerPage;
+        float span = slotSpan - 2 * texelInset;
+        float u0 = (slot % slotsPerRow) * slotSpan + texelInset + regionX * span;
+        float v0 = (slot / slotsPerRow) * slotSpan + texelInset + regionY * span;
+        float u1 = u0 + regionScale * span;
+        float v1 = v0 + regionScale * span;
+        float half = size / 2;
+        int i = quadCount * FLOATS_PER_QUAD;
+        i = putVertex(staged, i, centerX - half, centerY + half, depth, u0, v0);
+        i = putVertex(staged, i, centerX - half, centerY - half, depth, u0, v1);
+        i = putVertex(staged, i, centerX + half, centerY - half, depth, u1, v1);
+        putVertex(staged, i, centerX + half, centerY + half, depth, u1, v0);
+        stagedPages[quadCount++] = slotHandle / slotsPerPage;
+    }
+    public void finish() {
+        if (vertices.length < staged.length) vertices = new float[staged.length];
+        int maxPage = -1;
+        for (int q = 0; q < quadCount; q++) maxPage = Math.max(maxPage, stagedPages[q]);
+        rangeCount = 0;
+        int written = 0;
+        for (int page = 0; page <= maxPage; page++) {
+            int first = written;
+            for (int q = 0; q < quadCount; q++) {
+                if (stagedPages[q] != page) continue;
+                System.arraycopy(staged, q * FLOATS_PER_QUAD, vertices, written * FLOATS_PER_QUAD, FLOATS_PER_QUAD);
+                written++;
+            }
+            if (written > first) addRange(page, first, written - first);
+        }
+    }
+    public float[] vertices() {
+        return vertices;
+    }
+    public int quadCount() {
+        return quadCount;
+    }
+    public int rangeCount() {
+        return rangeCount;
+    }
+    public int rangePage(int range) {
+        return rangePages[range];
+    }
+    public int rangeFirstQuad(int range) {
+        return rangeFirstQuads[range];
+    }
+    public int rangeQuadCount(int range) {
+        return rangeQuadCounts[range];
+    }
+
+    public static short[] buildIndices(int quads) {
+        short[] indices = new short[quads * 6];
+        for (int q = 0; q < quads; q++) {
+            int v = q * 4;
+            int i = q * 6;
+            indices[i] = (short) v;
+            indices[i + 1] = (short) (v + 1);
+            indices[i + 2] = (short) (v + 2);
+            indices[i + 3] = (short) v;
+            indices[i + 4] = (short) (v + 2);
+            indices[i + 5] = (short) (v + 3);
+        }
+        return indices;
+    }
+
+    private void addRange(int page, int firstQuad, int count) {
+        if (rangeCount == rangePages.length) {
+            rangePages = Arrays.copyOf(rangePages, rangeCount * 2);
+            rangeFirstQuads = Arrays.copyOf(rangeFirstQuads, rangeCount * 2);
+            rangeQuadCounts = Arrays.copyOf(rangeQuadCounts, rangeCount * 2);
+        }
+        rangePages[rangeCount] = page;
+        rangeFirstQuads[rangeCount] = firstQuad;
+        rangeQuadCounts[rangeCount] = count;
+        rangeCount++;
+    }
+    private static int putVertex(float[] data, int i, float x, float y, float depth, float u, float v) {
+        data[i] = x;
+        data[i + 1] = y;
+        data[i + 2] = depth;
+        data[i + 3] = u;
+        data[i + 4] = v;
+        return i + FLOATS_PER_VERTEX;
+    }
+}
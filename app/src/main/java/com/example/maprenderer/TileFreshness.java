@@ -0,0 +1,121 @@
+package com.example.maprenderer;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * HTTP caching metadata of one stored tile: the validators for conditional requests (ETag,
+ * Last-Modified) and the time it expires, from Cache-Control max-age or Expires. Tiles without
+ * either header are kept for a week, as the OSM tile usage policy asks.
+ */
+public final class TileFreshness {
+    public static final long DEFAULT_MAX_AGE_MILLIS = 7L * 24 * 60 * 60 * 1000;
+    private static final int FORMAT_VERSION = 1;
+
+    private final String etag;
+    private final String lastModified;
+    private final long expiresMillis;
+    private final boolean notModified;
+
+    public TileFreshness(String etag, String lastModified, long expiresMillis) {
+        this(etag, lastModified, expiresMillis, false);
+    }
+    private TileFreshness(String etag, String lastModified, long expiresMillis, boolean notModified) {
+        this.etag = etag == null || etag.isEmpty() ? null : etag;
+        this.lastModified = lastModified == null || lastModified.isEmpty() ? null : lastModified;
+        this.expiresMillis = expiresMillis;
+        this.notModified = notModified;
+    }
+
+    // expiresMillis and dateMillis are 0 when the header is missing; Expires is taken relative to
+    // the server's Date so a skewed device clock does not shorten or stretch the lifetime.
+    public static TileFreshness fromHeaders(String etag, String lastModified, String cacheControl,
+                                            long expiresMillis, long dateMillis, long nowMillis) {
+        long maxAge = maxAgeMillis(cacheControl);
+        long expires;
+        if (maxAge >= 0) {
+            expires = nowMillis + maxAge;
+        } else if (expiresMillis > 0) {
+            expires = nowMillis + Math.max(0, expiresMillis - (dateMillis > 0 ? dateMillis : nowMillis));
+        } else {
+            expires = nowMillis + DEFAULT_MAX_AGE_MILLIS;
+        }
+        return new TileFreshness(etag, lastModified, expires);
+    }
+    // Max age in milliseconds, 0 for no-cache/no-store, -1 when Cache-Control does not say.
+    static long maxAgeMillis(String cacheControl) {
+        if (cacheControl == null) return -1;
+        long maxAge = -1;
+        for (String directive : cacheControl.split(",")) {
+            String d = directive.trim().toLowerCase(Locale.ROOT);
+            if (d.equals("no-cache") || d.equals("no-store")) return 0;
+            if (d.startsWith("max-age=")) {
+                try {
+                    maxAge = Math.max(0, Long.parseLong(d.substring(8).replace("\"", "").trim())) * 1000;
+                } catch (NumberFormatException ignored) {
+                    // malformed directive, fall back to Expires
+                }
+            }
+        }
+        return maxAge;
+    }
+
+    public String etag() {
+        return etag;
+    }
+    public String lastModified() {
+        return lastModified;
+    }
+    public long expiresMillis() {
+        return expiresMillis;
+    }
+    // True for the answer to a conditional request when the cached body is still current (304).
+    public boolean isNotModified() {
+        return notModified;
+    }
+    public boolean isStale(long nowMillis) {
+        return nowMillis >= expiresMillis;
+    }
+    public boolean hasValidators() {
+        return etag != null || lastModified != null;
+    }
+
+    TileFreshness asNotModified() {
+        return new TileFreshness(etag, lastModified, expiresMillis, true);
+    }
+    // Metadata after a 304: the response's headers win, missing validators are kept from the cached copy.
+    public TileFreshness refreshedBy(TileFreshness response) {
+        return new TileFreshness(response.etag != null ? response.etag : etag,
+                response.lastModified != null ? response.lastModified : lastModified, response.expiresMillis);
+    }
+    public TileFreshness withExpiry(long expiresMillis) {
+        return new TileFreshness(etag, lastModified, expiresMillis);
+    }
+
+    public byte[] encode() {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(64);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(FORMAT_VERSION);
+            out.writeLong(expiresMillis);
+            out.writeUTF(etag == null ? "" : etag);
+            out.writeUTF(lastModified == null ? "" : lastModified);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+        return bytes.toByteArray();
+    }
+    // Returns null for records written by an unknown format.
+    public static TileFreshness decode(byte[] data) {
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(data))) {
+            if (in.readByte() != FORMAT_VERSION) return null;
+            long expires = in.readLong();
+            return new TileFreshness(in.readUTF(), in.readUTF(), expires);
+        } catch (IOException e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,236 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.TileBuffer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.HttpURLConnection;
+import java.net.URL;
+import java.util.Arrays;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Tile downloader over keep-alive HTTP connections. Bodies are always read to the end and closed
+ * so the platform connection pool can reuse the socket; concurrent fetches of the same tile share
+ * one request and the number of requests per host is bounded. Responses report their caching
+ * headers as TileFreshness, and cached tiles can be revalidated with conditional requests.
+ * Requests are timed from the moment they hold their host permit, so a RequestListener sees the
+ * server's latency and not the wait for a connection. A 404 or 410 is the server's answer that the
+ * tile does not exist, not a failure, and is thrown as NoTileException.
+ */
+public class TileHttpClient {
+    public static final int DEFAULT_MAX_PER_HOST = 4;
+    public static final int DEFAULT_CONNECT_TIMEOUT_MS = 5000;
+    public static final int DEFAULT_READ_TIMEOUT_MS = 10000;
+    private static final String USER_AGENT = "MapRenderer/1.0";
+
+    /** Outcome of every request sent, e.g. for FetchConcurrency. Called on the fetching thread. */
+    public interface RequestListener {
+        void onSuccess(long latencyNanos, int bytes, long nowNanos);
+        void onFailure(long nowNanos);
+    }
+
+    /** The server has no such tile, e.g. open sea or past its deepest zoom level. */
+    public static final class NoTileException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        NoTileException(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Call {
+        final CountDownLatch done = new CountDownLatch(1);
+        final AtomicInteger waiters = new AtomicInteger();
+        volatile byte[] data;
+        volatile TileFreshness freshness;
+        volatile IOException error;
+    }
+
+    private final int maxPerHost;
+    private final int connectTimeoutMs;
+    private final int readTimeoutMs;
+    private final ConcurrentHashMap<String, Semaphore> hostPermits = new ConcurrentHashMap<>();
+    private final ConcurrentHashMap<Long, Call> inFlight = new ConcurrentHashMap<>();
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong notModified = new AtomicLong();
+    private volatile RequestListener listener;
+
+    public TileHttpClient() {
+        this(DEFAULT_MAX_PER_HOST, DEFAULT_CONNECT_TIMEOUT_MS, DEFAULT_READ_TIMEOUT_MS);
+    }
+    public TileHttpClient(int maxPerHost, int connectTimeoutMs, int readTimeoutMs) {
+        this.maxPerHost = maxPerHost;
+        this.connectTimeoutMs = connectTimeoutMs;
+        this.readTimeoutMs = readTimeoutMs;
+    }
+
+    public void setRequestListener(RequestListener listener) {
+        this.listener = listener;
+    }
+
+    public TileFreshness fetch(long key, String url, TileBuffer out) throws IOException {
+        while (true) {
+            Call call = new Call();
+            Call leader = inFlight.putIfAbsent(key, call);
+            if (leader == null) return lead(key, url, out, call);
+            leader.waiters.incrementAndGet();
+            TileFreshness freshness = follow(leader, out);
+            if (freshness != null) return freshness;
+        }
+    }
+    // Conditional GET with the validators of a cached copy, or a plain GET when cached is null. On 304
+    // the result isNotModified() and out is left untouched. Never coalesced with other fetches.
+    public TileFreshness fetchIfModified(long key, String url, TileFreshness cached, TileBuffer out) throws IOException {
+        return download(url, cached, out);
+    }
+    public long requestCount() {
+        return requests.get();
+    }
+    public long coalescedCount() {
+        return coalesced.get();
+    }
+    public long notModifiedCount() {
+        return notModified.get();
+    }
+
+    private TileFreshness lead(long key, String url, TileBuffer out, Call call) throws IOException {
+        try {
+            call.freshness = download(url, null, out);
+            return call.freshness;
+        } catch (IOException e) {
+            call.error = e;
+            throw e;
+        } finally {
+            inFlight.remove(key, call);
+            if (call.error == null && call.waiters.get() > 0) call.data = Arrays.copyOf(out.array(), out.length());
+            call.done.countDown();
+        }
+    }
+    // Returns null when the leader finished before this waiter registered; the caller retries.
+    private TileFreshness follow(Call call, TileBuffer out) throws IOException {
+        try {
+            call.done.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for tile");
+        }
+        if (call.error instanceof NoTileException) throw new NoTileException(call.error.getMessage());
+        if (call.error != null) throw new IOException(call.error.getMessage(), call.error);
+        byte[] data = call.data;
+        if (data == null) return null;
+        coalesced.incrementAndGet();
+        out.reset();
+        out.write(data, 0, data.length);
+        return call.freshness;
+    }
+
+    private TileFreshness download(String url, TileFreshness cached, TileBuffer out) throws IOException {
+        URL target = new URL(url);
+        Semaphore permits = permitsFor(target.getHost());
+        try {
+            permits.acquire();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while waiting for connection");
+        }
+        long start = System.nanoTime();
+        HttpURLConnection connection = null;
+        boolean reusable = false;
+        boolean succeeded = false;
+        int bytes = 0;
+        try {
+            connection = (HttpURLConnection) target.openConnection();
+            connection.setConnectTimeout(connectTimeoutMs);
+            connection.setReadTimeout(readTimeoutMs);
+            connection.setRequestProperty("User-Agent", USER_AGENT);
+            if (cached != null && cached.etag() != null) connection.setRequestProperty("If-None-Match", cached.etag());
+            if (cached != null && cached.lastModified() != null) connection.setRequestProperty("If-Modified-Since", cached.lastModified());
+            requests.incrementAndGet();
+            int status = connection.getResponseCode();
+            TileFreshness freshness = TileFreshness.fromHeaders(connection.getHeaderField("ETag"),
+                    connection.getHeaderField("Last-Modified"), connection.getHeaderField("Cache-Control"),
+                    connection.getExpiration(), connection.getDate(), System.currentTimeMillis());
+            if (status == HttpURLConnection.HTTP_NOT_MODIFIED && cached != null) {
+                drain(connection.getInputStream());
+                reusable = true;
+                notModified.incrementAndGet();
+                succeeded = true;
+                return cached.refreshedBy(freshness).asNotModified();
+            }
+            if (status == HttpURLConnection.HTTP_NOT_FOUND || status == HttpURLConnection.HTTP_GONE) {
+                drain(connection.getErrorStream());
+                reusable = true;
+                succeeded = true;
+                throw new NoTileException("HTTP " + status + " for " + url);
+            }
+            if (status != HttpURLConnection.HTTP_OK) {
+                drain(connection.getErrorStream());
+                reusable = true;
+                throw new IOException("HTTP " + status + " for " + url);
+            }
+            out.reset();
+            out.ensureCapacity(connection.getContentLength());
+            InputStream input = connection.getInputStream();
+            try {
+                readFully(input, out);
+            } finally {
+                input.close();
+            }
+            reusable = true;
+            succeeded = true;
+            bytes = out.length();
+            return freshness;
+        } finally {
+            if (!reusable && connection != null) connection.disconnect();
+            permits.release();
+            RequestListener listener = this.listener;
+            if (listener != null) {
+                long now = System.nanoTime();
+                if (succeeded) {
+                    listener.onSuccess(now - start, bytes, now);
+                } else {
+                    listener.onFailure(now);
+                }
+            }
+        }
+    }
+    private Semaphore permitsFor(String host) {
+        Semaphore permits = hostPermits.get(host);
+        if (permits == null) {
+            Semaphore created = new Semaphore(maxPerHost, true);
+            permits = hostPermits.putIfAbsent(host, created);
+            if (permits == null) permits = created;
+        }
+        return permits;
+    }
+
+    private static void readFully(InputStream input, TileBuffer out) throws IOException {
+        int length = 0;
+        while (true) {
+            out.ensureCapacity(length + 4096);
+            byte[] buffer = out.array();
+            int read = input.read(buffer, length, buffer.length - length);
+            if (read == -1) break;
+            length += read;
+        }
+        out.setLength(length);
+    }
+    private static void drain(InputStream input) throws IOException {
+        if (input == null) return;
+        byte[] skip = new byte[1024];
+        try {
+            while (input.read(skip) != -1) {
+                // discard so the connection can be reused
+            }
+        } finally {
+            input.close();
+        }
+    }
+}
@@ -5,42 +5,347 @@ import android.graphics.Bitmap;
 import android.graphics.BitmapFactory;
 import android.util.Log;
 
-import java.io.InputStream;
-import java.net.HttpURLConnection;
-import java.net.URL;
+import com.example.maprenderer.util.DirectBufferPool;
+import com.example.maprenderer.util.Etc1;
+import com.example.maprenderer.util.PngDecoder;
+import com.example.maprenderer.util.TileBuffer;
+import com.example.maprenderer.util.TileKey;
+import com.example.maprenderer.util.VectorMesh;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class TileLoader {
 
     private static final String TILE_URL = "https://tile.openstreetmap.org/%d/%d/%d.png"; // OpenStreetMap tile server
+    private static final String VECTOR_TILE_URL = "https://vector.openstreetmap.org/shortbread_v1/%d/%d/%d.mvt";
+    // Deepest level of the vector tiles; closer views scale them up.
+    public static final int VECTOR_MAX_ZOOM = 14;
     private static final String TAG = "TileLoader";
+    private static final long STORE_MAX_BYTES = 128L * 1024 * 1024;
+    private static final long OFFLINE_MAX_BYTES = 384L * 1024 * 1024;
+    private static final long COMPRESSED_MAX_BYTES = 128L * 1024 * 1024;
+    private static final long METADATA_MAX_BYTES = 4L * 1024 * 1024;
+    private static final int TILE_SIZE = 256;
+    private static final int BITMAP_POOL_SIZE = 8;
+    private static final int PIXEL_POOL_SIZE = 16;
     private final Context context;
+    private final String storePrefix;
+    private final TileStore tileStore;
+    private final HttpTileCache httpCache;
+    private final TileSource tileSource;
+    private final TileStore offlineStore;
+    private final TileStore compressedStore;
+    private final RenderMetrics metrics;
+    private final FetchConcurrency fetchConcurrency = new FetchConcurrency();
+    // As many connections per host as the adaptive limit may ask for, so that limit is what bounds them.
+    private final TileHttpClient httpClient = new TileHttpClient(fetchConcurrency.maxLimit(),
+            TileHttpClient.DEFAULT_CONNECT_TIMEOUT_MS, TileHttpClient.DEFAULT_READ_TIMEOUT_MS);
+    // Runs the requests of TileSource, including hedges still running after their tile was delivered.
+    private final ExecutorService fetchExecutor = Executors.newCachedThreadPool(runnable -> {
+        Thread thread = new Thread(runnable, "tile-fetch");
+        thread.setDaemon(true);
+        return thread;
+    });
+    // One low priority thread: revalidation never competes with visible tiles for more than a connection.
+    private final ExecutorService revalidateExecutor = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "tile-revalidate");
+        thread.setPriority(Thread.MIN_PRIORITY);
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final BitmapPool bitmapPool = new BitmapPool(TILE_SIZE, TILE_SIZE, Bitmap.Config.RGB_565, BITMAP_POOL_SIZE);
+    private volatile int pixelFormat = PngDecoder.RGB565;
+    private volatile DirectBufferPool pixelPool = new DirectBufferPool(TILE_SIZE * TILE_SIZE * PngDecoder.RGB565, PIXEL_POOL_SIZE);
+    private final ThreadLocal<PngDecoder> pngDecoder = new ThreadLocal<PngDecoder>() {
+        @Override
+        protected PngDecoder initialValue() {
+            return new PngDecoder();
+        }
+    };
+    private final ThreadLocal<VectorTileBuilder> vectorBuilder = new ThreadLocal<VectorTileBuilder>() {
+        @Override
+        protected VectorTileBuilder initialValue() {
+            return new VectorTileBuilder(TILE_SIZE);
+        }
+    };
+    private final ThreadLocal<TileBuffer> tileBuffer = new ThreadLocal<TileBuffer>() {
+        @Override
+        protected TileBuffer initialValue() {
+            return new TileBuffer(64 * 1024);
+        }
+    };
+    private final ThreadLocal<int[]> pixelBuffer = new ThreadLocal<int[]>() {
+        @Override
+        protected int[] initialValue() {
+            return new int[TILE_SIZE * TILE_SIZE];
+        }
+    };
+    private final ThreadLocal<BitmapFactory.Options> decodeOptions = new ThreadLocal<BitmapFactory.Options>() {
+        @Override
+        protected BitmapFactory.Options initialValue() {
+            BitmapFactory.Options options = new BitmapFactory.Options();
+            options.inMutable = true;
+            options.inTempStorage = new byte[16 * 1024];
+            return options;
+        }
+    };
 
-    public TileLoader(Context context) {
+    public TileLoader(Context context, RenderMetrics metrics) {
+        this(context, metrics, new TileSource.Mirror(TILE_URL));
+    }
+    // Mirrors are tried in the given order until their measured latency and failures say otherwise.
+    public TileLoader(Context context, RenderMetrics metrics, TileSource.Mirror... mirrors) {
+        this(context, metrics, "", mirrors);
+    }
+    // Mapbox Vector Tiles, by default from the OSM Shortbread tiles; kept in stores of their own.
+    public static TileLoader forVectorTiles(Context context, RenderMetrics metrics, TileSource.Mirror... mirrors) {
+        return new TileLoader(context, metrics, "vector-",
+                mirrors.length > 0 ? mirrors : new TileSource.Mirror[] { new TileSource.Mirror(VECTOR_TILE_URL) });
+    }
+    private TileLoader(Context context, RenderMetrics metrics, String storePrefix, TileSource.Mirror... mirrors) {
         this.context = context;
+        this.storePrefix = storePrefix;
+        this.httpClient.setRequestListener(fetchConcurrency);
+        this.tileSource = new TileSource(httpClient, fetchExecutor, mirrors);
+        this.metrics = metrics;
+        this.tileStore = new TileStore(storeDir("tiles"), STORE_MAX_BYTES);
+        this.offlineStore = new TileStore(storeDir("offline"), OFFLINE_MAX_BYTES, false);
+        this.compressedStore = new TileStore(storeDir("etc1"), COMPRESSED_MAX_BYTES);
+        this.httpCache = new HttpTileCache(tileStore, new TileStore(storeDir("tiles-meta"), METADATA_MAX_BYTES),
+                tileSource, revalidateExecutor);
+        this.httpCache.setListener(this::dropCompressed);
+    }
+
+    public void setOpaqueTiles(boolean opaque) {
+        bitmapPool.setConfig(opaque ? Bitmap.Config.RGB_565 : Bitmap.Config.ARGB_8888);
+        int format = opaque ? PngDecoder.RGB565 : PngDecoder.RGBA8888;
+        if (format != pixelFormat) {
+            pixelFormat = format;
+            pixelPool = new DirectBufferPool(TILE_SIZE * TILE_SIZE * format, PIXEL_POOL_SIZE);
+        }
     }
 
     public Bitmap getTile(int zoom, int x, int y) {
-        String tileUrl = String.format(TILE_URL, zoom, x, y);
-        return downloadTile(tileUrl);
+        TileBuffer data = tileBuffer.get();
+        if (!loadTileData(zoom, x, y, data)) return null;
+        long decodeStart = System.nanoTime();
+        Bitmap bitmap = decode(data);
+        metrics.recordDecode(System.nanoTime() - decodeStart);
+        return bitmap;
     }
 
-    private Bitmap downloadTile(String tileUrl) {
+    // Tile pixels in GL upload layout (RGB565 or RGBA8888, see setOpaqueTiles) in a pooled direct
+    // buffer, decoded without a Bitmap. Hand the buffer back with releasePixels() after uploading.
+    public ByteBuffer getTilePixels(int zoom, int x, int y) {
+        TileBuffer data = tileBuffer.get();
+        if (!loadTileData(zoom, x, y, data)) return null;
+        DirectBufferPool pool = pixelPool;
+        ByteBuffer pixels = pool.acquire();
+        long decodeStart = System.nanoTime();
         try {
-            URL url = new URL(tileUrl);
-            HttpURLConnection connection = (HttpURLConnection) url.openConnection();
-            connection.setDoInput(true);
-            connection.setRequestMethod("GET");
-            connection.setRequestProperty("User-Agent", "MapRenderer/1.0");
-            connection.connect();
+            PngDecoder decoder = pngDecoder.get();
+            boolean decoded = decoder.readHeader(data.array(), 0, data.length())
+                    && decoder.width() == TILE_SIZE && decoder.height() == TILE_SIZE
+                    && decoder.decode(data.array(), 0, data.length(), pixels, pixelFormat);
+            if (!decoded && !decodeWithPlatform(data, pixels)) {
+                pool.release(pixels);
+                return null;
+            }
+        } catch (IOException e) {
+            Log.e(TAG, "Chyba při dekódování dlaždice: " + e.getMessage());
+            pool.release(pixels);
+            return null;
+        }
+        metrics.recordDecode(System.nanoTime() - decodeStart);
+        pixels.flip();
+        return pixels;
+    }
+    public void releasePixels(ByteBuffer pixels) {
+        pixelPool.release(pixels);
+    }
 
-            InputStream input = connection.getInputStream();
-            Bitmap bitmap = BitmapFactory.decodeStream(input);
-            input.close();
+    // Vector tile decoded and tessellated on the calling worker thread, packed for glBufferData.
+    public VectorMesh.Packed getVectorTile(int zoom, int x, int y) {
+        TileBuffer data = tileBuffer.get();
+        if (!loadTileData(zoom, x, y, data)) return null;
+        long decodeStart = System.nanoTime();
+        VectorMesh.Packed packed;
+        try {
+            VectorMesh mesh = vectorBuilder.get().build(data.array(), 0, data.length());
+            if (mesh.droppedFeatures() > 0) {
+                Log.w(TAG, "⚠️ Dlaždice " + TileKey.toString(TileKey.of(zoom, x, y)) + " má příliš mnoho vrcholů, vynecháno prvků: "
+                        + mesh.droppedFeatures());
+            }
+            packed = mesh.pack();
+        } catch (IOException e) {
+            Log.e(TAG, "Chyba při dekódování vektorové dlaždice: " + e.getMessage());
+            return null;
+        }
+        metrics.recordDecode(System.nanoTime() - decodeStart);
+        return packed;
+    }
+
+    private boolean loadTileData(int zoom, int x, int y, TileBuffer data) {
+        long key = TileKey.of(zoom, x, y);
+        boolean stored = readStored(key, data);
+        metrics.recordStoreLookup(stored);
+        if (!stored) {
+            long downloadStart = System.nanoTime();
+            TileFreshness freshness;
+            try {
+                freshness = httpCache.download(key, data);
+            } catch (TileHttpClient.NoTileException e) {
+                // Nothing to draw there, but the download did not fail either.
+                return false;
+            } catch (IOException e) {
+                Log.e(TAG, "Chyba při stahování dlaždice: " + e.getMessage());
+                metrics.recordDownloadFailure();
+                return false;
+            }
+            metrics.recordDownload(System.nanoTime() - downloadStart, data.length());
+            store(key, data, freshness);
+        }
+        return true;
+    }
+
+    // Tile as a packed ETC1 image (see Etc1). Transcoded once from the PNG and kept in its own store,
+    // so later loads skip both the PNG decode and the encoder.
+    public byte[] getCompressedTile(int zoom, int x, int y) {
+        long key = TileKey.of(zoom, x, y);
+        byte[] packed = readCompressed(key);
+        if (packed != null) return packed;
+        Bitmap bitmap = getTile(zoom, x, y);
+        if (bitmap == null) return null;
+        if (bitmap.getWidth() != TILE_SIZE || bitmap.getHeight() != TILE_SIZE) {
+            Log.e(TAG, "Neočekávaná velikost dlaždice: " + bitmap.getWidth() + "x" + bitmap.getHeight());
+            releaseBitmap(bitmap);
+            return null;
+        }
+        long transcodeStart = System.nanoTime();
+        int[] pixels = pixelBuffer.get();
+        bitmap.getPixels(pixels, 0, TILE_SIZE, 0, 0, TILE_SIZE, TILE_SIZE);
+        releaseBitmap(bitmap);
+        packed = Etc1.pack(pixels, TILE_SIZE, TILE_SIZE);
+        metrics.recordTranscode(System.nanoTime() - transcodeStart);
+        try {
+            compressedStore.put(key, packed);
+        } catch (IOException e) {
+            Log.e(TAG, "Chyba při ukládání komprimované dlaždice: " + e.getMessage());
+        }
+        return packed;
+    }
 
+    public TileHttpClient httpClient() {
+        return httpClient;
+    }
+    public TileSource tileSource() {
+        return tileSource;
+    }
+    public HttpTileCache httpCache() {
+        return httpCache;
+    }
+    public FetchConcurrency fetchConcurrency() {
+        return fetchConcurrency;
+    }
+
+    // Seeded regions go to their own non-evicting store, so browsing cannot evict them and a region
+    // that does not fit fails instead of pushing out earlier ones. Downloads use this loader's
+    // mirrors, which have to allow bulk downloads at tilesPerSecond; see OfflineSeeder.
+    public OfflineSeeder createSeeder(double tilesPerSecond) {
+        return new OfflineSeeder(offlineStore, tileSource, tilesPerSecond, storeDir("offline.checkpoint"));
+    }
+
+    public void releaseBitmap(Bitmap bitmap) {
+        bitmapPool.release(bitmap);
+    }
+
+    private File storeDir(String name) {
+        return new File(context.getFilesDir(), storePrefix + name);
+    }
+
+    // Formats PngDecoder does not handle (interlaced, 16 bit, JPEG tiles) go through BitmapFactory.
+    private boolean decodeWithPlatform(TileBuffer data, ByteBuffer pixels) {
+        Bitmap bitmap = decode(data);
+        if (bitmap == null) return false;
+        try {
+            if (bitmap.getWidth() != TILE_SIZE || bitmap.getHeight() != TILE_SIZE || bitmap.getConfig() != bitmapPool.config()) {
+                Log.e(TAG, "Neočekávaný formát dlaždice: " + bitmap.getWidth() + "x" + bitmap.getHeight() + " " + bitmap.getConfig());
+                return false;
+            }
+            bitmap.copyPixelsToBuffer(pixels);
+            return true;
+        } finally {
+            releaseBitmap(bitmap);
+        }
+    }
+
+    private Bitmap decode(TileBuffer data) {
+        BitmapFactory.Options options = decodeOptions.get();
+        options.inPreferredConfig = bitmapPool.config();
+        options.inBitmap = bitmapPool.acquire();
+        try {
+            Bitmap bitmap = BitmapFactory.decodeByteArray(data.array(), 0, data.length(), options);
+            if (bitmap != options.inBitmap) bitmapPool.release(options.inBitmap);
             return bitmap;
-        } catch (Exception e) {
-            Log.e(TAG, "Chyba při stahování dlaždice: " + e.getMessage());
+        } catch (IllegalArgumentException e) {
+            bitmapPool.release(options.inBitmap);
+            options.inBitmap = null;
+            return BitmapFactory.decodeByteArray(data.array(), 0, data.length(), options);
+        } finally {
+            options.inBitmap = null;
+        }
+    }
+
+    // The stores only reach the disk here, e.g. when the app goes to the background.
+    public void flushStores() {
+        try {
+            httpCache.flush();
+            offlineStore.flush();
+            compressedStore.flush();
+        } catch (IOException e) {
+            Log.e(TAG, "Chyba při zápisu úložiště dlaždic: " + e.getMessage());
+        }
+    }
+
+    private boolean readStored(long key, TileBuffer data) {
+        try {
+            return httpCache.get(key, data) || offlineStore.get(key, data);
+        } catch (IOException e) {
+            Log.e(TAG, "Chyba při čtení dlaždice z úložiště: " + e.getMessage());
+            return false;
+        }
+    }
+
+    private byte[] readCompressed(long key) {
+        try {
+            byte[] packed = compressedStore.get(key);
+            if (packed == null || !Etc1.isPacked(packed, packed.length)) return null;
+            httpCache.revalidateIfStale(key);
+            return packed;
+        } catch (IOException e) {
+            Log.e(TAG, "Chyba při čtení komprimované dlaždice: " + e.getMessage());
             return null;
         }
     }
+
+    private void store(long key, TileBuffer data, TileFreshness freshness) {
+        try {
+            httpCache.put(key, data, freshness);
+        } catch (IOException e) {
+            Log.e(TAG, "Chyba při ukládání dlaždice: " + e.getMessage());
+        }
+    }
+
+    // A revalidation brought a new tile image, so its ETC1 transcode is outdated.
+    private void dropCompressed(long key) {
+        try {
+            compressedStore.remove(key);
+        } catch (IOException e) {
+            Log.e(TAG, "Chyba při mazání komprimované dlaždice: " + e.getMessage());
+        }
+    }
 }
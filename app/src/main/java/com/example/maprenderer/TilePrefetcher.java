@@ -0,0 +1,164 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.TileKey;
+
+/**
+ * Requests tiles ahead of the viewport at prefetch priority. Pan velocity is estimated from touch
+ * deltas, the last zoom direction selects the neighbouring level, and a token bucket keeps the
+ * number of prefetched tiles within the configured bandwidth budget.
+ */
+public class TilePrefetcher {
+    private static final long NANOS_PER_SECOND = 1_000_000_000L;
+    private static final long GESTURE_GAP_NANOS = 100_000_000L;
+    private static final float VELOCITY_SMOOTHING = 0.3f;
+    private static final float VELOCITY_DECAY_SECONDS = 0.25f;
+    private static final float MIN_VELOCITY = 0.5f;
+    private static final long ZOOM_TREND_NANOS = 1_500_000_000L;
+    private static final float MAX_BURST_SECONDS = 2.0f;
+
+    public interface TileFilter {
+        boolean isAvailable(long key);
+    }
+
+    private volatile float lookaheadSeconds;
+    private volatile int maxLookaheadTiles;
+    private volatile int depthLimit = Integer.MAX_VALUE;
+    private volatile long bandwidthBytesPerSecond;
+    private volatile int averageTileBytes = 24 * 1024;
+    private volatile int minZoom = 0;
+    private volatile int maxZoom = Integer.MAX_VALUE;
+    private float velocityX;
+    private float velocityY;
+    private long lastPanNanos;
+    private int zoomTrend;
+    private long lastZoomNanos;
+    private float tokens;
+    private long lastRefillNanos;
+    private long requested;
+
+    public TilePrefetcher(float lookaheadSeconds, int maxLookaheadTiles, long bandwidthBytesPerSecond) {
+        this.lookaheadSeconds = lookaheadSeconds;
+        this.maxLookaheadTiles = maxLookaheadTiles;
+        this.bandwidthBytesPerSecond = bandwidthBytesPerSecond;
+    }
+
+    public void setLookahead(float seconds, int maxTiles) {
+        lookaheadSeconds = seconds;
+        maxLookaheadTiles = maxTiles;
+    }
+    // Caps the lookahead below the configured maximum, e.g. while few download slots are available.
+    public void setDepthLimit(int tiles) {
+        depthLimit = Math.max(1, tiles);
+    }
+    // Levels the tile source has; the zoom trend never prefetches outside them.
+    public void setZoomRange(int minZoom, int maxZoom) {
+        this.minZoom = minZoom;
+        this.maxZoom = maxZoom;
+    }
+    public void setBandwidthBudget(long bytesPerSecond) {
+        bandwidthBytesPerSecond = bytesPerSecond;
+    }
+    public void setAverageTileBytes(int bytes) {
+        averageTileBytes = Math.max(1, bytes);
+    }
+    public int maxLookaheadTiles() {
+        return Math.min(maxLookaheadTiles, depthLimit);
+    }
+    public synchronized void onPan(float deltaTilesX, float deltaTilesY, long nowNanos) {
+        long dt = nowNanos - lastPanNanos;
+        lastPanNanos = nowNanos;
+        if (dt <= 0) return;
+        float seconds = Math.max(dt, 1_000_000L) / (float) NANOS_PER_SECOND;
+        float vx = deltaTilesX / seconds;
+        float vy = deltaTilesY / seconds;
+        if (dt > GESTURE_GAP_NANOS) {
+            velocityX = vx;
+            velocityY = vy;
+        } else {
+            velocityX += VELOCITY_SMOOTHING * (vx - velocityX);
+            velocityY += VELOCITY_SMOOTHING * (vy - velocityY);
+        }
+    }
+    public synchronized void onZoom(int direction, long nowNanos) {
+        zoomTrend = Integer.signum(direction);
+        lastZoomNanos = nowNanos;
+    }
+    public synchronized float velocityX(long nowNanos) {
+        return velocityX * decay(nowNanos);
+    }
+    public synchronized float velocityY(long nowNanos) {
+        return velocityY * decay(nowNanos);
+    }
+    public long requestedCount() {
+        return requested;
+    }
+
+    public int prefetch(int zoom, int centerX, int centerY, int tilesX, int tilesY, long nowNanos,
+                        TileScheduler scheduler, TileFilter filter) {
+        float vx;
+        float vy;
+        int trend;
+        synchronized (this) {
+            float decay = decay(nowNanos);
+            vx = velocityX * decay;
+            vy = velocityY * decay;
+            trend = nowNanos - lastZoomNanos < ZOOM_TREND_NANOS ? zoomTrend : 0;
+        }
+        refill(nowNanos);
+        int issued = 0;
+        if (Math.abs(vx) > MIN_VELOCITY || Math.abs(vy) > MIN_VELOCITY) {
+            int maxTiles = maxLookaheadTiles();
+            int aheadX = clamp(Math.round(vx * lookaheadSeconds), maxTiles);
+            int aheadY = clamp(Math.round(vy * lookaheadSeconds), maxTiles);
+            issued += requestWindow(zoom, centerX + aheadX, centerY + aheadY, tilesX, tilesY,
+                    true, centerX, centerY, scheduler, filter);
+        }
+        if (trend != 0 && zoom + trend >= minZoom && zoom + trend <= maxZoom) {
+            int nextZoom = zoom + trend;
+            int nextX = trend > 0 ? centerX << 1 : centerX >> 1;
+            int nextY = trend > 0 ? centerY << 1 : centerY >> 1;
+            issued += requestWindow(nextZoom, nextX, nextY, tilesX, tilesY,
+                    false, 0, 0, scheduler, filter);
+        }
+        requested += issued;
+        return issued;
+    }
+
+    private int requestWindow(int zoom, int centerX, int centerY, int tilesX, int tilesY,
+                              boolean skipVisible, int visibleX, int visibleY,
+                              TileScheduler scheduler, TileFilter filter) {
+        int issued = 0;
+        for (int y = -tilesY; y < tilesY; y++) {
+            for (int x = -tilesX; x < tilesX; x++) {
+                if (tokens < 1) return issued;
+                int tileX = centerX + x;
+                int tileY = centerY + y;
+                if (skipVisible && tileX >= visibleX - tilesX && tileX < visibleX + tilesX
+                        && tileY >= visibleY - tilesY && tileY < visibleY + tilesY) continue;
+                if (!TileKey.isValid(zoom, tileX, tileY)) continue;
+                long key = TileKey.of(zoom, tileX, tileY);
+                if (filter.isAvailable(key)) continue;
+                if (scheduler.request(key, TileScheduler.PRIORITY_PREFETCH)) {
+                    tokens--;
+                    issued++;
+                }
+            }
+        }
+        return issued;
+    }
+    private void refill(long nowNanos) {
+        float tilesPerSecond = bandwidthBytesPerSecond / (float) averageTileBytes;
+        if (lastRefillNanos != 0) {
+            float seconds = (nowNanos - lastRefillNanos) / (float) NANOS_PER_SECOND;
+            tokens = Math.min(tilesPerSecond * MAX_BURST_SECONDS, tokens + seconds * tilesPerSecond);
+        }
+        lastRefillNanos = nowNanos;
+    }
+    private float decay(long nowNanos) {
+        float age = (nowNanos - lastPanNanos) / (float) NANOS_PER_SECOND;
+        return (float) Math.exp(-Math.max(0, age) / VELOCITY_DECAY_SECONDS);
+    }
+    private static int clamp(int value, int limit) {
+        return Math.max(-limit, Math.min(limit, value));
+    }
+}
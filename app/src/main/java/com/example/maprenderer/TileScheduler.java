@@ -0,0 +1,254 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.LongIntMap;
+import com.example.maprenderer.util.TileKey;
+
+import java.util.Arrays;
+
+/**
+ * Tile fetch queue ordered by distance from the viewport center. Requests are de-duplicated against
+ * both pending and in-flight keys, and pending requests that leave the viewport or its zoom range
+ * are dropped when the viewport moves. Failed tiles are not requested again until their retry
+ * backoff has passed. Not thread safe; meant to be driven from the GL thread.
+ */
+public class TileScheduler {
+    public static final int PRIORITY_VISIBLE = 0;
+    public static final int PRIORITY_PREFETCH = 1;
+    private static final int NONE = -1;
+    private static final long CLASS_WEIGHT = 1L << 40;
+    private static final long ZOOM_WEIGHT = 1L << 32;
+    private static final long RETRY_BASE_NANOS = 1_000_000_000L;
+    private static final long RETRY_MAX_NANOS = 60_000_000_000L;
+
+    public interface Dispatcher {
+        void dispatch(long key);
+    }
+
+    private final LongIntMap pending = new LongIntMap(128, NONE);
+    private final LongIntMap inFlight = new LongIntMap(32, NONE);
+    // Failed keys map to their row in the retry arrays.
+    private final LongIntMap retries = new LongIntMap(32, NONE);
+    private long[] retryKeys = new long[32];
+    private long[] retryAtNanos = new long[32];
+    private int[] retryFailures = new int[32];
+    private int retryCount;
+    private long nowNanos;
+    private long[] heapKeys = new long[128];
+    private long[] heapRanks = new long[128];
+    private byte[] heapClasses = new byte[128];
+    private int heapSize;
+    private int prefetchInFlight;
+    private int maxInFlight;
+    private int keepRadius;
+    private int zoomsBelow;
+    private int zoomsAbove;
+    private int zoom = -1;
+    private int centerX;
+    private int centerY;
+    private long dropped;
+
+    public TileScheduler(int maxInFlight, int keepRadius) {
+        this.maxInFlight = maxInFlight;
+        this.keepRadius = keepRadius;
+    }
+
+    public void setZoomRange(int below, int above) {
+        zoomsBelow = below;
+        zoomsAbove = above;
+    }
+    public void setKeepRadius(int keepRadius) {
+        this.keepRadius = keepRadius;
+    }
+    public void setMaxInFlight(int maxInFlight) {
+        this.maxInFlight = maxInFlight;
+    }
+    public int maxInFlight() {
+        return maxInFlight;
+    }
+    public void setTime(long nowNanos) {
+        this.nowNanos = nowNanos;
+    }
+    public void setViewport(int zoom, int centerX, int centerY) {
+        if (zoom == this.zoom && centerX == this.centerX && centerY == this.centerY) return;
+        this.zoom = zoom;
+        this.centerX = centerX;
+        this.centerY = centerY;
+        int kept = 0;
+        for (int i = 0; i < heapSize; i++) {
+            long key = heapKeys[i];
+            if (isStale(key)) {
+                pending.remove(key);
+                dropped++;
+                continue;
+            }
+            heapKeys[kept] = key;
+            heapClasses[kept] = heapClasses[i];
+            heapRanks[kept] = rank(key, heapClasses[i]);
+            kept++;
+        }
+        heapSize = kept;
+        for (int i = retryCount - 1; i >= 0; i--) {
+            if (isStale(retryKeys[i])) removeRetry(i);
+        }
+        for (int i = 0; i < heapSize; i++) pending.put(heapKeys[i], i);
+        for (int i = (heapSize >>> 1) - 1; i >= 0; i--) siftDown(i);
+    }
+    public boolean request(long key, int priorityClass) {
+        if (inFlight.containsKey(key)) return false;
+        int index = pending.get(key);
+        if (index != NONE) {
+            if (priorityClass < heapClasses[index]) {
+                heapClasses[index] = (byte) priorityClass;
+                heapRanks[index] = rank(key, priorityClass);
+                siftUp(index);
+            }
+            return false;
+        }
+        if (zoom >= 0 && isStale(key)) return false;
+        int retry = retries.isEmpty() ? NONE : retries.get(key);
+        if (retry != NONE && nowNanos < retryAtNanos[retry]) return false;
+        if (heapSize == heapKeys.length) grow();
+        heapKeys[heapSize] = key;
+        heapClasses[heapSize] = (byte) priorityClass;
+        heapRanks[heapSize] = rank(key, priorityClass);
+        pending.put(key, heapSize);
+        siftUp(heapSize++);
+        return true;
+    }
+    public boolean isQueued(long key) {
+        return pending.containsKey(key) || inFlight.containsKey(key);
+    }
+    public int dispatch(Dispatcher dispatcher) {
+        int dispatched = 0;
+        while (heapSize > 0 && inFlight.size() < maxInFlight) {
+            long key = heapKeys[0];
+            int priorityClass = heapClasses[0];
+            if (priorityClass == PRIORITY_PREFETCH) {
+                if (prefetchInFlight >= maxInFlight - 1) break;
+                prefetchInFlight++;
+            }
+            removeAt(0);
+            inFlight.put(key, priorityClass);
+            dispatcher.dispatch(key);
+            dispatched++;
+        }
+        return dispatched;
+    }
+    public void complete(long key) {
+        if (inFlight.remove(key) == PRIORITY_PREFETCH) prefetchInFlight--;
+        if (!retries.isEmpty()) removeRetry(retries.get(key));
+    }
+    // The download failed: the key may be requested again after 1 s, doubling per failure up to a minute.
+    public void fail(long key, long nowNanos) {
+        if (inFlight.remove(key) == PRIORITY_PREFETCH) prefetchInFlight--;
+        int retry = retries.get(key);
+        if (retry == NONE) {
+            if (retryCount == retryKeys.length) growRetries();
+            retry = retryCount++;
+            retryKeys[retry] = key;
+            retryFailures[retry] = 0;
+            retries.put(key, retry);
+        }
+        int failures = ++retryFailures[retry];
+        retryAtNanos[retry] = nowNanos + Math.min(RETRY_BASE_NANOS << Math.min(failures - 1, 6), RETRY_MAX_NANOS);
+    }
+    // Earliest future time a failed tile may be retried, or Long.MAX_VALUE; lets on-demand rendering
+    // schedule a frame for it.
+    public long nextRetryNanos() {
+        long next = Long.MAX_VALUE;
+        for (int i = 0; i < retryCount; i++) {
+            if (retryAtNanos[i] > nowNanos) next = Math.min(next, retryAtNanos[i]);
+        }
+        return next;
+    }
+    public int pendingCount() {
+        return heapSize;
+    }
+    public int inFlightCount() {
+        return inFlight.size();
+    }
+    public long droppedCount() {
+        return dropped;
+    }
+
+    private boolean isStale(long key) {
+        int keyZoom = TileKey.zoom(key);
+        int dz = keyZoom - zoom;
+        if (dz < -zoomsBelow || dz > zoomsAbove) return true;
+        int radius = dz < 0 ? (keepRadius >> -dz) + 1 : keepRadius << dz;
+        return Math.abs(TileKey.x(key) - scaledCenter(centerX, dz)) > radius
+                || Math.abs(TileKey.y(key) - scaledCenter(centerY, dz)) > radius;
+    }
+    private long rank(long key, int priorityClass) {
+        int dz = TileKey.zoom(key) - zoom;
+        long dx = TileKey.x(key) - scaledCenter(centerX, dz);
+        long dy = TileKey.y(key) - scaledCenter(centerY, dz);
+        return priorityClass * CLASS_WEIGHT + Math.abs(dz) * ZOOM_WEIGHT + dx * dx + dy * dy;
+    }
+    private static int scaledCenter(int center, int dz) {
+        return dz < 0 ? center >> -dz : center << dz;
+    }
+    private void removeAt(int index) {
+        pending.remove(heapKeys[index]);
+        int last = --heapSize;
+        if (index != last) {
+            swap(index, last);
+            siftDown(index);
+            siftUp(index);
+        }
+    }
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (heapRanks[parent] <= heapRanks[index]) break;
+            swap(index, parent);
+            index = parent;
+        }
+    }
+    private void siftDown(int index) {
+        while (true) {
+            int left = 2 * index + 1;
+            if (left >= heapSize) break;
+            int smallest = left + 1 < heapSize && heapRanks[left + 1] < heapRanks[left] ? left + 1 : left;
+            if (heapRanks[index] <= heapRanks[smallest]) break;
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+    private void swap(int a, int b) {
+        long key = heapKeys[a];
+        long rank = heapRanks[a];
+        byte priorityClass = heapClasses[a];
+        heapKeys[a] = heapKeys[b];
+        heapRanks[a] = heapRanks[b];
+        heapClasses[a] = heapClasses[b];
+        heapKeys[b] = key;
+        heapRanks[b] = rank;
+        heapClasses[b] = priorityClass;
+        if (a < heapSize) pending.put(heapKeys[a], a);
+        if (b < heapSize) pending.put(heapKeys[b], b);
+    }
+    private void grow() {
+        int capacity = heapKeys.length << 1;
+        heapKeys = Arrays.copyOf(heapKeys, capacity);
+        heapRanks = Arrays.copyOf(heapRanks, capacity);
+        heapClasses = Arrays.copyOf(heapClasses, capacity);
+    }
+    // Moves the last row into the freed one.
+    private void removeRetry(int row) {
+        if (row == NONE) return;
+        retries.remove(retryKeys[row]);
+        int last = --retryCount;
+        if (row == last) return;
+        retryKeys[row] = retryKeys[last];
+        retryAtNanos[row] = retryAtNanos[last];
+        retryFailures[row] = retryFailures[last];
+        retries.put(retryKeys[row], row);
+    }
+    private void growRetries() {
+        int capacity = retryKeys.length << 1;
+        retryKeys = Arrays.copyOf(retryKeys, capacity);
+        retryAtNanos = Arrays.copyOf(retryAtNanos, capacity);
+        retryFailures = Arrays.copyOf(retryFailures, capacity);
+    }
+}
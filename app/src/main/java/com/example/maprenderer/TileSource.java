@@ -0,0 +1,263 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.Histogram;
+import com.example.maprenderer.util.TileBuffer;
+import com.example.maprenderer.util.TileKey;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.Locale;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * The tile servers to download from: one or more mirrors, each a URL template with optional
+ * subdomain sharding. Every mirror tracks its latency and failures. fetch() starts on the
+ * healthiest mirror and sends a hedged request to the next one once the first runs past its p95
+ * latency. The first body wins, and errors fail over to the remaining mirrors. A failing mirror
+ * is skipped for an exponentially growing backoff.
+ */
+public class TileSource {
+    public static final long MIN_HEDGE_DELAY_NANOS = 50_000_000L;
+    public static final long DEFAULT_HEDGE_DELAY_NANOS = 1_000_000_000L;
+    private static final int HEDGE_MIN_SAMPLES = 20;
+    private static final int LATENCY_WINDOW = 1024;
+    private static final long BACKOFF_BASE_NANOS = 1_000_000_000L;
+    private static final long BACKOFF_MAX_NANOS = 60_000_000_000L;
+    private static final double LATENCY_SMOOTHING = 0.2;
+
+    /** One server, e.g. "https://{s}.tile.example.org/%d/%d/%d.png" with subdomains "a", "b", "c". */
+    public static final class Mirror {
+        private final String template;
+        private final String[] subdomains;
+        private final Histogram latency = new Histogram();
+        private final AtomicLong requests = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+        private long p95Nanos = -1;
+        private long defaultHedgeDelayNanos = DEFAULT_HEDGE_DELAY_NANOS;
+        private double smoothedLatencyNanos;
+        private int consecutiveFailures;
+        private long backoffUntilNanos;
+
+        public Mirror(String template, String... subdomains) {
+            if (template.contains("{s}") && subdomains.length == 0) {
+                throw new IllegalArgumentException("Template needs subdomains: " + template);
+            }
+            this.template = template;
+            this.subdomains = subdomains.clone();
+        }
+
+        // Neighbouring tiles go to different subdomains so they do not share one host's connection limit.
+        public String url(long key) {
+            int x = TileKey.x(key);
+            int y = TileKey.y(key);
+            String host = subdomains.length == 0 ? template
+                    : template.replace("{s}", subdomains[Math.floorMod(x + y, subdomains.length)]);
+            return String.format(Locale.ROOT, host, TileKey.zoom(key), x, y);
+        }
+        public String template() {
+            return template;
+        }
+        public long requestCount() {
+            return requests.get();
+        }
+        public long failureCount() {
+            return failures.get();
+        }
+        public synchronized long latencyNanos() {
+            return (long) smoothedLatencyNanos;
+        }
+        public synchronized boolean isAvailable(long nowNanos) {
+            return nowNanos >= backoffUntilNanos;
+        }
+        // How long to wait for this mirror before hedging: its recent p95 latency.
+        public synchronized long hedgeDelayNanos() {
+            return p95Nanos < 0 ? defaultHedgeDelayNanos : Math.max(MIN_HEDGE_DELAY_NANOS, p95Nanos);
+        }
+        // Hedge delay used until enough latency samples have been measured.
+        public synchronized void setDefaultHedgeDelay(long nanos) {
+            defaultHedgeDelayNanos = nanos;
+        }
+
+        synchronized void onSuccess(long latencyNanos) {
+            consecutiveFailures = 0;
+            backoffUntilNanos = 0;
+            smoothedLatencyNanos = smoothedLatencyNanos == 0 ? latencyNanos
+                    : smoothedLatencyNanos + LATENCY_SMOOTHING * (latencyNanos - smoothedLatencyNanos);
+            latency.record(latencyNanos);
+            long samples = latency.count();
+            if (samples >= HEDGE_MIN_SAMPLES && samples % 16 == 0) p95Nanos = latency.percentile(95);
+            // Start a new window, keeping the last p95 until the next one has enough samples.
+            if (samples >= LATENCY_WINDOW) latency.reset();
+        }
+        synchronized void onFailure(long nowNanos) {
+            failures.incrementAndGet();
+            consecutiveFailures++;
+            long backoff = BACKOFF_BASE_NANOS << Math.min(consecutiveFailures - 1, 6);
+            backoffUntilNanos = nowNanos + Math.min(backoff, BACKOFF_MAX_NANOS);
+        }
+        synchronized long backoffUntilNanos() {
+            return backoffUntilNanos;
+        }
+    }
+
+    private static final class Attempt {
+        final Mirror mirror;
+        final TileBuffer body;
+        TileFreshness freshness;
+        IOException error;
+
+        Attempt(Mirror mirror, TileBuffer body) {
+            this.mirror = mirror;
+            this.body = body;
+        }
+    }
+
+    private final TileHttpClient client;
+    private final Executor executor;
+    private final Mirror[] mirrors;
+    private final ConcurrentLinkedQueue<TileBuffer> buffers = new ConcurrentLinkedQueue<>();
+    private final AtomicLong hedged = new AtomicLong();
+    private final AtomicLong hedgeWins = new AtomicLong();
+    private final AtomicLong failovers = new AtomicLong();
+
+    // The executor runs the individual requests and needs a thread per concurrent attempt.
+    public TileSource(TileHttpClient client, Executor executor, Mirror... mirrors) {
+        if (mirrors.length == 0) throw new IllegalArgumentException("No tile mirrors");
+        this.client = client;
+        this.executor = executor;
+        this.mirrors = mirrors.clone();
+    }
+
+    public Mirror mirror(int index) {
+        return mirrors[index];
+    }
+    public int mirrorCount() {
+        return mirrors.length;
+    }
+    public TileHttpClient httpClient() {
+        return client;
+    }
+    public long hedgedCount() {
+        return hedged.get();
+    }
+    public long hedgeWinCount() {
+        return hedgeWins.get();
+    }
+    public long failoverCount() {
+        return failovers.get();
+    }
+
+    public TileFreshness fetch(long key, TileBuffer out) throws IOException {
+        return fetch(key, null, out, true);
+    }
+    // For bulk downloads: fails over like fetch() but is never hedged, so each tile costs one request.
+    public TileFreshness fetchUnhedged(long key, TileBuffer out) throws IOException {
+        return fetch(key, null, out, false);
+    }
+    // Conditional request for revalidation: fails over like fetch() but is never hedged.
+    public TileFreshness fetchIfModified(long key, TileFreshness cached, TileBuffer out) throws IOException {
+        return fetch(key, cached, out, false);
+    }
+
+    private TileFreshness fetch(long key, TileFreshness cached, TileBuffer out, boolean hedge) throws IOException {
+        Mirror[] order = ranked(System.nanoTime());
+        ExecutorCompletionService<Attempt> attempts = new ExecutorCompletionService<>(executor);
+        submit(attempts, key, order[0], cached, true);
+        int next = 1;
+        int running = 1;
+        boolean hedging = hedge && order.length > 1;
+        boolean hedged = false;
+        IOException failure = null;
+        try {
+            while (running > 0) {
+                Future<Attempt> done;
+                if (hedging) {
+                    done = attempts.poll(order[0].hedgeDelayNanos(), TimeUnit.NANOSECONDS);
+                    hedging = false;
+                    if (done == null) {
+                        hedged = true;
+                        this.hedged.incrementAndGet();
+                        submit(attempts, key, order[next++], cached, false);
+                        running++;
+                        continue;
+                    }
+                } else {
+                    done = attempts.take();
+                }
+                running--;
+                Attempt attempt = done.get();
+                if (attempt.error == null) {
+                    if (hedged && attempt.mirror != order[0]) hedgeWins.incrementAndGet();
+                    if (!attempt.freshness.isNotModified()) {
+                        out.reset();
+                        out.write(attempt.body.array(), 0, attempt.body.length());
+                    }
+                    buffers.offer(attempt.body);
+                    return attempt.freshness;
+                }
+                failure = attempt.error;
+                buffers.offer(attempt.body);
+                // An answer like any other, the other mirrors serve the same tiles.
+                if (failure instanceof TileHttpClient.NoTileException) throw failure;
+                if (running == 0 && next < order.length) {
+                    failovers.incrementAndGet();
+                    submit(attempts, key, order[next++], cached, false);
+                    running++;
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted while fetching tile");
+        } catch (ExecutionException e) {
+            throw new IOException("Tile fetch failed", e.getCause());
+        }
+        throw failure;
+    }
+    private void submit(ExecutorCompletionService<Attempt> attempts, long key, Mirror mirror, TileFreshness cached,
+                        boolean coalesce) {
+        TileBuffer buffer = buffers.poll();
+        Attempt attempt = new Attempt(mirror, buffer != null ? buffer : new TileBuffer(64 * 1024));
+        attempts.submit(() -> {
+            long start = System.nanoTime();
+            mirror.requests.incrementAndGet();
+            try {
+                // Hedges and failovers must not join the primary's in-flight call for the same key.
+                attempt.freshness = coalesce && cached == null
+                        ? client.fetch(key, mirror.url(key), attempt.body)
+                        : client.fetchIfModified(key, mirror.url(key), cached, attempt.body);
+                mirror.onSuccess(System.nanoTime() - start);
+            } catch (TileHttpClient.NoTileException e) {
+                attempt.error = e;
+                mirror.onSuccess(System.nanoTime() - start);
+            } catch (IOException e) {
+                attempt.error = e;
+                mirror.onFailure(System.nanoTime());
+            }
+            return attempt;
+        });
+    }
+    // Available mirrors by smoothed latency (untried ones first, then configuration order), then
+    // the ones backing off, soonest available first.
+    private Mirror[] ranked(long nowNanos) {
+        Mirror[] order = mirrors.clone();
+        if (order.length == 1) return order;
+        boolean[] available = new boolean[order.length];
+        long[] rank = new long[order.length];
+        for (int i = 0; i < order.length; i++) {
+            available[i] = order[i].isAvailable(nowNanos);
+            rank[i] = available[i] ? order[i].latencyNanos() : order[i].backoffUntilNanos();
+        }
+        Integer[] indices = new Integer[order.length];
+        for (int i = 0; i < indices.length; i++) indices[i] = i;
+        Arrays.sort(indices, (a, b) -> available[a] != available[b] ? (available[a] ? -1 : 1) : Long.compare(rank[a], rank[b]));
+        for (int i = 0; i < indices.length; i++) order[i] = mirrors[indices[i]];
+        return order;
+    }
+}
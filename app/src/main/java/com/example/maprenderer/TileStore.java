@@ -0,0 +1,442 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.LongIntMap;
+import com.example.maprenderer.util.TileBuffer;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent tile cache. Tile bytes are appended to a memory-mapped pack file, the z/x/y index is
+ * kept in memory in LRU order and journaled to a small index file so it survives restarts. Nothing
+ * is forced on the write path, only in flush() and close(): each index record carries a CRC of its
+ * key and tile bytes, and a record whose bytes did not reach the disk is dropped on its first read.
+ * Compaction copies the live tiles into the next generation of both files a bounded step per
+ * write, while reads keep going to the current pack, and commits it by replacing the generation
+ * file, so a crash leaves either the old pair or the new one.
+ */
+public class TileStore {
+    private static final String FILE_PREFIX = "tiles.";
+    private static final String GENERATION_FILE = "tiles.gen";
+    private static final int INDEX_RECORD_SIZE = 8 + 8 + 4 + 4;
+    private static final int REMOVED = -1;
+    private static final long GROW_CHUNK = 4L * 1024 * 1024;
+    private static final long COMPACT_MIN_BYTES = 4L * 1024 * 1024;
+    private static final long COMPACT_STEP_BYTES = 1024 * 1024;
+
+    /** A non-evicting store has no room left for the tiles being written. */
+    public static final class FullException extends IOException {
+        private static final long serialVersionUID = 1L;
+
+        FullException(String message) {
+            super(message);
+        }
+    }
+
+    private final File directory;
+    private final long maxBytes;
+    private final boolean evicting;
+    private final LinkedHashMap<Long, Entry> index = new LinkedHashMap<>(256, 0.75f, true);
+    private final ByteBuffer indexRecord = ByteBuffer.allocate(INDEX_RECORD_SIZE);
+    private final CRC32 crc = new CRC32();
+    private long generation;
+    private RandomAccessFile packFile;
+    private FileChannel indexChannel;
+    private MappedByteBuffer mapped;
+    private Compaction compaction;
+    private long packSize;
+    private long liveBytes;
+
+    public TileStore(File directory, long maxBytes) {
+        this(directory, maxBytes, true);
+    }
+    // A non-evicting store keeps every tile until it is removed and throws FullException from
+    // put() and putAll() instead of making room, e.g. for offline regions.
+    public TileStore(File directory, long maxBytes, boolean evicting) {
+        if (maxBytes <= 0 || maxBytes > Integer.MAX_VALUE / 4) {
+            throw new IllegalArgumentException("maxBytes out of range: " + maxBytes);
+        }
+        this.directory = directory;
+        this.maxBytes = maxBytes;
+        this.evicting = evicting;
+    }
+
+    public synchronized byte[] get(long key) throws IOException {
+        ensureOpen();
+        Entry entry = index.get(key);
+        if (entry == null) return null;
+        byte[] data = new byte[entry.length];
+        ByteBuffer view = mapped.duplicate();
+        view.position((int) entry.offset);
+        view.get(data);
+        return verify(key, entry, data) ? data : null;
+    }
+    public synchronized boolean get(long key, TileBuffer out) throws IOException {
+        ensureOpen();
+        Entry entry = index.get(key);
+        if (entry == null) return false;
+        out.setLength(entry.length);
+        ByteBuffer view = mapped.duplicate();
+        view.position((int) entry.offset);
+        view.get(out.array(), 0, entry.length);
+        if (verify(key, entry, out.array())) return true;
+        out.setLength(0);
+        return false;
+    }
+    public synchronized boolean contains(long key) throws IOException {
+        ensureOpen();
+        return index.containsKey(key);
+    }
+    public void put(long key, byte[] data) throws IOException {
+        put(key, data, data.length);
+    }
+    public synchronized void put(long key, byte[] data, int length) throws IOException {
+        ensureOpen();
+        if (length > maxBytes) return;
+        if (!evicting) checkRoom(length - storedLength(key));
+        Entry entry = append(key, data, length);
+        appendIndexRecord(key, entry);
+        evictOverflow();
+        maybeCompact();
+    }
+    // Stores several tiles with a single index journal write, for bulk downloads.
+    public synchronized void putAll(long[] keys, byte[][] tiles, int count) throws IOException {
+        ensureOpen();
+        if (!evicting) {
+            long added = 0;
+            for (int i = 0; i < count; i++) {
+                if (tiles[i].length <= maxBytes) added += tiles[i].length - storedLength(keys[i]);
+            }
+            checkRoom(added);
+        }
+        ByteBuffer records = ByteBuffer.allocate(count * INDEX_RECORD_SIZE);
+        for (int i = 0; i < count; i++) {
+            byte[] data = tiles[i];
+            if (data.length > maxBytes) continue;
+            Entry entry = append(keys[i], data, data.length);
+            records.putLong(keys[i]).putLong(entry.offset).putInt(entry.length).putInt(entry.crc);
+        }
+        records.flip();
+        while (records.hasRemaining()) indexChannel.write(records);
+        evictOverflow();
+        maybeCompact();
+    }
+    public synchronized void remove(long key) throws IOException {
+        ensureOpen();
+        Entry old = index.remove(key);
+        if (old != null) {
+            liveBytes -= old.length;
+            appendRemovedRecord(key);
+        }
+    }
+    public synchronized int size() throws IOException {
+        ensureOpen();
+        return index.size();
+    }
+    public synchronized long sizeBytes() throws IOException {
+        ensureOpen();
+        return liveBytes;
+    }
+    public synchronized void flush() throws IOException {
+        if (packFile == null) return;
+        mapped.force();
+        indexChannel.force(false);
+    }
+    public synchronized void close() throws IOException {
+        if (packFile == null) return;
+        if (compaction != null) abortCompaction();
+        mapped.force();
+        indexChannel.force(false);
+        indexChannel.close();
+        packFile.close();
+        packFile = null;
+        indexChannel = null;
+        mapped = null;
+    }
+
+    private void ensureOpen() throws IOException {
+        if (packFile != null) return;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Cannot create tile store directory " + directory);
+        }
+        generation = readGeneration();
+        deleteOtherGenerations();
+        packFile = new RandomAccessFile(packFile(generation), "rw");
+        indexChannel = new RandomAccessFile(indexFile(generation), "rw").getChannel();
+        index.clear();
+        liveBytes = 0;
+        packSize = 0;
+        replayIndex(packFile.length());
+        mapped = packFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(packFile.length(), GROW_CHUNK));
+        evictOverflow();
+    }
+    private File packFile(long generation) {
+        return new File(directory, FILE_PREFIX + generation + ".pack");
+    }
+    private File indexFile(long generation) {
+        return new File(directory, FILE_PREFIX + generation + ".idx");
+    }
+    private long readGeneration() throws IOException {
+        File file = new File(directory, GENERATION_FILE);
+        if (file.length() != 8) return 0;
+        try (RandomAccessFile in = new RandomAccessFile(file, "r")) {
+            return in.readLong();
+        }
+    }
+    // The rename is what commits a compaction: until then the old generation stays current.
+    private void writeGeneration(long generation) throws IOException {
+        File tmp = new File(directory, GENERATION_FILE + ".tmp");
+        try (RandomAccessFile out = new RandomAccessFile(tmp, "rw")) {
+            out.setLength(0);
+            out.writeLong(generation);
+            out.getChannel().force(false);
+        }
+        if (!tmp.renameTo(new File(directory, GENERATION_FILE))) {
+            throw new IOException("Cannot commit tile store generation " + generation + " in " + directory);
+        }
+    }
+    // Leftovers of an interrupted compaction, a finished one, or the unversioned file layout.
+    private void deleteOtherGenerations() {
+        File[] files = directory.listFiles();
+        if (files == null) return;
+        String pack = packFile(generation).getName();
+        String idx = indexFile(generation).getName();
+        for (File file : files) {
+            String name = file.getName();
+            if (name.startsWith(FILE_PREFIX) && !name.equals(GENERATION_FILE) && !name.equals(pack) && !name.equals(idx)) {
+                file.delete();
+            }
+        }
+    }
+    private void replayIndex(long packLength) throws IOException {
+        long records = indexChannel.size() / INDEX_RECORD_SIZE;
+        ByteBuffer journal = ByteBuffer.allocate((int) (records * INDEX_RECORD_SIZE));
+        while (journal.hasRemaining() && indexChannel.read(journal, journal.position()) >= 0) {
+        }
+        journal.flip();
+        while (journal.remaining() >= INDEX_RECORD_SIZE) {
+            long key = journal.getLong();
+            long offset = journal.getLong();
+            int length = journal.getInt();
+            int checksum = journal.getInt();
+            Entry old;
+            if (length == REMOVED) {
+                old = index.remove(key);
+            } else if (offset >= 0 && length >= 0 && offset + length <= packLength) {
+                // Checked against its bytes on the first read, not here, to keep the whole pack
+                // from being read in on open.
+                old = index.put(key, new Entry(offset, length, checksum, false));
+                liveBytes += length;
+                packSize = Math.max(packSize, offset + length);
+            } else {
+                old = index.remove(key);
+            }
+            if (old != null) liveBytes -= old.length;
+        }
+        indexChannel.truncate(records * INDEX_RECORD_SIZE);
+        indexChannel.position(records * INDEX_RECORD_SIZE);
+    }
+    private Entry append(long key, byte[] data, int length) throws IOException {
+        long offset = packSize;
+        ensureCapacity(offset + length);
+        ByteBuffer view = mapped.duplicate();
+        view.position((int) offset);
+        view.put(data, 0, length);
+        packSize += length;
+        Entry entry = new Entry(offset, length, checksum(key, data, length), true);
+        Entry old = index.put(key, entry);
+        if (old != null) liveBytes -= old.length;
+        liveBytes += length;
+        return entry;
+    }
+    private int checksum(long key, byte[] data, int length) {
+        crc.reset();
+        for (int shift = 56; shift >= 0; shift -= 8) crc.update((int) (key >>> shift));
+        crc.update(data, 0, length);
+        return (int) crc.getValue();
+    }
+    // A tile journaled before a crash whose bytes never made it to the pack reads back wrong.
+    private boolean verify(long key, Entry entry, byte[] data) throws IOException {
+        if (entry.verified) return true;
+        if (checksum(key, data, entry.length) == entry.crc) {
+            entry.verified = true;
+            return true;
+        }
+        index.remove(key);
+        liveBytes -= entry.length;
+        appendRemovedRecord(key);
+        return false;
+    }
+    private void maybeCompact() throws IOException {
+        if (compaction == null && packSize > COMPACT_MIN_BYTES && packSize > 2 * liveBytes) {
+            startCompaction();
+        }
+        if (compaction != null) compactStep();
+    }
+    private void ensureCapacity(long required) throws IOException {
+        if (required <= mapped.capacity()) return;
+        long capacity = mapped.capacity();
+        while (capacity < required) capacity += Math.max(GROW_CHUNK, capacity / 2);
+        mapped.force();
+        mapped = packFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+    }
+    private void appendIndexRecord(long key, Entry entry) throws IOException {
+        writeIndexRecord(indexChannel, key, entry.offset, entry.length, entry.crc);
+    }
+    private void appendRemovedRecord(long key) throws IOException {
+        writeIndexRecord(indexChannel, key, 0, REMOVED, 0);
+    }
+    private void writeIndexRecord(FileChannel channel, long key, long offset, int length, int checksum) throws IOException {
+        indexRecord.clear();
+        indexRecord.putLong(key).putLong(offset).putInt(length).putInt(checksum).flip();
+        while (indexRecord.hasRemaining()) channel.write(indexRecord);
+    }
+    private int storedLength(long key) {
+        Entry entry = index.get(key);
+        return entry != null ? entry.length : 0;
+    }
+    private void checkRoom(long addedBytes) throws FullException {
+        if (liveBytes + addedBytes > maxBytes) {
+            throw new FullException("Tile store full: " + liveBytes + " + " + addedBytes + " B > " + maxBytes + " B in " + directory);
+        }
+    }
+    private void evictOverflow() throws IOException {
+        if (!evicting) return;
+        Iterator<Map.Entry<Long, Entry>> iterator = index.entrySet().iterator();
+        while (liveBytes > maxBytes && iterator.hasNext()) {
+            Map.Entry<Long, Entry> eldest = iterator.next();
+            liveBytes -= eldest.getValue().length;
+            iterator.remove();
+            appendRemovedRecord(eldest.getKey());
+        }
+    }
+    private void startCompaction() throws IOException {
+        Compaction c = new Compaction(generation + 1, index.size());
+        for (Map.Entry<Long, Entry> e : index.entrySet()) c.add(e.getKey(), e.getValue());
+        compaction = c;
+        try {
+            c.pack = new RandomAccessFile(packFile(c.generation), "rw");
+            c.pack.setLength(0);
+        } catch (IOException e) {
+            abortCompaction();
+            throw e;
+        }
+    }
+    // Copies the snapshot taken at the start, then finishes. Tiles stored or replaced since are
+    // copied by the last step, removed ones are left behind.
+    private void compactStep() throws IOException {
+        Compaction c = compaction;
+        try {
+            long budget = COMPACT_STEP_BYTES;
+            while (c.copied < c.count && budget > 0) {
+                Entry entry = c.entries[c.copied];
+                c.offsets[c.copied++] = copy(c, entry);
+                budget -= entry.length;
+            }
+            if (c.copied == c.count) finishCompaction(c);
+        } catch (IOException e) {
+            abortCompaction();
+            throw e;
+        }
+    }
+    private long copy(Compaction c, Entry entry) throws IOException {
+        ByteBuffer data = mapped.duplicate();
+        data.position((int) entry.offset).limit((int) (entry.offset + entry.length));
+        FileChannel channel = c.pack.getChannel();
+        while (data.hasRemaining()) channel.write(data);
+        long offset = c.size;
+        c.size += entry.length;
+        return offset;
+    }
+    // The new offsets are only applied once the next generation is on disk and committed; until
+    // then, and if it fails, reads keep going to the current pack.
+    private void finishCompaction(Compaction c) throws IOException {
+        Entry[] entries = new Entry[index.size()];
+        long[] offsets = new long[entries.length];
+        File newIndexFile = indexFile(c.generation);
+        try (FileChannel newIndex = new RandomAccessFile(newIndexFile, "rw").getChannel()) {
+            newIndex.truncate(0);
+            int i = 0;
+            for (Map.Entry<Long, Entry> e : index.entrySet()) {
+                Entry entry = e.getValue();
+                int slot = c.slots.get(e.getKey());
+                long offset = slot >= 0 && c.entries[slot] == entry ? c.offsets[slot] : copy(c, entry);
+                writeIndexRecord(newIndex, e.getKey(), offset, entry.length, entry.crc);
+                entries[i] = entry;
+                offsets[i++] = offset;
+            }
+            c.pack.getChannel().force(false);
+            newIndex.force(false);
+        }
+        c.pack.close();
+        writeGeneration(c.generation);
+        compaction = null;
+        for (int i = 0; i < entries.length; i++) entries[i].offset = offsets[i];
+        File oldPackFile = packFile(generation);
+        File oldIndexFile = indexFile(generation);
+        generation = c.generation;
+        indexChannel.close();
+        packFile.close();
+        packFile = new RandomAccessFile(packFile(generation), "rw");
+        indexChannel = new RandomAccessFile(newIndexFile, "rw").getChannel();
+        indexChannel.position(indexChannel.size());
+        packSize = c.size;
+        mapped = packFile.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, Math.max(packSize, GROW_CHUNK));
+        oldPackFile.delete();
+        oldIndexFile.delete();
+    }
+    private void abortCompaction() {
+        Compaction c = compaction;
+        compaction = null;
+        try {
+            if (c.pack != null) c.pack.close();
+        } catch (IOException ignored) {
+        }
+        packFile(c.generation).delete();
+        indexFile(c.generation).delete();
+    }
+
+    private static final class Compaction {
+        final long generation;
+        final Entry[] entries;
+        final long[] offsets;
+        final LongIntMap slots;
+        int count;
+        int copied;
+        long size;
+        RandomAccessFile pack;
+
+        Compaction(long generation, int capacity) {
+            this.generation = generation;
+            this.entries = new Entry[capacity];
+            this.offsets = new long[capacity];
+            this.slots = new LongIntMap(capacity, -1);
+        }
+        void add(long key, Entry entry) {
+            slots.put(key, count);
+            entries[count++] = entry;
+        }
+    }
+
+    private static final class Entry {
+        long offset;
+        final int length;
+        final int crc;
+        boolean verified;
+
+        Entry(long offset, int length, int crc, boolean verified) {
+            this.offset = offset;
+            this.length = length;
+            this.crc = crc;
+            this.verified = verified;
+        }
+    }
+}
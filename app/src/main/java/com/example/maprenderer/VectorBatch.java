@@ -0,0 +1,71 @@
+package com.example.maprenderer;
+
+import java.util.Arrays;
+
+/**
+ * Draw list of the vector tile mode, filled by MapController instead of TileBatch. A vector tile
+ * is drawn whole, scaled and offset to where it lies, so the quads MapController asks for (a tile,
+ * a child of a mosaic or a region of an ancestor) become one entry per tile mesh. An ancestor that
+ * stands in for several missing tiles is only drawn once; depth keeps it below the tiles that are
+ * there.
+ */
+public class VectorBatch {
+    private int[] handles = new int[64];
+    private float[] centerX = new float[64];
+    private float[] centerY = new float[64];
+    private float[] sizes = new float[64];
+    private float[] depths = new float[64];
+    private int count;
+    private int[] seen = new int[64];
+    private int generation = 1;
+
+    public void reset() {
+        count = 0;
+        if (++generation == 0) {
+            Arrays.fill(seen, 0);
+            generation = 1;
+        }
+    }
+    // Same arguments as TileBatch.add(); the region selects the part of the mesh that covers the quad.
+    public void add(int handle, float quadCenterX, float quadCenterY, float quadSize, float depth,
+                    float regionScale, float regionX, float regionY) {
+        if (handle >= seen.length) seen = Arrays.copyOf(seen, Math.max(handle + 1, seen.length * 2));
+        if (seen[handle] == generation) return;
+        seen[handle] = generation;
+        if (count == handles.length) {
+            handles = Arrays.copyOf(handles, count * 2);
+            centerX = Arrays.copyOf(centerX, count * 2);
+            centerY = Arrays.copyOf(centerY, count * 2);
+            sizes = Arrays.copyOf(sizes, count * 2);
+            depths = Arrays.copyOf(depths, count * 2);
+        }
+        float size = quadSize / regionScale;
+        float left = quadCenterX - quadSize / 2 - regionX * size;
+        float top = quadCenterY + quadSize / 2 + regionY * size;
+        handles[count] = handle;
+        centerX[count] = left + size / 2;
+        centerY[count] = top - size / 2;
+        sizes[count] = size;
+        depths[count] = depth;
+        count++;
+    }
+    public int count() {
+        return count;
+    }
+    public int handle(int i) {
+        return handles[i];
+    }
+    public float centerX(int i) {
+        return centerX[i];
+    }
+    public float centerY(int i) {
+        return centerY[i];
+    }
+    // Edge length of the whole tile in world units.
+    public float size(int i) {
+        return sizes[i];
+    }
+    public float depth(int i) {
+        return depths[i];
+    }
+}
@@ -0,0 +1,134 @@
+package com.example.maprenderer;
+
+import android.opengl.GLES20;
+
+import com.example.maprenderer.util.VectorMesh;
+
+/**
+ * GPU side of the vector tile mode: a vertex and index buffer per tile mesh, addressed by handle
+ * like the slots of TileAtlas, and the fill/line shader. Each tile is one draw call with its
+ * placement in uniforms; line vertices are pushed out by their extrusion times the world size of
+ * a screen pixel, so lines keep their width at any scale. GL thread only.
+ */
+public class VectorLayer {
+    public static final int NO_SLOT = -1;
+
+    private final int[] vertexBuffers;
+    private final int[] indexBuffers;
+    private final int[] indexCounts;
+    private final int[] freeHandles;
+    private final float[] colors = VectorStyle.colors();
+    private int freeCount;
+    private int created;
+    private final int program;
+    private final int positionHandle, extrusionHandle, styleHandle;
+    private final int mvpMatrixHandle, tileHandle, pixelSizeHandle, colorsHandle;
+
+    public VectorLayer(int maxTiles) {
+        vertexBuffers = new int[maxTiles];
+        indexBuffers = new int[maxTiles];
+        indexCounts = new int[maxTiles];
+        freeHandles = new int[maxTiles];
+        program = createShaderProgram();
+        positionHandle = GLES20.glGetAttribLocation(program, "a_Position");
+        extrusionHandle = GLES20.glGetAttribLocation(program, "a_Extrusion");
+        styleHandle = GLES20.glGetAttribLocation(program, "a_Style");
+        mvpMatrixHandle = GLES20.glGetUniformLocation(program, "u_MVPMatrix");
+        tileHandle = GLES20.glGetUniformLocation(program, "u_Tile");
+        pixelSizeHandle = GLES20.glGetUniformLocation(program, "u_PixelSize");
+        colorsHandle = GLES20.glGetUniformLocation(program, "u_Colors");
+    }
+
+    // Buffers are created on first use and kept for reuse when their tile is evicted.
+    public int allocate() {
+        if (freeCount > 0) return freeHandles[--freeCount];
+        if (created == vertexBuffers.length) return NO_SLOT;
+        int[] buffers = new int[2];
+        GLES20.glGenBuffers(2, buffers, 0);
+        vertexBuffers[created] = buffers[0];
+        indexBuffers[created] = buffers[1];
+        return created++;
+    }
+    public void free(int handle) {
+        indexCounts[handle] = 0;
+        freeHandles[freeCount++] = handle;
+    }
+    public void upload(int handle, VectorMesh.Packed mesh) {
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBuffers[handle]);
+        GLES20.glBufferData(GLES20.GL_ARRAY_BUFFER, mesh.vertices.limit() * 4, mesh.vertices, GLES20.GL_STATIC_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBuffers[handle]);
+        GLES20.glBufferData(GLES20.GL_ELEMENT_ARRAY_BUFFER, mesh.indexCount() * 2, mesh.indices, GLES20.GL_STATIC_DRAW);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+        indexCounts[handle] = mesh.indexCount();
+    }
+
+    // pixelSize: world units per screen pixel before the model matrix, i.e. divided by the view scale.
+    // Leaves its own program bound.
+    public void draw(VectorBatch batch, float[] mvpMatrix, float pixelSize) {
+        if (batch.count() == 0) return;
+        GLES20.glUseProgram(program);
+        GLES20.glUniformMatrix4fv(mvpMatrixHandle, 1, false, mvpMatrix, 0);
+        GLES20.glUniform1f(pixelSizeHandle, pixelSize);
+        GLES20.glUniform4fv(colorsHandle, VectorStyle.COUNT, colors, 0);
+        GLES20.glEnableVertexAttribArray(positionHandle);
+        GLES20.glEnableVertexAttribArray(extrusionHandle);
+        GLES20.glEnableVertexAttribArray(styleHandle);
+        // Features of one tile share its depth and are painted in order.
+        GLES20.glDepthFunc(GLES20.GL_LEQUAL);
+        int stride = VectorMesh.FLOATS_PER_VERTEX * 4;
+        for (int i = 0; i < batch.count(); i++) {
+            int handle = batch.handle(i);
+            if (indexCounts[handle] == 0) continue;
+            GLES20.glUniform4f(tileHandle, batch.centerX(i), batch.centerY(i),
+                    batch.size(i) / MapController.TILE_SIZE, batch.depth(i));
+            GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, vertexBuffers[handle]);
+            GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, indexBuffers[handle]);
+            GLES20.glVertexAttribPointer(positionHandle, 2, GLES20.GL_FLOAT, false, stride, 0);
+            GLES20.glVertexAttribPointer(extrusionHandle, 2, GLES20.GL_FLOAT, false, stride, 2 * 4);
+            GLES20.glVertexAttribPointer(styleHandle, 1, GLES20.GL_FLOAT, false, stride, 4 * 4);
+            GLES20.glDrawElements(GLES20.GL_TRIANGLES, indexCounts[handle], GLES20.GL_UNSIGNED_SHORT, 0);
+        }
+        GLES20.glDepthFunc(GLES20.GL_LESS);
+        GLES20.glBindBuffer(GLES20.GL_ARRAY_BUFFER, 0);
+        GLES20.glBindBuffer(GLES20.GL_ELEMENT_ARRAY_BUFFER, 0);
+    }
+
+    private static int createShaderProgram() {
+        String vertexShaderCode =
+                "attribute vec2 a_Position;" +
+                        "attribute vec2 a_Extrusion;" +
+                        "attribute float a_Style;" +
+                        "uniform mat4 u_MVPMatrix;" +
+                        "uniform vec4 u_Tile;" +
+                        "uniform float u_PixelSize;" +
+                        "uniform vec4 u_Colors[" + VectorStyle.COUNT + "];" +
+                        "varying vec4 v_Color;" +
+                        "void main() {" +
+                        "  vec2 position = u_Tile.xy + a_Position * u_Tile.z + a_Extrusion * u_PixelSize;" +
+                        "  gl_Position = u_MVPMatrix * vec4(position, u_Tile.w, 1.0);" +
+                        "  v_Color = u_Colors[int(a_Style + 0.5)];" +
+                        "}";
+
+        String fragmentShaderCode =
+                "precision mediump float;" +
+                        "varying vec4 v_Color;" +
+                        "void main() {" +
+                        "  gl_FragColor = v_Color;" +
+                        "}";
+
+        int vertexShader = GLES20.glCreateShader(GLES20.GL_VERTEX_SHADER);
+        GLES20.glShaderSource(vertexShader, vertexShaderCode);
+        GLES20.glCompileShader(vertexShader);
+
+        int fragmentShader = GLES20.glCreateShader(GLES20.GL_FRAGMENT_SHADER);
+        GLES20.glShaderSource(fragmentShader, fragmentShaderCode);
+        GLES20.glCompileShader(fragmentShader);
+
+        int shaderProgram = GLES20.glCreateProgram();
+        GLES20.glAttachShader(shaderProgram, vertexShader);
+        GLES20.glAttachShader(shaderProgram, fragmentShader);
+        GLES20.glLinkProgram(shaderProgram);
+        return shaderProgram;
+    }
+}
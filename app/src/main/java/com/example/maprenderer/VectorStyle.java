@@ -0,0 +1,128 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.MvtDecoder;
+
+/**
+ * Built-in style of the vector tile mode. Each style is a fill or a line with one color; its
+ * index is also the paint order within a tile. Layer names of the Shortbread schema
+ * (vector.openstreetmap.org) and of OpenMapTiles are both understood, other layers are skipped.
+ */
+public final class VectorStyle {
+    public static final int NONE = -1;
+    public static final int BACKGROUND = 0;
+    public static final int GREEN = 1;
+    public static final int WATER = 2;
+    public static final int BUILDING = 3;
+    public static final int WATERWAY = 4;
+    public static final int MINOR_ROAD = 5;
+    public static final int MAJOR_ROAD = 6;
+    public static final int BOUNDARY = 7;
+    public static final int COUNT = 8;
+
+    // RGBA per style, uploaded as the shader's color table.
+    private static final float[] COLORS = {
+            0.949f, 0.937f, 0.914f, 1f,
+            0.784f, 0.890f, 0.765f, 1f,
+            0.667f, 0.827f, 0.875f, 1f,
+            0.851f, 0.816f, 0.788f, 1f,
+            0.667f, 0.827f, 0.875f, 1f,
+            1f, 1f, 1f, 1f,
+            0.988f, 0.839f, 0.643f, 1f,
+            0.612f, 0.522f, 0.655f, 1f,
+    };
+    // Half line width in screen pixels; 0 for fills.
+    private static final float[] HALF_WIDTHS = { 0, 0, 0, 0, 1f, 1.5f, 3f, 0.75f };
+
+    private VectorStyle() {
+    }
+
+    public static float[] colors() {
+        return COLORS.clone();
+    }
+    public static boolean isLine(int style) {
+        return HALF_WIDTHS[style] > 0;
+    }
+    public static float halfWidth(int style) {
+        return HALF_WIDTHS[style];
+    }
+    // Layers the style never draws are skipped without decoding their features.
+    public static boolean drawsLayer(String layer) {
+        return needsKind(layer) || layerStyle(layer, null) != NONE;
+    }
+    // Layers whose style depends on the feature's "kind" (Shortbread) or "class" (OpenMapTiles) tag.
+    public static boolean needsKind(String layer) {
+        switch (layer) {
+            case "land":
+            case "landcover":
+            case "streets":
+            case "transportation":
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    public static int styleOf(String layer, String kind, int geometryType) {
+        int style = layerStyle(layer, kind);
+        if (style == NONE || geometryType == MvtDecoder.POINT) return NONE;
+        // Lines in fill layers (e.g. coastlines) and areas in line layers (e.g. pedestrian squares) are skipped.
+        return isLine(style) == (geometryType == MvtDecoder.LINESTRING) ? style : NONE;
+    }
+    private static int layerStyle(String layer, String kind) {
+        switch (layer) {
+            case "ocean":
+            case "water":
+            case "water_polygons":
+                return WATER;
+            case "land":
+            case "landcover":
+                return isGreen(kind) ? GREEN : NONE;
+            case "park":
+                return GREEN;
+            case "building":
+            case "buildings":
+                return BUILDING;
+            case "waterway":
+            case "water_lines":
+                return WATERWAY;
+            case "streets":
+            case "transportation":
+                return isMajorRoad(kind) ? MAJOR_ROAD : MINOR_ROAD;
+            case "boundary":
+            case "boundaries":
+                return BOUNDARY;
+            default:
+                return NONE;
+        }
+    }
+    private static boolean isGreen(String kind) {
+        if (kind == null) return false;
+        switch (kind) {
+            case "forest":
+            case "wood":
+            case "grass":
+            case "grassland":
+            case "meadow":
+            case "park":
+            case "village_green":
+            case "recreation_ground":
+            case "garden":
+            case "scrub":
+                return true;
+            default:
+                return false;
+        }
+    }
+    private static boolean isMajorRoad(String kind) {
+        if (kind == null) return false;
+        switch (kind) {
+            case "motorway":
+            case "trunk":
+            case "primary":
+            case "secondary":
+                return true;
+            default:
+                return false;
+        }
+    }
+}
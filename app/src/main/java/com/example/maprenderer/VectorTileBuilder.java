@@ -0,0 +1,72 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.MvtDecoder;
+import com.example.maprenderer.util.Tessellator;
+import com.example.maprenderer.util.VectorMesh;
+
+import java.io.IOException;
+
+/**
+ * Decodes an MVT tile and tessellates it with VectorStyle into a VectorMesh in tile units: a
+ * TILE_SIZE square centred on the origin, y up, like one quad of TileBatch. The mesh starts with
+ * an opaque background square, so a tile covers whatever fallback is drawn below it. Runs on the
+ * tile worker threads, one builder per thread.
+ */
+public class VectorTileBuilder implements MvtDecoder.Handler {
+    private final MvtDecoder decoder = new MvtDecoder();
+    private final Tessellator tessellator = new Tessellator();
+    private final VectorMesh mesh = new VectorMesh(VectorStyle.COUNT);
+    private final float tileSize;
+    private float[] points = new float[512];
+    private String layer;
+    private float scale;
+    private boolean needsKind;
+
+    public VectorTileBuilder(int tileSize) {
+        this.tileSize = tileSize;
+    }
+
+    // The mesh is reused by the next build(); pack() it to keep it.
+    public VectorMesh build(byte[] tile, int offset, int length) throws IOException {
+        mesh.reset();
+        float half = tileSize / 2;
+        int a = mesh.addVertex(-half, half, 0, 0, VectorStyle.BACKGROUND);
+        int b = mesh.addVertex(-half, -half, 0, 0, VectorStyle.BACKGROUND);
+        int c = mesh.addVertex(half, -half, 0, 0, VectorStyle.BACKGROUND);
+        int d = mesh.addVertex(half, half, 0, 0, VectorStyle.BACKGROUND);
+        mesh.addTriangle(VectorStyle.BACKGROUND, a, b, c);
+        mesh.addTriangle(VectorStyle.BACKGROUND, a, c, d);
+        decoder.decode(tile, offset, length, this);
+        return mesh;
+    }
+
+    @Override
+    public boolean onLayer(String name, int extent) {
+        layer = name;
+        scale = tileSize / extent;
+        needsKind = VectorStyle.needsKind(name);
+        return VectorStyle.drawsLayer(name);
+    }
+    @Override
+    public void onFeature(int type, int[] xy, int pointCount, int[] partEnds, int partCount) {
+        String kind = null;
+        if (needsKind) {
+            kind = decoder.tag("kind");
+            if (kind == null) kind = decoder.tag("class");
+        }
+        int style = VectorStyle.styleOf(layer, kind, type);
+        if (style == VectorStyle.NONE) return;
+        if (points.length < 2 * pointCount) points = new float[2 * pointCount];
+        // Extent coordinates grow downwards from the top left corner.
+        float half = tileSize / 2;
+        for (int i = 0; i < pointCount; i++) {
+            points[2 * i] = xy[2 * i] * scale - half;
+            points[2 * i + 1] = half - xy[2 * i + 1] * scale;
+        }
+        if (type == MvtDecoder.POLYGON) {
+            tessellator.fill(points, partEnds, partCount, style, mesh);
+        } else {
+            tessellator.stroke(points, partEnds, partCount, false, VectorStyle.halfWidth(style), style, mesh);
+        }
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.maprenderer;
+
+/**
+ * Immutable view state: the center tile, the offset of the screen center from it in world units
+ * and the GPU scale of the current level. Gesture input publishes new instances through
+ * MapController, and the GL thread draws each frame from exactly one of them.
+ */
+public final class Viewport {
+    private static final int TILE_SIZE = MapController.TILE_SIZE;
+    private static final double ZOOM_IN_THRESHOLD = Math.sqrt(2);
+    private static final double ZOOM_OUT_THRESHOLD = 1 / Math.sqrt(2);
+
+    private final int zoom;
+    private final int tileX;
+    private final int tileY;
+    private final float offsetX;
+    private final float offsetY;
+    private final float scale;
+
+    public Viewport(int zoom, int tileX, int tileY, float offsetX, float offsetY, float scale) {
+        this.zoom = zoom;
+        this.tileX = tileX;
+        this.tileY = tileY;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.scale = scale;
+    }
+    // Fractional tile coordinates of the screen center, e.g. from TileMath.
+    public static Viewport centered(int zoom, double x, double y, float scale) {
+        double centerX = x - 0.5;
+        double centerY = y - 0.5;
+        int tileX = (int) Math.round(centerX);
+        int tileY = (int) Math.round(centerY);
+        return new Viewport(zoom, tileX, tileY, (float) ((centerX - tileX) * TILE_SIZE),
+                (float) ((centerY - tileY) * TILE_SIZE), scale);
+    }
+
+    public int zoom() {
+        return zoom;
+    }
+    public int tileX() {
+        return tileX;
+    }
+    public int tileY() {
+        return tileY;
+    }
+    public float offsetX() {
+        return offsetX;
+    }
+    public float offsetY() {
+        return offsetY;
+    }
+    public float scale() {
+        return scale;
+    }
+    public double centerX() {
+        return tileX + 0.5 + offsetX / TILE_SIZE;
+    }
+    public double centerY() {
+        return tileY + 0.5 + offsetY / TILE_SIZE;
+    }
+    public double zoomLevel() {
+        return zoom + Math.log(scale) / Math.log(2);
+    }
+
+    // Moves the center by the given world units, carrying whole tiles over into tileX/tileY.
+    public Viewport panned(float deltaX, float deltaY) {
+        int x = tileX;
+        int y = tileY;
+        float newOffsetX = offsetX + deltaX;
+        float newOffsetY = offsetY + deltaY;
+        while (newOffsetX > TILE_SIZE) {
+            x++;
+            newOffsetX -= TILE_SIZE;
+        }
+        while (newOffsetX < -TILE_SIZE) {
+            x--;
+            newOffsetX += TILE_SIZE;
+        }
+        while (newOffsetY > TILE_SIZE) {
+            y++;
+            newOffsetY -= TILE_SIZE;
+        }
+        while (newOffsetY < -TILE_SIZE) {
+            y--;
+            newOffsetY += TILE_SIZE;
+        }
+        return new Viewport(zoom, x, y, newOffsetX, newOffsetY, scale);
+    }
+    // focusX/Y: distance of the focus point from the screen center in tiles at scale 1. The tile
+    // level only changes when the scale crosses sqrt(2) either way. Returns this when nothing changes.
+    public Viewport zoomed(float scaleFactor, double focusX, double focusY) {
+        if (!(scaleFactor > 0) || scaleFactor == 1f) return this;
+        double level = Math.max(MapController.MIN_ZOOM, Math.min(MapController.MAX_ZOOM,
+                zoomLevel() + Math.log(scaleFactor) / Math.log(2)));
+        double newScale = Math.pow(2, level - zoom);
+        if (Math.abs(newScale - scale) < 1e-6) return this;
+        double shift = 1 / scale - 1 / newScale;
+        double x = centerX() + focusX * shift;
+        double y = centerY() + focusY * shift;
+        int newZoom = zoom;
+        while (newScale >= ZOOM_IN_THRESHOLD && newZoom < MapController.MAX_ZOOM) {
+            newZoom++;
+            newScale /= 2;
+            x *= 2;
+            y *= 2;
+        }
+        while (newScale < ZOOM_OUT_THRESHOLD && newZoom > MapController.MIN_ZOOM) {
+            newZoom--;
+            newScale *= 2;
+            x /= 2;
+            y /= 2;
+        }
+        return centered(newZoom, x, y, (float) newScale);
+    }
+
+    public boolean sameView(Viewport other) {
+        return other != null && zoom == other.zoom && tileX == other.tileX && tileY == other.tileY
+                && offsetX == other.offsetX && offsetY == other.offsetY && scale == other.scale;
+    }
+    @Override
+    public String toString() {
+        return zoom + "/" + tileX + "/" + tileY + " +" + offsetX + "," + offsetY + " x" + scale;
+    }
+}
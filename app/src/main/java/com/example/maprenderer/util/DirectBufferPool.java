@@ -0,0 +1,42 @@
+package com.example.maprenderer.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayDeque;
+
+/**
+ * Bounded pool of equally sized direct buffers in native byte order, for pixel data that is
+ * handed from the tile workers to the GL thread. Buffers beyond the pool size are left to the GC.
+ */
+public final class DirectBufferPool {
+    private final int bufferBytes;
+    private final int maxSize;
+    private final ArrayDeque<ByteBuffer> pool;
+    private long allocated;
+
+    public DirectBufferPool(int bufferBytes, int maxSize) {
+        this.bufferBytes = bufferBytes;
+        this.maxSize = maxSize;
+        this.pool = new ArrayDeque<>(maxSize);
+    }
+
+    public synchronized ByteBuffer acquire() {
+        ByteBuffer buffer = pool.poll();
+        if (buffer == null) {
+            allocated++;
+            buffer = ByteBuffer.allocateDirect(bufferBytes).order(ByteOrder.nativeOrder());
+        }
+        buffer.clear();
+        return buffer;
+    }
+    public synchronized void release(ByteBuffer buffer) {
+        if (buffer == null || buffer.capacity() != bufferBytes || pool.size() >= maxSize) return;
+        pool.push(buffer);
+    }
+    public synchronized int size() {
+        return pool.size();
+    }
+    public synchronized long allocatedCount() {
+        return allocated;
+    }
+}
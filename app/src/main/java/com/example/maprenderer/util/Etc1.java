@@ -0,0 +1,231 @@
+package com.example.maprenderer.util;
+
+/**
+ * ETC1 block compression of opaque tiles and the cached tile format. Each 4x4 block is split into
+ * two halves (side by side or stacked), each half gets a base color and one of eight intensity
+ * modifier tables, and every pixel picks one of four modifiers. ETC1 blocks are valid ETC2 RGB8
+ * blocks, so the output can be uploaded with either format. A packed tile is an 8 byte header
+ * ("ETC1", width and height as shorts) followed by the blocks in row-major order.
+ */
+public final class Etc1 {
+    public static final int BLOCK_BYTES = 8;
+    public static final int HEADER_BYTES = 8;
+    private static final int[][] MODIFIERS = {
+            {2, 8}, {5, 17}, {9, 29}, {13, 42}, {18, 60}, {24, 80}, {33, 106}, {47, 183}
+    };
+
+    private static final class Fit {
+        int table;
+        int error;
+        final int[] selectors = new int[16];
+    }
+
+    private Etc1() {
+    }
+
+    public static int encodedSize(int width, int height) {
+        return (width / 4) * (height / 4) * BLOCK_BYTES;
+    }
+
+    public static byte[] pack(int[] argb, int width, int height) {
+        byte[] packed = new byte[HEADER_BYTES + encodedSize(width, height)];
+        packed[0] = 'E';
+        packed[1] = 'T';
+        packed[2] = 'C';
+        packed[3] = '1';
+        packed[4] = (byte) (width >> 8);
+        packed[5] = (byte) width;
+        packed[6] = (byte) (height >> 8);
+        packed[7] = (byte) height;
+        encode(argb, width, height, packed, HEADER_BYTES);
+        return packed;
+    }
+    public static boolean isPacked(byte[] data, int length) {
+        return length >= HEADER_BYTES && data[0] == 'E' && data[1] == 'T' && data[2] == 'C' && data[3] == '1'
+                && length == HEADER_BYTES + encodedSize(packedWidth(data), packedHeight(data));
+    }
+    public static int packedWidth(byte[] packed) {
+        return (packed[4] & 0xff) << 8 | (packed[5] & 0xff);
+    }
+    public static int packedHeight(byte[] packed) {
+        return (packed[6] & 0xff) << 8 | (packed[7] & 0xff);
+    }
+
+    public static void encode(int[] argb, int width, int height, byte[] out, int offset) {
+        if (width % 4 != 0 || height % 4 != 0) throw new IllegalArgumentException("Size not a multiple of 4: " + width + "x" + height);
+        int[] block = new int[16];
+        Fit[] fits = {new Fit(), new Fit(), new Fit(), new Fit()};
+        for (int by = 0; by < height; by += 4) {
+            for (int bx = 0; bx < width; bx += 4) {
+                for (int x = 0; x < 4; x++) {
+                    for (int y = 0; y < 4; y++) block[x * 4 + y] = argb[(by + y) * width + bx + x];
+                }
+                long bits = encodeBlock(block, fits);
+                for (int i = 0; i < BLOCK_BYTES; i++) out[offset++] = (byte) (bits >>> (56 - 8 * i));
+            }
+        }
+    }
+    public static void decode(byte[] in, int offset, int width, int height, int[] argb) {
+        int[] base = new int[6];
+        for (int by = 0; by < height; by += 4) {
+            for (int bx = 0; bx < width; bx += 4) {
+                long bits = 0;
+                for (int i = 0; i < BLOCK_BYTES; i++) bits = bits << 8 | (in[offset++] & 0xff);
+                boolean flip = (bits >>> 32 & 1) != 0;
+                if ((bits >>> 33 & 1) != 0) {
+                    for (int c = 0; c < 3; c++) {
+                        int shift = 59 - 8 * c;
+                        int color = (int) (bits >>> shift & 31);
+                        int delta = ((int) (bits >>> (shift - 3) & 7) << 29) >> 29;
+                        base[c] = expand5(color);
+                        base[3 + c] = expand5(color + delta);
+                    }
+                } else {
+                    for (int c = 0; c < 3; c++) {
+                        base[c] = expand4((int) (bits >>> (60 - 8 * c) & 15));
+                        base[3 + c] = expand4((int) (bits >>> (56 - 8 * c) & 15));
+                    }
+                }
+                int[] tables = {(int) (bits >>> 37 & 7), (int) (bits >>> 34 & 7)};
+                for (int x = 0; x < 4; x++) {
+                    for (int y = 0; y < 4; y++) {
+                        int pixel = x * 4 + y;
+                        int half = half(flip, x, y);
+                        int selector = (int) ((bits >>> (16 + pixel) & 1) << 1 | (bits >>> pixel & 1));
+                        int modifier = modifier(tables[half], selector);
+                        argb[(by + y) * width + bx + x] = 0xff000000
+                                | clamp(base[3 * half] + modifier) << 16
+                                | clamp(base[3 * half + 1] + modifier) << 8
+                                | clamp(base[3 * half + 2] + modifier);
+                    }
+                }
+            }
+        }
+    }
+
+    private static long encodeBlock(int[] block, Fit[] fits) {
+        long best = 0;
+        int bestError = Integer.MAX_VALUE;
+        int[] average = new int[6];
+        for (int flip = 0; flip < 2; flip++) {
+            averages(block, flip == 1, average);
+            // Differential mode: 5 bit base colors with the second one within -4..3 of the first.
+            int[] q = new int[6];
+            boolean fits555 = true;
+            for (int c = 0; c < 3; c++) {
+                q[c] = quantize(average[c], 31);
+                q[3 + c] = quantize(average[3 + c], 31);
+                int delta = q[3 + c] - q[c];
+                if (delta < -4 || delta > 3) fits555 = false;
+            }
+            if (fits555) {
+                fit(block, flip == 1, 0, expand5(q[0]), expand5(q[1]), expand5(q[2]), fits[0]);
+                fit(block, flip == 1, 1, expand5(q[3]), expand5(q[4]), expand5(q[5]), fits[1]);
+                int error = fits[0].error + fits[1].error;
+                if (error < bestError) {
+                    bestError = error;
+                    long bits = (long) q[0] << 59 | (long) ((q[3] - q[0]) & 7) << 56
+                            | (long) q[1] << 51 | (long) ((q[4] - q[1]) & 7) << 48
+                            | (long) q[2] << 43 | (long) ((q[5] - q[2]) & 7) << 40
+                            | 1L << 33;
+                    best = finish(bits, flip, fits[0], fits[1]);
+                }
+            }
+            // Individual mode: two independent 4 bit base colors.
+            for (int c = 0; c < 6; c++) q[c] = quantize(average[c], 15);
+            fit(block, flip == 1, 0, expand4(q[0]), expand4(q[1]), expand4(q[2]), fits[2]);
+            fit(block, flip == 1, 1, expand4(q[3]), expand4(q[4]), expand4(q[5]), fits[3]);
+            int error = fits[2].error + fits[3].error;
+            if (error < bestError) {
+                bestError = error;
+                long bits = (long) q[0] << 60 | (long) q[3] << 56 | (long) q[1] << 52 | (long) q[4] << 48
+                        | (long) q[2] << 44 | (long) q[5] << 40;
+                best = finish(bits, flip, fits[2], fits[3]);
+            }
+        }
+        return best;
+    }
+    private static long finish(long bits, int flip, Fit first, Fit second) {
+        bits |= (long) first.table << 37 | (long) second.table << 34 | (long) flip << 32;
+        for (int pixel = 0; pixel < 16; pixel++) {
+            int selector = first.selectors[pixel] | second.selectors[pixel];
+            bits |= (long) (selector >> 1) << (16 + pixel) | (long) (selector & 1) << pixel;
+        }
+        return bits;
+    }
+    // Picks the modifier table and per-pixel selectors with the least squared error for one half.
+    private static void fit(int[] block, boolean flip, int half, int r, int g, int b, Fit fit) {
+        fit.error = Integer.MAX_VALUE;
+        for (int table = 0; table < MODIFIERS.length; table++) {
+            int error = 0;
+            for (int pixel = 0; pixel < 16 && error < fit.error; pixel++) {
+                if (half(flip, pixel >> 2, pixel & 3) != half) continue;
+                int color = block[pixel];
+                int pr = color >> 16 & 0xff;
+                int pg = color >> 8 & 0xff;
+                int pb = color & 0xff;
+                int pixelError = Integer.MAX_VALUE;
+                for (int selector = 0; selector < 4; selector++) {
+                    int modifier = modifier(table, selector);
+                    int dr = clamp(r + modifier) - pr;
+                    int dg = clamp(g + modifier) - pg;
+                    int db = clamp(b + modifier) - pb;
+                    pixelError = Math.min(pixelError, dr * dr + dg * dg + db * db);
+                }
+                error += pixelError;
+            }
+            if (error < fit.error) {
+                fit.error = error;
+                fit.table = table;
+            }
+        }
+        int table = fit.table;
+        for (int pixel = 0; pixel < 16; pixel++) {
+            fit.selectors[pixel] = 0;
+            if (half(flip, pixel >> 2, pixel & 3) != half) continue;
+            int color = block[pixel];
+            int bestError = Integer.MAX_VALUE;
+            for (int selector = 0; selector < 4; selector++) {
+                int modifier = modifier(table, selector);
+                int dr = clamp(r + modifier) - (color >> 16 & 0xff);
+                int dg = clamp(g + modifier) - (color >> 8 & 0xff);
+                int db = clamp(b + modifier) - (color & 0xff);
+                int error = dr * dr + dg * dg + db * db;
+                if (error < bestError) {
+                    bestError = error;
+                    fit.selectors[pixel] = selector;
+                }
+            }
+        }
+    }
+    private static void averages(int[] block, boolean flip, int[] average) {
+        int[] sum = new int[6];
+        for (int pixel = 0; pixel < 16; pixel++) {
+            int color = block[pixel];
+            int base = 3 * half(flip, pixel >> 2, pixel & 3);
+            sum[base] += color >> 16 & 0xff;
+            sum[base + 1] += color >> 8 & 0xff;
+            sum[base + 2] += color & 0xff;
+        }
+        for (int c = 0; c < 6; c++) average[c] = (sum[c] + 4) / 8;
+    }
+    private static int half(boolean flip, int x, int y) {
+        return flip ? y >> 1 : x >> 1;
+    }
+    private static int modifier(int table, int selector) {
+        int magnitude = MODIFIERS[table][selector & 1];
+        return (selector & 2) == 0 ? magnitude : -magnitude;
+    }
+    private static int quantize(int value, int max) {
+        return (value * max + 127) / 255;
+    }
+    private static int expand4(int value) {
+        return value * 17;
+    }
+    private static int expand5(int value) {
+        return value << 3 | value >> 2;
+    }
+    private static int clamp(int value) {
+        return value < 0 ? 0 : value > 255 ? 255 : value;
+    }
+}
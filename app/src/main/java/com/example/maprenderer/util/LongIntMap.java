@@ -0,0 +1,121 @@
+package com.example.maprenderer.util;
+
+import java.util.Arrays;
+
+/**
+ * Open-addressing long to int hash map with linear probing. Lookups, updates and slot iteration
+ * do not allocate; the table only grows on insert.
+ */
+public final class LongIntMap {
+    public static final long EMPTY_KEY = Long.MIN_VALUE;
+    private static final float LOAD_FACTOR = 0.5f;
+
+    private final int missingValue;
+    private long[] keys;
+    private int[] values;
+    private int mask;
+    private int size;
+
+    public LongIntMap(int expectedSize, int missingValue) {
+        this.missingValue = missingValue;
+        int capacity = Integer.highestOneBit(Math.max(4, (int) (expectedSize / LOAD_FACTOR)) - 1) << 1;
+        allocate(capacity);
+    }
+
+    public int get(long key) {
+        int slot = find(key);
+        return slot < 0 ? missingValue : values[slot];
+    }
+    public boolean containsKey(long key) {
+        return find(key) >= 0;
+    }
+    public int put(long key, int value) {
+        if (key == EMPTY_KEY) throw new IllegalArgumentException("Reserved key");
+        int slot = slotOf(key);
+        while (keys[slot] != EMPTY_KEY) {
+            if (keys[slot] == key) {
+                int old = values[slot];
+                values[slot] = value;
+                return old;
+            }
+            slot = (slot + 1) & mask;
+        }
+        keys[slot] = key;
+        values[slot] = value;
+        if (++size > keys.length * LOAD_FACTOR) rehash(keys.length << 1);
+        return missingValue;
+    }
+    public int remove(long key) {
+        int slot = find(key);
+        if (slot < 0) return missingValue;
+        int old = values[slot];
+        removeSlot(slot);
+        return old;
+    }
+    public int size() {
+        return size;
+    }
+    public boolean isEmpty() {
+        return size == 0;
+    }
+    public void clear() {
+        Arrays.fill(keys, EMPTY_KEY);
+        size = 0;
+    }
+    public int missingValue() {
+        return missingValue;
+    }
+    public int capacity() {
+        return keys.length;
+    }
+    public long keyAt(int slot) {
+        return keys[slot];
+    }
+    public int valueAt(int slot) {
+        return values[slot];
+    }
+
+    private int find(long key) {
+        if (key == EMPTY_KEY) return -1;
+        int slot = slotOf(key);
+        while (keys[slot] != EMPTY_KEY) {
+            if (keys[slot] == key) return slot;
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+    private void removeSlot(int slot) {
+        int gap = slot;
+        int next = (gap + 1) & mask;
+        while (keys[next] != EMPTY_KEY) {
+            int home = slotOf(keys[next]);
+            if (((next - home) & mask) >= ((next - gap) & mask)) {
+                keys[gap] = keys[next];
+                values[gap] = values[next];
+                gap = next;
+            }
+            next = (next + 1) & mask;
+        }
+        keys[gap] = EMPTY_KEY;
+        size--;
+    }
+    private int slotOf(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32)) & mask;
+    }
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        Arrays.fill(keys, EMPTY_KEY);
+        mask = capacity - 1;
+    }
+    private void rehash(int capacity) {
+        long[] oldKeys = keys;
+        int[] oldValues = values;
+        allocate(capacity);
+        size = 0;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != EMPTY_KEY) put(oldKeys[i], oldValues[i]);
+        }
+    }
+}
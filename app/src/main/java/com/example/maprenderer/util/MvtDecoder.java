@@ -0,0 +1,294 @@
+package com.example.maprenderer.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Mapbox Vector Tile (protobuf, spec 2.1) reader. Walks the layers and hands each feature's
+ * geometry to a Handler as absolute integer coordinates in the layer's extent, split into parts:
+ * rings of a polygon, lines of a multi-line or single points. Coordinate and ring arrays are
+ * reused between features; tag values are only decoded when tag() asks for them. Gzipped tiles,
+ * as many servers store them, are inflated first. Not thread-safe.
+ */
+public final class MvtDecoder {
+    public static final int UNKNOWN = 0;
+    public static final int POINT = 1;
+    public static final int LINESTRING = 2;
+    public static final int POLYGON = 3;
+    public static final int DEFAULT_EXTENT = 4096;
+    private static final int WIRE_VARINT = 0;
+    private static final int WIRE_64BIT = 1;
+    private static final int WIRE_LENGTH = 2;
+    private static final int WIRE_32BIT = 5;
+    private static final int MOVE_TO = 1;
+    private static final int LINE_TO = 2;
+    private static final int CLOSE_PATH = 7;
+
+    public interface Handler {
+        // Returns false to skip the features of the layer.
+        boolean onLayer(String name, int extent);
+        // xy holds pointCount x/y pairs; part i ends before point partEnds[i].
+        void onFeature(int type, int[] xy, int pointCount, int[] partEnds, int partCount);
+    }
+
+    private byte[] data;
+    private int limit;
+    private int position;
+    private byte[] inflated = new byte[0];
+    private int[] xy = new int[256];
+    private int[] partEnds = new int[16];
+    private String[] keys = new String[16];
+    private int keyCount;
+    private int[] valueOffsets = new int[16];
+    private int[] valueLengths = new int[16];
+    private String[] values = new String[16];
+    private int valueCount;
+    private int[] tags = new int[16];
+    private int tagCount;
+
+    public static boolean isGzip(byte[] data, int offset, int length) {
+        return length >= 2 && (data[offset] & 0xff) == 0x1f && (data[offset + 1] & 0xff) == 0x8b;
+    }
+
+    public void decode(byte[] tile, int offset, int length, Handler handler) throws IOException {
+        if (isGzip(tile, offset, length)) {
+            length = inflate(tile, offset, length);
+            tile = inflated;
+            offset = 0;
+        }
+        data = tile;
+        position = offset;
+        limit = offset + length;
+        while (position < limit) {
+            int tag = readVarint32();
+            if (tag >>> 3 == 3 && (tag & 7) == WIRE_LENGTH) {
+                int layerLength = readVarint32();
+                int layerEnd = checkedEnd(layerLength);
+                int tileLimit = limit;
+                limit = layerEnd;
+                readLayer(handler);
+                limit = tileLimit;
+                position = layerEnd;
+            } else {
+                skip(tag & 7);
+            }
+        }
+        data = null;
+    }
+
+    // Value of the current feature's tag as a string, or null when the feature does not have it.
+    // Only valid inside Handler.onFeature().
+    public String tag(String key) {
+        for (int i = 0; i + 1 < tagCount; i += 2) {
+            int k = tags[i];
+            int v = tags[i + 1];
+            // Indices are uint32 on the wire; ones past Integer.MAX_VALUE read as negative.
+            if (k >= 0 && k < keyCount && v >= 0 && v < valueCount && key.equals(keys[k])) return value(v);
+        }
+        return null;
+    }
+
+    // Layer fields may come in any order, so a first pass collects name, extent, keys and values
+    // and a second one decodes the features.
+    private void readLayer(Handler handler) throws IOException {
+        int start = position;
+        String name = "";
+        int extent = DEFAULT_EXTENT;
+        keyCount = 0;
+        valueCount = 0;
+        while (position < limit) {
+            int tag = readVarint32();
+            int field = tag >>> 3;
+            if (field == 1 && (tag & 7) == WIRE_LENGTH) {
+                name = readString();
+            } else if (field == 3 && (tag & 7) == WIRE_LENGTH) {
+                if (keyCount == keys.length) keys = Arrays.copyOf(keys, keyCount * 2);
+                keys[keyCount++] = readString();
+            } else if (field == 4 && (tag & 7) == WIRE_LENGTH) {
+                int length = readVarint32();
+                if (valueCount == valueOffsets.length) {
+                    valueOffsets = Arrays.copyOf(valueOffsets, valueCount * 2);
+                    valueLengths = Arrays.copyOf(valueLengths, valueCount * 2);
+                    values = Arrays.copyOf(values, valueCount * 2);
+                }
+                valueOffsets[valueCount] = position;
+                valueLengths[valueCount] = length;
+                values[valueCount++] = null;
+                position = checkedEnd(length);
+            } else if (field == 5 && (tag & 7) == WIRE_VARINT) {
+                extent = readVarint32();
+                if (extent <= 0) throw new IOException("Invalid vector tile extent " + (extent & 0xffffffffL));
+            } else {
+                skip(tag & 7);
+            }
+        }
+        if (extent <= 0 || !handler.onLayer(name, extent)) return;
+        position = start;
+        while (position < limit) {
+            int tag = readVarint32();
+            if (tag >>> 3 == 2 && (tag & 7) == WIRE_LENGTH) {
+                int featureEnd = checkedEnd(readVarint32());
+                readFeature(featureEnd, handler);
+                position = featureEnd;
+            } else {
+                skip(tag & 7);
+            }
+        }
+    }
+    private void readFeature(int end, Handler handler) throws IOException {
+        int type = UNKNOWN;
+        int geometryStart = -1;
+        int geometryEnd = -1;
+        tagCount = 0;
+        while (position < end) {
+            int tag = readVarint32();
+            int field = tag >>> 3;
+            if (field == 2 && (tag & 7) == WIRE_LENGTH) {
+                int tagsEnd = checkedEnd(readVarint32());
+                while (position < tagsEnd) {
+                    if (tagCount == tags.length) tags = Arrays.copyOf(tags, tagCount * 2);
+                    tags[tagCount++] = readVarint32();
+                }
+            } else if (field == 3 && (tag & 7) == WIRE_VARINT) {
+                type = readVarint32();
+            } else if (field == 4 && (tag & 7) == WIRE_LENGTH) {
+                int length = readVarint32();
+                geometryStart = position;
+                geometryEnd = checkedEnd(length);
+                position = geometryEnd;
+            } else {
+                skip(tag & 7);
+            }
+        }
+        if (geometryStart < 0 || type < POINT || type > POLYGON) return;
+        position = geometryStart;
+        readGeometry(geometryEnd, type, handler);
+    }
+    // The cursor carries over between commands; every MoveTo starts a new part.
+    private void readGeometry(int end, int type, Handler handler) throws IOException {
+        int points = 0;
+        int parts = 0;
+        int x = 0;
+        int y = 0;
+        while (position < end) {
+            int command = readVarint32();
+            int id = command & 7;
+            int count = command >>> 3;
+            if (id == CLOSE_PATH) continue;
+            if (id != MOVE_TO && id != LINE_TO) throw new IOException("Unknown geometry command " + id);
+            for (int i = 0; i < count; i++) {
+                if (id == MOVE_TO && (points > 0 || parts > 0)) parts = endPart(parts, points);
+                x += zigzag(readVarint32());
+                y += zigzag(readVarint32());
+                if (2 * points + 2 > xy.length) xy = Arrays.copyOf(xy, xy.length * 2);
+                xy[2 * points] = x;
+                xy[2 * points + 1] = y;
+                points++;
+            }
+        }
+        if (points == 0) return;
+        parts = endPart(parts, points);
+        handler.onFeature(type, xy, points, partEnds, parts);
+    }
+    private int endPart(int parts, int points) {
+        if (parts > 0 && partEnds[parts - 1] == points) return parts;
+        if (parts == partEnds.length) partEnds = Arrays.copyOf(partEnds, parts * 2);
+        partEnds[parts] = points;
+        return parts + 1;
+    }
+    private String value(int index) {
+        if (values[index] != null) return values[index];
+        int saved = position;
+        int savedLimit = limit;
+        position = valueOffsets[index];
+        limit = position + valueLengths[index];
+        String value = null;
+        try {
+            while (position < limit && value == null) {
+                int tag = readVarint32();
+                switch (tag >>> 3) {
+                    case 1: value = readString(); break;
+                    case 2: value = String.valueOf(Float.intBitsToFloat(readFixed32())); break;
+                    case 3: value = String.valueOf(Double.longBitsToDouble(readFixed64())); break;
+                    case 4: case 5: value = String.valueOf(readVarint64()); break;
+                    case 6: value = String.valueOf(zigzag64(readVarint64())); break;
+                    case 7: value = String.valueOf(readVarint64() != 0); break;
+                    default: skip(tag & 7);
+                }
+            }
+        } catch (IOException e) {
+            value = null;
+        }
+        position = saved;
+        limit = savedLimit;
+        values[index] = value;
+        return value;
+    }
+
+    private int inflate(byte[] gzip, int offset, int length) throws IOException {
+        int total = 0;
+        if (inflated.length < length * 4) inflated = new byte[length * 4];
+        try (InputStream in = new GZIPInputStream(new ByteArrayInputStream(gzip, offset, length))) {
+            int read;
+            while ((read = in.read(inflated, total, inflated.length - total)) != -1) {
+                total += read;
+                if (total == inflated.length) inflated = Arrays.copyOf(inflated, total * 2);
+            }
+        }
+        return total;
+    }
+    private int checkedEnd(int length) throws IOException {
+        if (length < 0 || length > limit - position) throw new IOException("Truncated vector tile");
+        return position + length;
+    }
+    private String readString() throws IOException {
+        int length = readVarint32();
+        int end = checkedEnd(length);
+        String value = new String(data, position, length, StandardCharsets.UTF_8);
+        position = end;
+        return value;
+    }
+    private void skip(int wireType) throws IOException {
+        switch (wireType) {
+            case WIRE_VARINT: readVarint64(); break;
+            case WIRE_64BIT: position = checkedEnd(8); break;
+            case WIRE_LENGTH: position = checkedEnd(readVarint32()); break;
+            case WIRE_32BIT: position = checkedEnd(4); break;
+            default: throw new IOException("Unsupported wire type " + wireType);
+        }
+    }
+    private int readVarint32() throws IOException {
+        return (int) readVarint64();
+    }
+    private long readVarint64() throws IOException {
+        long value = 0;
+        for (int shift = 0; shift < 64; shift += 7) {
+            if (position >= limit) throw new IOException("Truncated vector tile");
+            byte b = data[position++];
+            value |= (long) (b & 0x7f) << shift;
+            if (b >= 0) return value;
+        }
+        throw new IOException("Malformed varint");
+    }
+    private int readFixed32() throws IOException {
+        int end = checkedEnd(4);
+        int value = (data[position] & 0xff) | (data[position + 1] & 0xff) << 8
+                | (data[position + 2] & 0xff) << 16 | (data[position + 3] & 0xff) << 24;
+        position = end;
+        return value;
+    }
+    private long readFixed64() throws IOException {
+        long low = readFixed32() & 0xffffffffL;
+        return low | (long) readFixed32() << 32;
+    }
+    private static int zigzag(int n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+    private static long zigzag64(long n) {
+        return (n >>> 1) ^ -(n & 1);
+    }
+}
@@ -0,0 +1,194 @@
+package com.example.maprenderer.util;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Streaming PNG decoder that writes pixels straight into a buffer in GL upload layout: RGB565
+ * (GL_UNSIGNED_SHORT_5_6_5, buffer must be in native order) or RGBA8888. IDAT chunks are inflated
+ * from the source array one scanline at a time, so no intermediate image is allocated. Handles 1-8
+ * bit gray and palettes and 8 bit RGB, gray+alpha and RGBA without interlacing; decode() returns
+ * false for anything else so the caller can fall back to the platform decoder. Not thread-safe.
+ */
+public final class PngDecoder {
+    public static final int RGB565 = 2;
+    public static final int RGBA8888 = 4;
+    private static final long SIGNATURE = 0x89504e470d0a1a0aL;
+    private static final int IHDR = 0x49484452;
+    private static final int PLTE = 0x504c5445;
+    private static final int TRNS = 0x74524e53;
+    private static final int IDAT = 0x49444154;
+    private static final int IEND = 0x49454e44;
+
+    private final Inflater inflater = new Inflater();
+    private final int[] palette = new int[256];
+    private byte[] line = new byte[0];
+    private byte[] previous = new byte[0];
+    private int width;
+    private int height;
+    private int bitDepth;
+    private int colorType;
+    private int channels;
+
+    public int width() {
+        return width;
+    }
+    public int height() {
+        return height;
+    }
+
+    // Reads only the header; returns false when the image is not a PNG this decoder supports.
+    public boolean readHeader(byte[] png, int offset, int length) throws IOException {
+        if (length < 33 || readLong(png, offset) != SIGNATURE || readInt(png, offset + 12) != IHDR) return false;
+        width = readInt(png, offset + 16);
+        height = readInt(png, offset + 20);
+        bitDepth = png[offset + 24] & 0xff;
+        colorType = png[offset + 25] & 0xff;
+        int interlace = png[offset + 28] & 0xff;
+        if (width <= 0 || height <= 0 || interlace != 0) return false;
+        switch (colorType) {
+            case 0: channels = 1; break;
+            case 2: channels = 3; break;
+            case 3: channels = 1; break;
+            case 4: channels = 2; break;
+            case 6: channels = 4; break;
+            default: return false;
+        }
+        return colorType == 0 || colorType == 3 ? bitDepth <= 8 : bitDepth == 8;
+    }
+
+    public boolean decode(byte[] png, int offset, int length, ByteBuffer out, int format) throws IOException {
+        if (!readHeader(png, offset, length)) return false;
+        if (out.remaining() < width * height * format) return false;
+        int stride = (width * channels * bitDepth + 7) / 8;
+        int pixelBytes = Math.max(1, channels * bitDepth / 8);
+        if (line.length < stride + 1) {
+            line = new byte[stride + 1];
+            previous = new byte[stride + 1];
+        }
+        Arrays.fill(previous, (byte) 0);
+        Arrays.fill(palette, 0xff000000);
+        inflater.reset();
+        int position = offset + 8;
+        int end = offset + length;
+        int row = 0;
+        int filled = 0;
+        try {
+            while (position + 8 <= end && row < height) {
+                int chunkLength = readInt(png, position);
+                int type = readInt(png, position + 4);
+                int data = position + 8;
+                if (chunkLength < 0 || data + chunkLength + 4 > end) throw new IOException("Truncated PNG chunk");
+                if (type == PLTE) {
+                    for (int i = 0; i < chunkLength / 3 && i < 256; i++) {
+                        palette[i] = 0xff000000 | (png[data + 3 * i] & 0xff) << 16
+                                | (png[data + 3 * i + 1] & 0xff) << 8 | (png[data + 3 * i + 2] & 0xff);
+                    }
+                } else if (type == TRNS && colorType == 3) {
+                    for (int i = 0; i < chunkLength && i < 256; i++) {
+                        palette[i] = (palette[i] & 0xffffff) | (png[data + i] & 0xff) << 24;
+                    }
+                } else if (type == IDAT) {
+                    inflater.setInput(png, data, chunkLength);
+                    while (row < height) {
+                        int n = inflater.inflate(line, filled, stride + 1 - filled);
+                        if (n == 0) break;
+                        filled += n;
+                        if (filled < stride + 1) continue;
+                        unfilter(line, previous, stride, pixelBytes);
+                        writeRow(line, out, format);
+                        byte[] swap = previous;
+                        previous = line;
+                        line = swap;
+                        filled = 0;
+                        row++;
+                    }
+                } else if (type == IEND) {
+                    break;
+                }
+                position = data + chunkLength + 4;
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt PNG data", e);
+        }
+        if (row < height) throw new IOException("PNG ended after " + row + " of " + height + " rows");
+        return true;
+    }
+
+    private static void unfilter(byte[] line, byte[] previous, int stride, int bpp) throws IOException {
+        int filter = line[0];
+        switch (filter) {
+            case 0:
+                break;
+            case 1:
+                for (int i = 1 + bpp; i <= stride; i++) line[i] += line[i - bpp];
+                break;
+            case 2:
+                for (int i = 1; i <= stride; i++) line[i] += previous[i];
+                break;
+            case 3:
+                for (int i = 1; i <= stride; i++) {
+                    int left = i > bpp ? line[i - bpp] & 0xff : 0;
+                    line[i] += (left + (previous[i] & 0xff)) >>> 1;
+                }
+                break;
+            case 4:
+                for (int i = 1; i <= stride; i++) {
+                    int a = i > bpp ? line[i - bpp] & 0xff : 0;
+                    int b = previous[i] & 0xff;
+                    int c = i > bpp ? previous[i - bpp] & 0xff : 0;
+                    int p = a + b - c;
+                    int pa = Math.abs(p - a);
+                    int pb = Math.abs(p - b);
+                    int pc = Math.abs(p - c);
+                    line[i] += pa <= pb && pa <= pc ? a : pb <= pc ? b : c;
+                }
+                break;
+            default:
+                throw new IOException("Unknown PNG filter " + filter);
+        }
+    }
+    private void writeRow(byte[] line, ByteBuffer out, int format) {
+        for (int x = 0; x < width; x++) {
+            int argb = pixel(line, x);
+            if (format == RGB565) {
+                out.putShort((short) ((argb >> 8 & 0xf800) | (argb >> 5 & 0x07e0) | (argb >> 3 & 0x001f)));
+            } else {
+                out.put((byte) (argb >> 16)).put((byte) (argb >> 8)).put((byte) argb).put((byte) (argb >>> 24));
+            }
+        }
+    }
+    private int pixel(byte[] line, int x) {
+        int i = 1 + x * channels;
+        switch (colorType) {
+            case 0: {
+                int v = sample(line, x) * 255 / ((1 << bitDepth) - 1);
+                return 0xff000000 | v << 16 | v << 8 | v;
+            }
+            case 2:
+                return 0xff000000 | (line[i] & 0xff) << 16 | (line[i + 1] & 0xff) << 8 | (line[i + 2] & 0xff);
+            case 3:
+                return palette[sample(line, x)];
+            case 4: {
+                int v = line[i] & 0xff;
+                return (line[i + 1] & 0xff) << 24 | v << 16 | v << 8 | v;
+            }
+            default:
+                return (line[i + 3] & 0xff) << 24 | (line[i] & 0xff) << 16 | (line[i + 1] & 0xff) << 8 | (line[i + 2] & 0xff);
+        }
+    }
+    // Sample of a single-channel pixel packed at 1, 2, 4 or 8 bits.
+    private int sample(byte[] line, int x) {
+        int bitOffset = x * bitDepth;
+        return (line[1 + (bitOffset >> 3)] & 0xff) >> (8 - bitDepth - (bitOffset & 7)) & ((1 << bitDepth) - 1);
+    }
+    private static int readInt(byte[] data, int offset) {
+        return (data[offset] & 0xff) << 24 | (data[offset + 1] & 0xff) << 16 | (data[offset + 2] & 0xff) << 8 | (data[offset + 3] & 0xff);
+    }
+    private static long readLong(byte[] data, int offset) {
+        return (long) readInt(data, offset) << 32 | (readInt(data, offset + 4) & 0xffffffffL);
+    }
+}
@@ -0,0 +1,517 @@
+package com.example.maprenderer.util;
+
+import java.util.Arrays;
+
+/**
+ * Turns vector tile geometry into triangles of a VectorMesh. Polygons are ear-clipped after their
+ * holes are joined to the outer ring by bridge edges (Eberly, "Triangulation by Ear Clipping");
+ * lines become strips of two vertices per point, extruded along the mitered normal. Coordinates
+ * are y-up. Ring and node arrays are reused between calls. Not thread-safe.
+ * Large polygons also keep their nodes in z-order (as earcut does), so an ear test only visits the
+ * nodes whose Morton code falls within the triangle's bounding box instead of the whole ring.
+ */
+public final class Tessellator {
+    private static final float MITER_LIMIT = 2f;
+    // Below this many nodes scanning the ring is cheaper than sorting it into z-order.
+    private static final int Z_ORDER_MIN_NODES = 80;
+
+    private float[] nodeX = new float[256];
+    private float[] nodeY = new float[256];
+    private int[] prev = new int[256];
+    private int[] next = new int[256];
+    private int[] vertex = new int[256];
+    private int[] z = new int[256];
+    private int[] prevZ = new int[256];
+    private int[] nextZ = new int[256];
+    private int nodeCount;
+    private boolean hashed;
+    private float hashMinX, hashMinY, hashScale;
+    private int[] holes = new int[16];
+    private int[] rings = new int[32];
+    private float[] lineX = new float[256];
+    private float[] lineY = new float[256];
+
+    // Rings of one or more polygons: a ring wound like the first one starts a new polygon, rings
+    // wound the other way are holes of the polygon before them. Zero-area rings are ignored.
+    public void fill(float[] xy, int[] ringEnds, int ringCount, int style, VectorMesh mesh) {
+        int polygonRings = 0;
+        float outerSign = 0;
+        int start = 0;
+        for (int r = 0; r < ringCount; r++) {
+            int end = ringEnds[r];
+            float area = signedArea(xy, start, end);
+            if (area != 0) {
+                if (outerSign == 0) outerSign = Math.signum(area);
+                if (Math.signum(area) == outerSign && polygonRings > 0) {
+                    fillPolygon(xy, polygonRings, style, mesh);
+                    polygonRings = 0;
+                }
+                if (polygonRings > 0 || Math.signum(area) == outerSign) {
+                    if (2 * polygonRings + 2 > rings.length) rings = Arrays.copyOf(rings, rings.length * 2);
+                    rings[2 * polygonRings] = start;
+                    rings[2 * polygonRings + 1] = end;
+                    polygonRings++;
+                }
+            }
+            start = end;
+        }
+        if (polygonRings > 0) fillPolygon(xy, polygonRings, style, mesh);
+    }
+
+    // Lines of partCount parts; closed parts also join their last point to the first one.
+    // halfWidth is in screen pixels, see VectorMesh.
+    public void stroke(float[] xy, int[] partEnds, int partCount, boolean closed, float halfWidth, int style,
+                       VectorMesh mesh) {
+        int start = 0;
+        for (int part = 0; part < partCount; part++) {
+            int end = partEnds[part];
+            strokePart(xy, start, end, closed, halfWidth, style, mesh);
+            start = end;
+        }
+    }
+
+    private void strokePart(float[] xy, int start, int end, boolean closed, float halfWidth, int style, VectorMesh mesh) {
+        if (end - start > lineX.length) {
+            lineX = new float[end - start];
+            lineY = new float[end - start];
+        }
+        int n = 0;
+        for (int i = start; i < end; i++) {
+            float x = xy[2 * i];
+            float y = xy[2 * i + 1];
+            if (n > 0 && x == lineX[n - 1] && y == lineY[n - 1]) continue;
+            lineX[n] = x;
+            lineY[n] = y;
+            n++;
+        }
+        if (closed && n > 1 && lineX[0] == lineX[n - 1] && lineY[0] == lineY[n - 1]) n--;
+        if (n < 2 || closed && n < 3) return;
+        if (!mesh.hasRoom(2 * n)) {
+            mesh.dropFeature();
+            return;
+        }
+        int first = mesh.vertexCount();
+        for (int i = 0; i < n; i++) {
+            boolean hasPrev = closed || i > 0;
+            boolean hasNext = closed || i < n - 1;
+            float inX = 0, inY = 0, outX = 0, outY = 0;
+            if (hasPrev) {
+                int p = (i + n - 1) % n;
+                float length = length(lineX[i] - lineX[p], lineY[i] - lineY[p]);
+                inX = -(lineY[i] - lineY[p]) / length;
+                inY = (lineX[i] - lineX[p]) / length;
+            }
+            if (hasNext) {
+                int q = (i + 1) % n;
+                float length = length(lineX[q] - lineX[i], lineY[q] - lineY[i]);
+                outX = -(lineY[q] - lineY[i]) / length;
+                outY = (lineX[q] - lineX[i]) / length;
+            }
+            float normalX;
+            float normalY;
+            if (!hasPrev) {
+                normalX = outX;
+                normalY = outY;
+            } else if (!hasNext) {
+                normalX = inX;
+                normalY = inY;
+            } else {
+                float miterX = inX + outX;
+                float miterY = inY + outY;
+                float miterLength = length(miterX, miterY);
+                if (miterLength < 1e-6f) {
+                    // The line turns back on itself.
+                    normalX = inX;
+                    normalY = inY;
+                } else {
+                    miterX /= miterLength;
+                    miterY /= miterLength;
+                    float scale = Math.min(1f / (miterX * inX + miterY * inY), MITER_LIMIT);
+                    normalX = miterX * scale;
+                    normalY = miterY * scale;
+                }
+            }
+            mesh.addVertex(lineX[i], lineY[i], normalX * halfWidth, normalY * halfWidth, style);
+            mesh.addVertex(lineX[i], lineY[i], -normalX * halfWidth, -normalY * halfWidth, style);
+        }
+        int segments = closed ? n : n - 1;
+        for (int i = 0; i < segments; i++) {
+            int a = first + 2 * i;
+            int b = first + 2 * ((i + 1) % n);
+            mesh.addTriangle(style, a, a + 1, b);
+            mesh.addTriangle(style, a + 1, b + 1, b);
+        }
+    }
+
+    // rings holds start/end point pairs, the outer ring first.
+    private void fillPolygon(float[] xy, int ringCount, int style, VectorMesh mesh) {
+        int points = 0;
+        for (int r = 0; r < ringCount; r++) points += rings[2 * r + 1] - rings[2 * r];
+        if (!mesh.hasRoom(points)) {
+            mesh.dropFeature();
+            return;
+        }
+        ensureNodes(points + 2 * ringCount);
+        nodeCount = 0;
+        int outer = linkRing(xy, rings[0], rings[1], true, style, mesh);
+        if (outer < 0) return;
+        if (ringCount > holes.length) holes = new int[ringCount];
+        int holeCount = 0;
+        for (int r = 1; r < ringCount; r++) {
+            int hole = linkRing(xy, rings[2 * r], rings[2 * r + 1], false, style, mesh);
+            if (hole >= 0) holes[holeCount++] = rightmost(hole);
+        }
+        // Right to left, so a bridge never has to cross a hole that is still open.
+        sortByX(holes, holeCount);
+        for (int h = 0; h < holeCount; h++) {
+            int bridge = findBridge(holes[h], outer);
+            if (bridge >= 0) outer = split(bridge, holes[h]);
+        }
+        earClip(outer, style, mesh);
+    }
+
+    // Circular list of the ring's points, counter-clockwise for outer rings and clockwise for holes.
+    // Returns a node of it, or -1 when fewer than three distinct points remain.
+    private int linkRing(float[] xy, int start, int end, boolean counterClockwise, int style, VectorMesh mesh) {
+        if (end > start + 1 && xy[2 * start] == xy[2 * end - 2] && xy[2 * start + 1] == xy[2 * end - 1]) end--;
+        if (end - start < 3) return -1;
+        boolean reverse = signedArea(xy, start, end) > 0 != counterClockwise;
+        int first = -1;
+        int last = -1;
+        for (int k = 0; k < end - start; k++) {
+            int i = reverse ? end - 1 - k : start + k;
+            float x = xy[2 * i];
+            float y = xy[2 * i + 1];
+            if (last >= 0 && x == nodeX[last] && y == nodeY[last]) continue;
+            int node = nodeCount++;
+            nodeX[node] = x;
+            nodeY[node] = y;
+            vertex[node] = mesh.addVertex(x, y, 0, 0, style);
+            if (last < 0) {
+                first = node;
+            } else {
+                next[last] = node;
+                prev[node] = last;
+            }
+            last = node;
+        }
+        next[last] = first;
+        prev[first] = last;
+        return first;
+    }
+    private void earClip(int ear, int style, VectorMesh mesh) {
+        hashed = false;
+        ear = filterPoints(ear);
+        hashed = ear >= 0 && indexCurve(ear);
+        int stop = ear;
+        boolean filtered = false;
+        while (ear >= 0 && prev[ear] != next[ear]) {
+            int a = prev[ear];
+            int c = next[ear];
+            if (isEar(ear)) {
+                mesh.addTriangle(style, vertex[a], vertex[ear], vertex[c]);
+                remove(ear);
+                ear = next[c];
+                stop = ear;
+                filtered = false;
+                continue;
+            }
+            ear = c;
+            if (ear != stop) continue;
+            if (!filtered) {
+                ear = filterPoints(ear);
+                stop = ear;
+                filtered = true;
+                continue;
+            }
+            // Self-intersecting input has no ear left: cut a vertex anyway so clipping terminates.
+            if (cross(prev[ear], ear, next[ear]) > 0) mesh.addTriangle(style, vertex[prev[ear]], vertex[ear], vertex[next[ear]]);
+            int after = next[ear];
+            remove(ear);
+            ear = after;
+            stop = ear;
+            filtered = false;
+        }
+    }
+    private boolean isEar(int b) {
+        int a = prev[b];
+        int c = next[b];
+        if (cross(a, b, c) <= 0) return false;
+        float minX = Math.min(nodeX[a], Math.min(nodeX[b], nodeX[c]));
+        float maxX = Math.max(nodeX[a], Math.max(nodeX[b], nodeX[c]));
+        float minY = Math.min(nodeY[a], Math.min(nodeY[b], nodeY[c]));
+        float maxY = Math.max(nodeY[a], Math.max(nodeY[b], nodeY[c]));
+        if (hashed) {
+            // Every node inside the bounding box has a z between those of its corners.
+            int minZ = zOrder(minX, minY);
+            int maxZ = zOrder(maxX, maxY);
+            int p = prevZ[b];
+            int n = nextZ[b];
+            while (p >= 0 && z[p] >= minZ) {
+                if (p != a && p != c && inEar(p, a, b, c, minX, maxX, minY, maxY)) return false;
+                p = prevZ[p];
+            }
+            while (n >= 0 && z[n] <= maxZ) {
+                if (n != a && n != c && inEar(n, a, b, c, minX, maxX, minY, maxY)) return false;
+                n = nextZ[n];
+            }
+            return true;
+        }
+        for (int p = next[c]; p != a; p = next[p]) {
+            if (inEar(p, a, b, c, minX, maxX, minY, maxY)) return false;
+        }
+        return true;
+    }
+    private boolean inEar(int p, int a, int b, int c, float minX, float maxX, float minY, float maxY) {
+        float x = nodeX[p];
+        float y = nodeY[p];
+        if (x < minX || x > maxX || y < minY || y > maxY) return false;
+        if (samePoint(p, a) || samePoint(p, b) || samePoint(p, c)) return false;
+        return cross(a, b, p) >= 0 && cross(b, c, p) >= 0 && cross(c, a, p) >= 0;
+    }
+    // Links the ring's nodes into a second list sorted by z-order, when it is large enough to pay off.
+    private boolean indexCurve(int start) {
+        float minX = nodeX[start], maxX = minX, minY = nodeY[start], maxY = minY;
+        int count = 0;
+        int p = start;
+        do {
+            minX = Math.min(minX, nodeX[p]);
+            maxX = Math.max(maxX, nodeX[p]);
+            minY = Math.min(minY, nodeY[p]);
+            maxY = Math.max(maxY, nodeY[p]);
+            count++;
+            p = next[p];
+        } while (p != start);
+        if (count < Z_ORDER_MIN_NODES) return false;
+        float extent = Math.max(maxX - minX, maxY - minY);
+        hashMinX = minX;
+        hashMinY = minY;
+        hashScale = extent > 0 ? 32767 / extent : 0;
+        p = start;
+        do {
+            z[p] = zOrder(nodeX[p], nodeY[p]);
+            prevZ[p] = prev[p];
+            nextZ[p] = next[p];
+            p = next[p];
+        } while (p != start);
+        nextZ[prev[start]] = -1;
+        prevZ[start] = -1;
+        sortByZ(start);
+        return true;
+    }
+    // Bottom-up merge sort of the z list (Tatham's linked list merge sort).
+    private void sortByZ(int list) {
+        int inSize = 1;
+        int merges;
+        do {
+            int p = list;
+            int tail = -1;
+            list = -1;
+            merges = 0;
+            while (p >= 0) {
+                merges++;
+                int q = p;
+                int pSize = 0;
+                for (int i = 0; i < inSize && q >= 0; i++) {
+                    pSize++;
+                    q = nextZ[q];
+                }
+                int qSize = inSize;
+                while (pSize > 0 || qSize > 0 && q >= 0) {
+                    int e;
+                    if (pSize != 0 && (qSize == 0 || q < 0 || z[p] <= z[q])) {
+                        e = p;
+                        p = nextZ[p];
+                        pSize--;
+                    } else {
+                        e = q;
+                        q = nextZ[q];
+                        qSize--;
+                    }
+                    if (tail >= 0) nextZ[tail] = e; else list = e;
+                    prevZ[e] = tail;
+                    tail = e;
+                }
+                p = q;
+            }
+            nextZ[tail] = -1;
+            inSize *= 2;
+        } while (merges > 1);
+    }
+    // Morton code of the point's 15 bit grid position within the polygon's bounding box.
+    private int zOrder(float x, float y) {
+        int zx = (int) ((x - hashMinX) * hashScale);
+        int zy = (int) ((y - hashMinY) * hashScale);
+        return interleave(zx) | interleave(zy) << 1;
+    }
+    private static int interleave(int v) {
+        v = (v | v << 8) & 0x00FF00FF;
+        v = (v | v << 4) & 0x0F0F0F0F;
+        v = (v | v << 2) & 0x33333333;
+        return (v | v << 1) & 0x55555555;
+    }
+    // Removes repeated and collinear points; returns a remaining node, or -1 when nothing is left.
+    private int filterPoints(int start) {
+        int end = start;
+        int p = start;
+        boolean again;
+        do {
+            again = false;
+            int n = next[p];
+            if (samePoint(p, n) || cross(prev[p], p, n) == 0) {
+                remove(p);
+                p = end = prev[p];
+                if (p == next[p] || prev[p] == next[p]) return -1;
+                again = true;
+            } else {
+                p = n;
+            }
+        } while (again || p != end);
+        return end;
+    }
+    // Outer ring node visible from the hole's rightmost point: the nearest edge hit by a ray to +x,
+    // or a reflex vertex that shadows it.
+    private int findBridge(int hole, int outer) {
+        float hx = nodeX[hole];
+        float hy = nodeY[hole];
+        float hitX = Float.POSITIVE_INFINITY;
+        int candidate = -1;
+        boolean exact = false;
+        int p = outer;
+        do {
+            int q = next[p];
+            if (nodeY[p] == hy && nodeX[p] >= hx && nodeX[p] < hitX) {
+                hitX = nodeX[p];
+                candidate = p;
+                exact = true;
+            } else if ((nodeY[p] - hy) * (nodeY[q] - hy) < 0) {
+                float x = nodeX[p] + (hy - nodeY[p]) * (nodeX[q] - nodeX[p]) / (nodeY[q] - nodeY[p]);
+                if (x >= hx && x < hitX) {
+                    hitX = x;
+                    candidate = nodeX[p] > nodeX[q] ? p : q;
+                    exact = false;
+                }
+            }
+            p = q;
+        } while (p != outer);
+        if (candidate < 0) return -1;
+        if (!exact) {
+            // Reflex vertices inside the triangle (hole, hit point, candidate) may block the view;
+            // the one with the smallest angle to the ray is visible.
+            float cx = nodeX[candidate];
+            float cy = nodeY[candidate];
+            float bestTan = cx > hx ? Math.abs(cy - hy) / (cx - hx) : Float.POSITIVE_INFINITY;
+            p = outer;
+            do {
+                float px = nodeX[p];
+                float py = nodeY[p];
+                if (px > hx && !samePoint(p, candidate) && cross(prev[p], p, next[p]) < 0
+                        && inTriangle(hx, hy, hitX, hy, cx, cy, px, py)) {
+                    float tan = Math.abs(py - hy) / (px - hx);
+                    if (tan < bestTan || tan == bestTan && px < nodeX[candidate]) {
+                        candidate = p;
+                        bestTan = tan;
+                    }
+                }
+                p = next[p];
+            } while (p != outer);
+        }
+        // Earlier bridges leave several nodes on the same point; use the one whose corner faces the hole.
+        if (locallyInside(candidate, hole)) return candidate;
+        p = outer;
+        do {
+            if (p != candidate && samePoint(p, candidate) && locallyInside(p, hole)) return p;
+            p = next[p];
+        } while (p != outer);
+        return candidate;
+    }
+    private boolean locallyInside(int a, int b) {
+        float toNext = cross(a, next[a], b);
+        float toPrev = cross(a, prev[a], b);
+        return cross(prev[a], a, next[a]) >= 0 ? toNext >= 0 && toPrev <= 0 : toNext >= 0 || toPrev <= 0;
+    }
+    // Joins the hole into the outer ring with a two-way edge between a and b; returns a node of the result.
+    private int split(int a, int b) {
+        int a2 = copy(a);
+        int b2 = copy(b);
+        int an = next[a];
+        int bp = prev[b];
+        next[a] = b;
+        prev[b] = a;
+        next[a2] = an;
+        prev[an] = a2;
+        next[b2] = a2;
+        prev[a2] = b2;
+        next[bp] = b2;
+        prev[b2] = bp;
+        return a;
+    }
+    private int copy(int node) {
+        int copy = nodeCount++;
+        nodeX[copy] = nodeX[node];
+        nodeY[copy] = nodeY[node];
+        vertex[copy] = vertex[node];
+        return copy;
+    }
+    private void remove(int node) {
+        next[prev[node]] = next[node];
+        prev[next[node]] = prev[node];
+        if (!hashed) return;
+        if (prevZ[node] >= 0) nextZ[prevZ[node]] = nextZ[node];
+        if (nextZ[node] >= 0) prevZ[nextZ[node]] = prevZ[node];
+    }
+    private int rightmost(int start) {
+        int best = start;
+        for (int p = next[start]; p != start; p = next[p]) {
+            if (nodeX[p] > nodeX[best] || nodeX[p] == nodeX[best] && nodeY[p] < nodeY[best]) best = p;
+        }
+        return best;
+    }
+    private void sortByX(int[] nodes, int count) {
+        for (int i = 1; i < count; i++) {
+            int node = nodes[i];
+            int j = i - 1;
+            while (j >= 0 && nodeX[nodes[j]] < nodeX[node]) {
+                nodes[j + 1] = nodes[j];
+                j--;
+            }
+            nodes[j + 1] = node;
+        }
+    }
+    private void ensureNodes(int count) {
+        if (count <= nodeX.length) return;
+        int capacity = Math.max(count, nodeX.length * 2);
+        nodeX = new float[capacity];
+        nodeY = new float[capacity];
+        prev = new int[capacity];
+        next = new int[capacity];
+        vertex = new int[capacity];
+        z = new int[capacity];
+        prevZ = new int[capacity];
+        nextZ = new int[capacity];
+    }
+    private boolean samePoint(int a, int b) {
+        return nodeX[a] == nodeX[b] && nodeY[a] == nodeY[b];
+    }
+    // Positive when a, b, c turn counter-clockwise.
+    private float cross(int a, int b, int c) {
+        return (nodeX[b] - nodeX[a]) * (nodeY[c] - nodeY[a]) - (nodeY[b] - nodeY[a]) * (nodeX[c] - nodeX[a]);
+    }
+    private static boolean inTriangle(float ax, float ay, float bx, float by, float cx, float cy, float px, float py) {
+        float d1 = (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+        float d2 = (cx - bx) * (py - by) - (cy - by) * (px - bx);
+        float d3 = (ax - cx) * (py - cy) - (ay - cy) * (px - cx);
+        return d1 >= 0 && d2 >= 0 && d3 >= 0 || d1 <= 0 && d2 <= 0 && d3 <= 0;
+    }
+    // Twice the signed area of points [start, end), positive for counter-clockwise rings.
+    static float signedArea(float[] xy, int start, int end) {
+        float sum = 0;
+        for (int i = start, j = end - 1; i < end; j = i++) {
+            sum += (xy[2 * j] - xy[2 * i]) * (xy[2 * j + 1] + xy[2 * i + 1]);
+        }
+        return sum;
+    }
+    private static float length(float x, float y) {
+        return (float) Math.sqrt(x * x + y * y);
+    }
+}
@@ -0,0 +1,24 @@
+package com.example.maprenderer.util;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+public final class TileBuffer extends ByteArrayOutputStream {
+    public TileBuffer(int initialCapacity) {
+        super(initialCapacity);
+    }
+
+    public byte[] array() {
+        return buf;
+    }
+    public int length() {
+        return count;
+    }
+    public void setLength(int length) {
+        ensureCapacity(length);
+        count = length;
+    }
+    public void ensureCapacity(int capacity) {
+        if (capacity > buf.length) buf = Arrays.copyOf(buf, Math.max(capacity, buf.length << 1));
+    }
+}
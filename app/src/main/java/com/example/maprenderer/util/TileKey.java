@@ -0,0 +1,28 @@
+package com.example.maprenderer.util;
+
+public final class TileKey {
+    private static final int COORD_BITS = 28;
+    private static final long COORD_MASK = (1L << COORD_BITS) - 1;
+
+    private TileKey() {
+    }
+    public static long of(int zoom, int x, int y) {
+        return ((long) zoom << (2 * COORD_BITS)) | ((x & COORD_MASK) << COORD_BITS) | (y & COORD_MASK);
+    }
+    public static int zoom(long key) {
+        return (int) (key >>> (2 * COORD_BITS));
+    }
+    public static int x(long key) {
+        return (int) ((key >>> COORD_BITS) & COORD_MASK);
+    }
+    public static int y(long key) {
+        return (int) (key & COORD_MASK);
+    }
+    public static boolean isValid(int zoom, int x, int y) {
+        int max = 1 << zoom;
+        return x >= 0 && y >= 0 && x < max && y < max;
+    }
+    public static String toString(long key) {
+        return zoom(key) + "/" + x(key) + "/" + y(key);
+    }
+}
@@ -0,0 +1,20 @@
+package com.example.maprenderer.util;
+
+/** Web Mercator (slippy map) conversions between WGS84 degrees and fractional tile coordinates. */
+public final class TileMath {
+    private TileMath() {
+    }
+    public static double tileX(double longitude, int zoom) {
+        return (longitude + 180) / 360 * (1 << zoom);
+    }
+    public static double tileY(double latitude, int zoom) {
+        double lat = Math.toRadians(latitude);
+        return (1 - Math.log(Math.tan(lat) + 1 / Math.cos(lat)) / Math.PI) / 2 * (1 << zoom);
+    }
+    public static double longitude(double tileX, int zoom) {
+        return tileX / (1 << zoom) * 360.0 - 180.0;
+    }
+    public static double latitude(double tileY, int zoom) {
+        return Math.toDegrees(Math.atan(Math.sinh(Math.PI - 2.0 * Math.PI * tileY / (1 << zoom))));
+    }
+}
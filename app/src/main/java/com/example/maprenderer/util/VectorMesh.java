@@ -0,0 +1,113 @@
+package com.example.maprenderer.util;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.nio.ShortBuffer;
+import java.util.Arrays;
+
+/**
+ * Triangles of one vector tile with interleaved vertices (x, y, extrusion x, extrusion y, style).
+ * Fills have zero extrusion; line vertices carry their offset from the center line in screen
+ * pixels, so the shader keeps line widths constant while the tile is scaled. Indices are kept per
+ * style and packed in style order, which is the paint order. At most 65536 vertices so that
+ * indices fit GL_UNSIGNED_SHORT.
+ */
+public final class VectorMesh {
+    public static final int FLOATS_PER_VERTEX = 5;
+    public static final int MAX_VERTICES = 65536;
+
+    /** The packed mesh in native order direct buffers, ready for glBufferData. */
+    public static final class Packed {
+        public final FloatBuffer vertices;
+        public final ShortBuffer indices;
+
+        Packed(FloatBuffer vertices, ShortBuffer indices) {
+            this.vertices = vertices;
+            this.indices = indices;
+        }
+        public int indexCount() {
+            return indices.limit();
+        }
+        public int byteSize() {
+            return vertices.limit() * 4 + indices.limit() * 2;
+        }
+    }
+
+    private final short[][] indices;
+    private final int[] indexCounts;
+    private float[] vertices = new float[1024 * FLOATS_PER_VERTEX];
+    private int vertexCount;
+    private int droppedFeatures;
+
+    public VectorMesh(int styleCount) {
+        indices = new short[styleCount][];
+        indexCounts = new int[styleCount];
+        for (int i = 0; i < styleCount; i++) indices[i] = new short[256];
+    }
+
+    public void reset() {
+        vertexCount = 0;
+        droppedFeatures = 0;
+        Arrays.fill(indexCounts, 0);
+    }
+    public int vertexCount() {
+        return vertexCount;
+    }
+    public int indexCount() {
+        int count = 0;
+        for (int c : indexCounts) count += c;
+        return count;
+    }
+    public int indexCount(int style) {
+        return indexCounts[style];
+    }
+    public float[] vertices() {
+        return vertices;
+    }
+    public short[] indices(int style) {
+        return indices[style];
+    }
+    // Features left out because the mesh ran out of vertex indices.
+    public int droppedFeatures() {
+        return droppedFeatures;
+    }
+    public boolean hasRoom(int vertices) {
+        return vertexCount + vertices <= MAX_VERTICES;
+    }
+    public void dropFeature() {
+        droppedFeatures++;
+    }
+
+    // Returns the index of the new vertex.
+    public int addVertex(float x, float y, float extrudeX, float extrudeY, int style) {
+        int i = vertexCount * FLOATS_PER_VERTEX;
+        if (i + FLOATS_PER_VERTEX > vertices.length) vertices = Arrays.copyOf(vertices, vertices.length * 2);
+        vertices[i] = x;
+        vertices[i + 1] = y;
+        vertices[i + 2] = extrudeX;
+        vertices[i + 3] = extrudeY;
+        vertices[i + 4] = style;
+        return vertexCount++;
+    }
+    public void addTriangle(int style, int a, int b, int c) {
+        int count = indexCounts[style];
+        short[] list = indices[style];
+        if (count + 3 > list.length) list = indices[style] = Arrays.copyOf(list, list.length * 2);
+        list[count] = (short) a;
+        list[count + 1] = (short) b;
+        list[count + 2] = (short) c;
+        indexCounts[style] = count + 3;
+    }
+
+    public Packed pack() {
+        FloatBuffer packedVertices = ByteBuffer.allocateDirect(vertexCount * FLOATS_PER_VERTEX * 4)
+                .order(ByteOrder.nativeOrder()).asFloatBuffer();
+        packedVertices.put(vertices, 0, vertexCount * FLOATS_PER_VERTEX).flip();
+        ShortBuffer packedIndices = ByteBuffer.allocateDirect(indexCount() * 2)
+                .order(ByteOrder.nativeOrder()).asShortBuffer();
+        for (int style = 0; style < indices.length; style++) packedIndices.put(indices[style], 0, indexCounts[style]);
+        packedIndices.flip();
+        return new Packed(packedVertices, packedIndices);
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.maprenderer;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.PriorityQueue;
+
+/**
+ * Simulated tile server on a virtual clock: every request pays a fixed latency and bodies share
+ * one link of the given bandwidth, so a burst of requests queues up behind each other.
+ */
+final class FakeTileSource implements TileScheduler.Dispatcher {
+    private static final class Delivery implements Comparable<Delivery> {
+        final long key;
+        final long atNanos;
+        final long sentNanos;
+        final long sequence;
+
+        Delivery(long key, long atNanos, long sentNanos, long sequence) {
+            this.key = key;
+            this.atNanos = atNanos;
+            this.sentNanos = sentNanos;
+            this.sequence = sequence;
+        }
+        @Override
+        public int compareTo(Delivery other) {
+            if (atNanos != other.atNanos) return Long.compare(atNanos, other.atNanos);
+            return Long.compare(sequence, other.sequence);
+        }
+    }
+
+    private final long latencyNanos;
+    private final long bytesPerSecond;
+    private final int tileBytes;
+    private final PriorityQueue<Delivery> deliveries = new PriorityQueue<>();
+    private final Map<Long, Integer> fetchesByKey = new HashMap<>();
+    private long nowNanos;
+    private long linkFreeNanos;
+    private long requests;
+    private long duplicates;
+    private long lastLatencyNanos;
+
+    FakeTileSource(long latencyMillis, long bytesPerSecond, int tileBytes) {
+        this.latencyNanos = latencyMillis * 1_000_000L;
+        this.bytesPerSecond = bytesPerSecond;
+        this.tileBytes = tileBytes;
+    }
+
+    void setNow(long nanos) {
+        nowNanos = nanos;
+    }
+    @Override
+    public void dispatch(long key) {
+        requests++;
+        Integer previous = fetchesByKey.put(key, fetchesByKey.getOrDefault(key, 0) + 1);
+        if (previous != null) duplicates++;
+        linkFreeNanos = Math.max(nowNanos, linkFreeNanos) + tileBytes * 1_000_000_000L / bytesPerSecond;
+        deliveries.add(new Delivery(key, linkFreeNanos + latencyNanos, nowNanos, requests));
+    }
+    // Returns the next tile whose download finished by nowNanos, or -1.
+    long poll(long nowNanos) {
+        Delivery next = deliveries.peek();
+        if (next == null || next.atNanos > nowNanos) return -1;
+        Delivery delivery = deliveries.poll();
+        lastLatencyNanos = delivery.atNanos - delivery.sentNanos;
+        return delivery.key;
+    }
+    // Request-to-delivery time of the tile last returned by poll().
+    long lastLatencyNanos() {
+        return lastLatencyNanos;
+    }
+    int tileBytes() {
+        return tileBytes;
+    }
+    long requestCount() {
+        return requests;
+    }
+    long duplicateCount() {
+        return duplicates;
+    }
+    long bytesTransferred() {
+        return requests * tileBytes;
+    }
+}
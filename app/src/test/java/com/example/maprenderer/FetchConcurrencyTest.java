@@ -0,0 +1,50 @@
+package com.example.maprenderer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class FetchConcurrencyTest {
+    private static final long MS = 1_000_000L;
+
+    @Test
+    public void initialLimit_followsLinkBandwidth() {
+        assertEquals(4, FetchConcurrency.initialLimit(0, 2, 16));
+        assertEquals(2, FetchConcurrency.initialLimit(500, 2, 16));
+        int lte = FetchConcurrency.initialLimit(10_000, 2, 16);
+        assertTrue(lte > 2 && lte < 16);
+        assertEquals(16, FetchConcurrency.initialLimit(300_000, 2, 16));
+    }
+
+    @Test
+    public void steadyLatency_growsLimitAdditively() {
+        FetchConcurrency concurrency = new FetchConcurrency(2, 16, 4);
+        long now = 0;
+        for (int i = 0; i < 4; i++) concurrency.onSuccess(100 * MS, 20_000, now += 25 * MS);
+        assertEquals(5, concurrency.limit());
+        for (int i = 0; i < 200; i++) concurrency.onSuccess(100 * MS, 20_000, now += 25 * MS);
+        assertEquals(16, concurrency.limit());
+        assertTrue(concurrency.throughputBytesPerSecond() > 0);
+    }
+
+    @Test
+    public void inflatedLatency_shrinksLimitMultiplicatively() {
+        FetchConcurrency concurrency = new FetchConcurrency(2, 16, 12);
+        long now = 0;
+        for (int i = 0; i < 12; i++) concurrency.onSuccess(100 * MS, 20_000, now += 10 * MS);
+        assertEquals(13, concurrency.limit());
+        for (int i = 0; i < 13; i++) concurrency.onSuccess(900 * MS, 20_000, now += 10 * MS);
+        assertEquals(9, concurrency.limit());
+    }
+
+    @Test
+    public void failure_shrinksLimitAtWindowEnd() {
+        FetchConcurrency concurrency = new FetchConcurrency(2, 16, 8);
+        long now = 0;
+        concurrency.onFailure(now);
+        for (int i = 0; i < 7; i++) concurrency.onSuccess(100 * MS, 20_000, now += 10 * MS);
+        assertEquals(6, concurrency.limit());
+        for (int i = 0; i < 20; i++) concurrency.onFailure(now += 10 * MS);
+        assertEquals(2, concurrency.limit());
+    }
+}
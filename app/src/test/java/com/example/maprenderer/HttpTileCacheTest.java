@@ -0,0 +1,152 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.TileBuffer;
+import com.example.maprenderer.util.TileKey;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.Assert.*;
+
+public class HttpTileCacheTest {
+    private static final long KEY = TileKey.of(15, 17696, 11106);
+    private static final String PATH = "/15/17696/11106.png";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private StubTileServer server;
+    private final List<Runnable> background = new ArrayList<>();
+    private final List<Map<String, String>> requestHeaders = new ArrayList<>();
+    private final ExecutorService fetches = Executors.newCachedThreadPool();
+
+    @After
+    public void tearDown() throws IOException {
+        fetches.shutdownNow();
+        if (server != null) server.close();
+    }
+
+    private HttpTileCache cache(AtomicLong clock) throws IOException {
+        TileSource source = new TileSource(new TileHttpClient(), fetches, new TileSource.Mirror(server.url("/%d/%d/%d.png")));
+        return new HttpTileCache(new TileStore(folder.newFolder(), 1024 * 1024), new TileStore(folder.newFolder(), 64 * 1024),
+                source, background::add, clock::get);
+    }
+    private static byte[] read(HttpTileCache cache) throws IOException {
+        TileBuffer buffer = new TileBuffer(16);
+        assertTrue(cache.get(KEY, buffer));
+        return Arrays.copyOf(buffer.array(), buffer.length());
+    }
+    private static void store(HttpTileCache cache) throws IOException {
+        TileBuffer buffer = new TileBuffer(16);
+        cache.put(KEY, buffer, cache.download(KEY, buffer));
+    }
+    private void runBackground() {
+        List<Runnable> tasks = new ArrayList<>(background);
+        background.clear();
+        for (Runnable task : tasks) task.run();
+    }
+
+    @Test
+    public void freshTile_isServedWithoutRequests() throws IOException {
+        server = new StubTileServer((path, headers) -> new StubTileServer.Response(200, StubTileServer.body(path))
+                .header("Cache-Control", "max-age=3600").header("ETag", "\"v1\""));
+        HttpTileCache cache = cache(new AtomicLong(System.currentTimeMillis()));
+        store(cache);
+        assertEquals("\"v1\"", cache.freshness(KEY).etag());
+        for (int i = 0; i < 5; i++) assertArrayEquals(StubTileServer.body(PATH), read(cache));
+        assertTrue(background.isEmpty());
+        assertEquals(1, server.requestCount());
+    }
+
+    @Test
+    public void staleTile_isServedAndRevalidatedWith304() throws IOException {
+        server = new StubTileServer((path, headers) -> {
+            requestHeaders.add(headers);
+            if ("\"v1\"".equals(headers.get("if-none-match"))) {
+                return new StubTileServer.Response(304, new byte[0]).header("Cache-Control", "max-age=3600");
+            }
+            return new StubTileServer.Response(200, StubTileServer.body(path))
+                    .header("Cache-Control", "max-age=0").header("ETag", "\"v1\"")
+                    .header("Last-Modified", "Tue, 06 Oct 2026 10:00:00 GMT");
+        });
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis() + 1000);
+        HttpTileCache cache = cache(clock);
+        store(cache);
+        assertArrayEquals(StubTileServer.body(PATH), read(cache));
+        assertArrayEquals(StubTileServer.body(PATH), read(cache));
+        assertEquals(1, background.size());
+        runBackground();
+
+        assertEquals(2, server.requestCount());
+        assertEquals("Tue, 06 Oct 2026 10:00:00 GMT", requestHeaders.get(1).get("if-modified-since"));
+        assertEquals(0, cache.changedCount());
+        TileFreshness refreshed = cache.freshness(KEY);
+        assertEquals("\"v1\"", refreshed.etag());
+        assertFalse(refreshed.isStale(clock.get()));
+        assertArrayEquals(StubTileServer.body(PATH), read(cache));
+        assertTrue(background.isEmpty());
+    }
+
+    @Test
+    public void changedTile_replacesStoredBodyAndNotifies() throws IOException {
+        byte[] updated = "tile:v2".getBytes(StandardCharsets.US_ASCII);
+        server = new StubTileServer((path, headers) -> headers.containsKey("if-none-match")
+                ? new StubTileServer.Response(200, updated).header("ETag", "\"v2\"")
+                : new StubTileServer.Response(200, StubTileServer.body(path)).header("ETag", "\"v1\"")
+                .header("Cache-Control", "no-cache"));
+        HttpTileCache cache = cache(new AtomicLong(System.currentTimeMillis() + 1000));
+        List<Long> changed = new ArrayList<>();
+        cache.setListener(changed::add);
+        store(cache);
+        assertArrayEquals(StubTileServer.body(PATH), read(cache));
+        runBackground();
+
+        assertEquals(Arrays.asList(KEY), changed);
+        assertArrayEquals(updated, read(cache));
+        assertEquals("\"v2\"", cache.freshness(KEY).etag());
+        assertTrue(background.isEmpty());
+    }
+
+    @Test
+    public void failedRevalidation_keepsStaleTileAndBacksOff() throws IOException {
+        server = new StubTileServer((path, headers) -> headers.containsKey("if-none-match")
+                ? new StubTileServer.Response(503, new byte[0])
+                : new StubTileServer.Response(200, StubTileServer.body(path)).header("ETag", "\"v1\"")
+                .header("Cache-Control", "max-age=0"));
+        AtomicLong clock = new AtomicLong(System.currentTimeMillis() + 1000);
+        HttpTileCache cache = cache(clock);
+        store(cache);
+        read(cache);
+        runBackground();
+        assertArrayEquals(StubTileServer.body(PATH), read(cache));
+        assertTrue(background.isEmpty());
+
+        clock.addAndGet(HttpTileCache.RETRY_AFTER_MILLIS);
+        read(cache);
+        assertEquals(1, background.size());
+    }
+
+    @Test
+    public void cacheHeaders_setExpiry() {
+        long now = 1_000_000L;
+        assertEquals(now + 60_000, TileFreshness.fromHeaders(null, null, "public, max-age=60", 0, 0, now).expiresMillis());
+        assertEquals(now, TileFreshness.fromHeaders(null, null, "no-cache", now + 60_000, 0, now).expiresMillis());
+        assertEquals(now + 30_000, TileFreshness.fromHeaders(null, null, null, 5_030_000L, 5_000_000L, now).expiresMillis());
+        assertEquals(now + TileFreshness.DEFAULT_MAX_AGE_MILLIS, TileFreshness.fromHeaders("\"a\"", null, null, 0, 0, now).expiresMillis());
+        TileFreshness decoded = TileFreshness.decode(new TileFreshness("\"a\"", null, 42).encode());
+        assertEquals("\"a\"", decoded.etag());
+        assertNull(decoded.lastModified());
+        assertEquals(42, decoded.expiresMillis());
+    }
+}
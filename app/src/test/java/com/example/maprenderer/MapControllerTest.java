@@ -0,0 +1,283 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.TileKey;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import static org.junit.Assert.*;
+
+public class MapControllerTest {
+    private static final int VIEW_W = 1080;
+    private static final int VIEW_H = 2160;
+    private static final int PAGE = 2048;
+
+    private static MapController controller() {
+        MapController controller = new MapController(256 * 256 * 2, 8L * 1024 * 1024, 6, PAGE,
+                new MapController.SlotAllocator() {
+                    private int next;
+                    @Override
+                    public int allocate() {
+                        return next++;
+                    }
+                    @Override
+                    public void free(int slot) {
+                    }
+                });
+        controller.setCenter(15, 17696.5, 11106.5);
+        return controller;
+    }
+    // Fractional tile coordinate under a screen point at the current zoom level.
+    private static double mapX(MapController controller, float screenX) {
+        float unitsPerPixel = MapController.unitsPerPixel(VIEW_W, VIEW_H);
+        return controller.centerX() + (screenX - VIEW_W / 2f) * unitsPerPixel / MapController.TILE_SIZE / controller.scale();
+    }
+    private static double mapY(MapController controller, float screenY) {
+        float unitsPerPixel = MapController.unitsPerPixel(VIEW_W, VIEW_H);
+        return controller.centerY() + (screenY - VIEW_H / 2f) * unitsPerPixel / MapController.TILE_SIZE / controller.scale();
+    }
+
+    // Quad of the batch centered on the given point: size, depth, u0, v0, u1, v1.
+    private static float[] quadAt(TileBatch batch, float centerX, float centerY) {
+        float[] v = batch.vertices();
+        for (int q = 0; q < batch.quadCount(); q++) {
+            int top = q * TileBatch.FLOATS_PER_QUAD;
+            int bottom = top + 2 * TileBatch.FLOATS_PER_VERTEX;
+            float size = v[bottom] - v[top];
+            if (Math.abs(v[top] + size / 2 - centerX) < 1e-3 && Math.abs(v[top + 1] - size / 2 - centerY) < 1e-3) {
+                return new float[] { size, v[top + 2], v[top + 3], v[top + 4], v[bottom + 3], v[bottom + 4] };
+            }
+        }
+        fail("no quad at " + centerX + ", " + centerY);
+        return null;
+    }
+    // Texture coordinate of a point of slot 0 of the 2048 px atlas page, region 0..1 across the tile.
+    private static float texture(float region) {
+        return 0.5f / PAGE + region * (MapController.TILE_SIZE - 1f) / PAGE;
+    }
+
+    @Test
+    public void pinch_scalesContinuouslyAndSwapsLevelAtThreshold() {
+        MapController controller = controller();
+        assertTrue(controller.zoom(1.2f, VIEW_W / 2f, VIEW_H / 2f, VIEW_W, VIEW_H, 0));
+        assertEquals(15, controller.zoom());
+        assertEquals(1.2f, controller.scale(), 1e-5f);
+        controller.zoom(1.2f, VIEW_W / 2f, VIEW_H / 2f, VIEW_W, VIEW_H, 0);
+        assertEquals(16, controller.zoom());
+        assertEquals(0.72f, controller.scale(), 1e-5f);
+        assertEquals(2 * 17696.5, controller.centerX(), 1e-3);
+        assertEquals(15 + Math.log(1.44) / Math.log(2), controller.zoomLevel(), 1e-5);
+        controller.zoom(1 / 1.44f, VIEW_W / 2f, VIEW_H / 2f, VIEW_W, VIEW_H, 0);
+        assertEquals(15, controller.zoom());
+        assertEquals(1f, controller.scale(), 1e-5f);
+    }
+
+    @Test
+    public void pinch_keepsFocusPointInPlace() {
+        MapController controller = controller();
+        float focusX = 200;
+        float focusY = 1500;
+        double x = mapX(controller, focusX);
+        double y = mapY(controller, focusY);
+        for (int i = 0; i < 12; i++) controller.zoom(1.06f, focusX, focusY, VIEW_W, VIEW_H, 0);
+        assertEquals(16, controller.zoom());
+        assertEquals(2 * x, mapX(controller, focusX), 1e-3);
+        assertEquals(2 * y, mapY(controller, focusY), 1e-3);
+    }
+
+    @Test
+    public void pinchWithinLevel_requestsNoNewTiles() {
+        MapController controller = controller();
+        controller.beginFrame(0);
+        controller.updateVisibleTiles();
+        int pending = controller.scheduler().pendingCount();
+        for (int i = 0; i < 5; i++) {
+            controller.zoom(1.05f, VIEW_W / 2f, VIEW_H / 2f, VIEW_W, VIEW_H, 0);
+            controller.beginFrame(0);
+            controller.updateVisibleTiles();
+        }
+        assertEquals(15, controller.zoom());
+        assertEquals(pending, controller.scheduler().pendingCount());
+    }
+
+    @Test
+    public void textureCacheCounters_countTilesTheViewNewlyNeeds() {
+        MapController controller = controller();
+        TextureCache cache = controller.textureCache();
+        controller.beginFrame(0);
+        controller.updateVisibleTiles();
+        // 8x8 visible tiles, then 4x4, 2x3 and 2x2 of the fallback pyramid above them.
+        assertEquals(64 + 16 + 6 + 4, cache.missCount());
+        // A still view looks the same tiles up on every frame without counting them again.
+        controller.onTileLoaded(TileKey.of(15, 17696, 11106), controller.allocateSlot());
+        controller.onTileLoaded(TileKey.of(15, 17700, 11106), controller.allocateSlot());
+        for (int i = 0; i < 10; i++) {
+            controller.beginFrame(0);
+            controller.updateVisibleTiles();
+        }
+        assertEquals(0, cache.hitCount());
+        assertEquals(90, cache.missCount());
+        // Panning a tile to the east brings in a column at z15, z14 and z13; one of its tiles is loaded.
+        controller.setTile(15, 17697, 11106);
+        controller.beginFrame(0);
+        controller.updateVisibleTiles();
+        assertEquals(1, cache.hitCount());
+        assertEquals(90 + 7 + 4 + 3, cache.missCount());
+    }
+
+    @Test
+    public void zoom_isClampedToSupportedLevels() {
+        MapController controller = controller();
+        controller.setTile(MapController.MAX_ZOOM, 1000, 1000);
+        assertFalse(controller.zoom(1.5f, 0));
+        assertEquals(1f, controller.scale(), 0f);
+        controller.setTile(MapController.MIN_ZOOM, 8, 8);
+        assertFalse(controller.zoom(0.5f, 0));
+        assertEquals(MapController.MIN_ZOOM, controller.zoomLevel(), 0);
+    }
+
+    @Test
+    public void frame_keepsItsSnapshotWhileGesturesPublish() {
+        MapController controller = controller();
+        Viewport frame = controller.beginFrame(0);
+        controller.zoom(1.3f, 100, 100, VIEW_W, VIEW_H, 0);
+        controller.pan(-40, 25, VIEW_W, VIEW_H, 0);
+        controller.rebuildBatch();
+        assertTrue(controller.frameChanged());
+        assertFalse(controller.frameChanged());
+        assertFalse(frame.sameView(controller.viewport()));
+        assertTrue(controller.beginFrame(0).sameView(controller.viewport()));
+        assertTrue(controller.frameChanged());
+    }
+
+    @Test
+    public void concurrentPans_areNotLost() throws InterruptedException {
+        MapController controller = controller();
+        double startX = controller.centerX();
+        int threads = 4;
+        int pans = 2000;
+        CountDownLatch start = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+        for (int t = 0; t < threads; t++) {
+            workers[t] = new Thread(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < pans; i++) controller.pan(-VIEW_W / 64f, 0, VIEW_W, VIEW_H, i);
+            });
+            workers[t].start();
+        }
+        start.countDown();
+        for (Thread worker : workers) worker.join();
+        // Each pan moves 0.8 * 15 / 64 tiles.
+        assertEquals(startX + threads * pans * 0.8 * 15 / 64, controller.centerX(), 1e-2);
+    }
+
+    @Test
+    public void coalescedInput_matchesEventByEventPan() {
+        MapController eventByEvent = controller();
+        MapController coalesced = controller();
+        GestureAccumulator gestures = new GestureAccumulator();
+        for (int i = 0; i < 5; i++) {
+            eventByEvent.pan(-12, 7, VIEW_W, VIEW_H, 0);
+            gestures.addMove(-12, 7);
+        }
+        assertTrue(gestures.flush(coalesced, VIEW_W, VIEW_H, 0));
+        assertFalse(gestures.isPending());
+        assertEquals(eventByEvent.centerX(), coalesced.centerX(), 1e-4);
+        assertEquals(eventByEvent.centerY(), coalesced.centerY(), 1e-4);
+
+        gestures.addZoom(1.1f, VIEW_W / 2f, VIEW_H / 2f);
+        gestures.addZoom(1.1f, VIEW_W / 2f, VIEW_H / 2f);
+        gestures.flush(coalesced, VIEW_W, VIEW_H, 0);
+        assertEquals(1.21f, coalesced.scale(), 1e-5f);
+    }
+
+    @Test
+    public void pastMaxTileZoom_deepestTilesAreScaledUp() {
+        MapController controller = controller();
+        VectorBatch vectors = new VectorBatch();
+        controller.setVectorBatch(vectors);
+        controller.setMaxTileZoom(14);
+        controller.setFetchLimit(64);
+        controller.setCenter(16, 2 * 17696.5, 2 * 11106.5);
+        controller.beginFrame(0);
+        controller.updateVisibleTiles();
+        List<Long> requested = new ArrayList<>();
+        controller.dispatch(requested::add);
+        assertTrue(requested.contains(TileKey.of(14, 8848, 5553)));
+        for (long key : requested) assertTrue(TileKey.zoom(key) <= 14);
+
+        controller.onTileLoaded(TileKey.of(14, 8848, 5553), controller.allocateSlot(), 1000);
+        assertTrue(controller.rebuildBatch());
+        // The 16 visible z16 tiles it covers share one draw of the whole z14 tile.
+        assertEquals(1, vectors.count());
+        assertEquals(4 * MapController.TILE_SIZE, vectors.size(0), 0);
+        assertEquals(0, controller.batch().quadCount());
+    }
+
+    @Test
+    public void missingTile_drawsTheRegionOfACachedAncestor() {
+        MapController controller = controller();
+        controller.setTile(15, 17696, 11106);
+        controller.onTileLoaded(TileKey.of(14, 8848, 5553), controller.allocateSlot());
+        controller.beginFrame(0);
+        controller.rebuildBatch();
+        // The z14 tile stands in for the four z15 tiles it covers, each with its own quarter.
+        TileBatch batch = controller.batch();
+        assertEquals(4, batch.quadCount());
+        assertEquals(64, controller.missingTileCount());
+        assertEquals(60, controller.blankTileCount());
+        float[] quad = quadAt(batch, MapController.TILE_SIZE, -MapController.TILE_SIZE);
+        assertEquals(MapController.TILE_SIZE, quad[0], 1e-4);
+        assertEquals(MapController.DEPTH_ANCESTOR - 0.1f, quad[1], 1e-6);
+        assertEquals(texture(0.5f), quad[2], 1e-6);
+        assertEquals(texture(0.5f), quad[3], 1e-6);
+        assertEquals(texture(1f), quad[4], 1e-6);
+        assertEquals(texture(1f), quad[5], 1e-6);
+
+        // Two levels up, a z13 tile covers 4x4 z15 tiles with a sixteenth each, drawn further back.
+        controller.textureCache().clear();
+        controller.onTileLoaded(TileKey.of(13, 4424, 2776), controller.allocateSlot());
+        controller.beginFrame(0);
+        controller.rebuildBatch();
+        assertEquals(16, batch.quadCount());
+        // z15 tile 17699/11104: three tiles east, two north of the center.
+        quad = quadAt(batch, 3 * MapController.TILE_SIZE, 2 * MapController.TILE_SIZE);
+        assertEquals(MapController.DEPTH_ANCESTOR - 0.2f, quad[1], 1e-6);
+        float slot = quad[2] - texture(0.75f);
+        assertEquals(texture(0f), quad[3], 1e-6);
+        assertEquals(texture(1f) + slot, quad[4], 1e-6);
+        assertEquals(texture(0.25f), quad[5], 1e-6);
+    }
+
+    @Test
+    public void missingTile_drawsAMosaicOfCachedChildren() {
+        MapController controller = controller();
+        controller.setTile(15, 17696, 11106);
+        int[][] children = { { 0, 0 }, { 1, 0 }, { 1, 1 } };
+        for (int[] child : children) {
+            controller.onTileLoaded(TileKey.of(16, 2 * 17696 + child[0], 2 * 11106 + child[1]), controller.allocateSlot());
+        }
+        controller.beginFrame(0);
+        controller.rebuildBatch();
+        TileBatch batch = controller.batch();
+        assertEquals(3, batch.quadCount());
+        assertEquals(63, controller.blankTileCount());
+        float half = MapController.TILE_SIZE / 2f;
+        for (int[] child : children) {
+            // West/east and north/south halves of the center tile, y up.
+            float[] quad = quadAt(batch, (child[0] - 0.5f) * half, -(child[1] - 0.5f) * half);
+            assertEquals(half, quad[0], 1e-4);
+            assertEquals(MapController.DEPTH_CHILD, quad[1], 1e-6);
+            // Whole child textures.
+            assertEquals(texture(1f) - texture(0f), quad[4] - quad[2], 1e-6);
+            assertEquals(texture(1f) - texture(0f), quad[5] - quad[3], 1e-6);
+        }
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.TileKey;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.Assert.*;
+
+public class OfflineSeederTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private StubTileServer server;
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        if (server != null) server.close();
+    }
+
+    private static String path(long key) {
+        return "/" + TileKey.zoom(key) + "/" + TileKey.x(key) + "/" + TileKey.y(key) + ".png";
+    }
+    private TileSource source(String template) {
+        return new TileSource(new TileHttpClient(), executor, new TileSource.Mirror(template));
+    }
+    private OfflineSeeder seeder(TileStore store, File checkpoint) {
+        return new OfflineSeeder(store, source(server.url("/%d/%d/%d.png")), 1000, checkpoint);
+    }
+
+    @Test
+    public void region_enumeratesEveryTileOnce() {
+        OfflineSeeder.Region world = new OfflineSeeder.Region(85, -180, -85, 180, 0, 2);
+        assertEquals(1 + 4 + 16, world.tileCount());
+        OfflineSeeder.Region region = new OfflineSeeder.Region(50.2, 14.2, 49.9, 14.7, 10, 13);
+        Set<Long> keys = new HashSet<>();
+        for (long i = 0; i < region.tileCount(); i++) {
+            long key = region.tileAt(i);
+            assertTrue(TileKey.zoom(key) >= 10 && TileKey.zoom(key) <= 13);
+            assertTrue(keys.add(key));
+        }
+        assertTrue(TileKey.zoom(region.tileAt(0)) == 10 && TileKey.zoom(region.tileAt(region.tileCount() - 1)) == 13);
+    }
+
+    @Test
+    public void seed_storesWholeRegion() throws IOException {
+        server = new StubTileServer((path, headers) -> new StubTileServer.Response(200, StubTileServer.body(path)));
+        TileStore store = new TileStore(folder.newFolder(), 1024 * 1024);
+        OfflineSeeder.Region region = new OfflineSeeder.Region(50.2, 14.2, 49.9, 14.7, 10, 12);
+        OfflineSeeder seeder = seeder(store, new File(folder.getRoot(), "checkpoint"));
+        seeder.setBatchSize(5);
+        OfflineSeeder.Progress progress = seeder.seed(region, null);
+        assertEquals(region.tileCount(), progress.done);
+        assertEquals(0, progress.failed);
+        assertEquals(region.tileCount(), server.requestCount());
+        for (long i = 0; i < region.tileCount(); i++) {
+            long key = region.tileAt(i);
+            assertArrayEquals(StubTileServer.body(path(key)), store.get(key));
+        }
+        store.close();
+    }
+
+    @Test
+    public void cancelledSeed_resumesFromCheckpointWithoutRefetching() throws IOException {
+        server = new StubTileServer((path, headers) -> new StubTileServer.Response(200, StubTileServer.body(path)));
+        File storeDir = folder.newFolder();
+        File checkpoint = new File(folder.getRoot(), "checkpoint");
+        OfflineSeeder.Region region = new OfflineSeeder.Region(50.2, 14.2, 49.9, 14.7, 10, 12);
+        TileStore store = new TileStore(storeDir, 1024 * 1024);
+        OfflineSeeder first = seeder(store, checkpoint);
+        first.setBatchSize(4);
+        OfflineSeeder.Progress partial = first.seed(region, progress -> first.cancel());
+        assertEquals(4, partial.done);
+        store.close();
+
+        store = new TileStore(storeDir, 1024 * 1024);
+        OfflineSeeder second = seeder(store, checkpoint);
+        second.setBatchSize(4);
+        assertEquals(region.tileCount(), second.seed(region, null).done);
+        assertEquals(region.tileCount(), server.requestCount());
+
+        assertTrue(checkpoint.delete());
+        seeder(store, checkpoint).seed(region, null);
+        assertEquals("tiles already stored are skipped", region.tileCount(), server.requestCount());
+        store.close();
+    }
+
+    @Test
+    public void rateLimit_pacesRequests() throws IOException {
+        server = new StubTileServer((path, headers) -> new StubTileServer.Response(200, StubTileServer.body(path)));
+        TileStore store = new TileStore(folder.newFolder(), 1024 * 1024);
+        OfflineSeeder.Region region = new OfflineSeeder.Region(50.2, 14.2, 49.9, 14.7, 10, 11);
+        OfflineSeeder seeder = seeder(store, new File(folder.getRoot(), "checkpoint"));
+        seeder.setConcurrency(8);
+        seeder.setRateLimit(20);
+        long start = System.nanoTime();
+        seeder.seed(region, null);
+        long elapsedMs = (System.nanoTime() - start) / 1_000_000;
+        assertTrue("elapsed " + elapsedMs + " ms", elapsedMs >= (region.tileCount() - 1) * 50 - 20);
+        store.close();
+    }
+
+    @Test
+    public void failedTiles_areRetriedOnNextRun() throws IOException {
+        OfflineSeeder.Region region = new OfflineSeeder.Region(50.2, 14.2, 49.9, 14.7, 10, 11);
+        long broken = region.tileAt(2);
+        AtomicBoolean failing = new AtomicBoolean(true);
+        server = new StubTileServer((path, headers) -> failing.get() && path.equals(path(broken))
+                ? new StubTileServer.Response(500, new byte[0])
+                : new StubTileServer.Response(200, StubTileServer.body(path)));
+        File checkpoint = new File(folder.getRoot(), "checkpoint");
+        TileStore store = new TileStore(folder.newFolder(), 1024 * 1024);
+        OfflineSeeder.Progress first = seeder(store, checkpoint).seed(region, null);
+        assertEquals(region.tileCount(), first.done);
+        assertEquals(1, first.failed);
+        assertFalse(first.isComplete());
+        assertNull(store.get(broken));
+
+        failing.set(false);
+        int requests = server.requestCount();
+        OfflineSeeder.Progress second = seeder(store, checkpoint).seed(region, null);
+        assertTrue(second.isComplete());
+        assertEquals(1, server.requestCount() - requests);
+        assertArrayEquals(StubTileServer.body(path(broken)), store.get(broken));
+        store.close();
+    }
+
+    @Test
+    public void regionLargerThanStore_failsWithoutEvicting() throws IOException {
+        server = new StubTileServer((path, headers) -> new StubTileServer.Response(200, StubTileServer.body(path)));
+        OfflineSeeder.Region region = new OfflineSeeder.Region(50.2, 14.2, 49.9, 14.7, 10, 12);
+        long tileBytes = StubTileServer.body(path(region.tileAt(0))).length;
+        File checkpoint = new File(folder.getRoot(), "checkpoint");
+        TileStore store = new TileStore(folder.newFolder(), 6 * tileBytes, false);
+        OfflineSeeder seeder = seeder(store, checkpoint);
+        seeder.setBatchSize(4);
+        try {
+            seeder.seed(region, null);
+            fail("region does not fit");
+        } catch (TileStore.FullException expected) {
+        }
+        assertEquals(4, store.size());
+        for (int i = 0; i < 4; i++) assertNotNull(store.get(region.tileAt(i)));
+        store.close();
+    }
+
+    @Test
+    public void openStreetMapServers_areRefused() {
+        TileStore store = new TileStore(folder.getRoot(), 1024 * 1024);
+        File checkpoint = new File(folder.getRoot(), "checkpoint");
+        try {
+            new OfflineSeeder(store, source("https://tile.openstreetmap.org/%d/%d/%d.png"), 1, checkpoint);
+            fail("tile.openstreetmap.org forbids bulk downloads");
+        } catch (IllegalArgumentException expected) {
+        }
+        try {
+            new OfflineSeeder(store, source("https://tiles.example.org/%d/%d/%d.png"), 0, checkpoint);
+            fail("seeding needs a rate limit");
+        } catch (IllegalArgumentException expected) {
+        }
+    }
+}
@@ -0,0 +1,140 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.TileKey;
+
+import java.util.HashSet;
+import java.util.Locale;
+import java.util.Set;
+
+/**
+ * Headless render loop: drives MapController at 60 fps on a virtual clock against a fake tile
+ * source and an in-memory slot allocator, replaying a gesture trace. Runs are deterministic.
+ */
+final class RenderSimulator {
+    static final long FRAME_NANOS = 16_666_667L;
+    private static final long START_NANOS = 1_000_000_000L;
+
+    static final class Report {
+        long frames;
+        long idleFrames;
+        long blankFrames;
+        long incompleteFrames;
+        long requests;
+        long duplicateRequests;
+        long wastedDownloads;
+        long bytes;
+        long viewportCompletions;
+        long totalCompleteNanos;
+        long maxCompleteNanos;
+
+        double meanCompleteMillis() {
+            return viewportCompletions == 0 ? 0 : totalCompleteNanos / 1e6 / viewportCompletions;
+        }
+        @Override
+        public String toString() {
+            return String.format(Locale.ROOT,
+                    "frames=%d idle=%d blank=%d incomplete=%d requests=%d duplicates=%d wasted=%d bytes=%d "
+                            + "completions=%d meanCompleteMs=%.1f maxCompleteMs=%.1f",
+                    frames, idleFrames, blankFrames, incompleteFrames, requests, duplicateRequests, wastedDownloads, bytes,
+                    viewportCompletions, meanCompleteMillis(), maxCompleteNanos / 1e6);
+        }
+    }
+
+    private static final class FakeSlots implements MapController.SlotAllocator {
+        private final int[] free;
+        private int freeCount;
+
+        FakeSlots(int capacity) {
+            free = new int[capacity];
+            for (int slot = capacity - 1; slot >= 0; slot--) free[freeCount++] = slot;
+        }
+        @Override
+        public int allocate() {
+            return freeCount == 0 ? TextureCache.NO_TEXTURE : free[--freeCount];
+        }
+        @Override
+        public void free(int slot) {
+            free[freeCount++] = slot;
+        }
+    }
+
+    private final FakeTileSource source;
+    private final MapController controller;
+    private final Set<Long> delivered = new HashSet<>();
+    private final Set<Long> drawn = new HashSet<>();
+    private final GestureAccumulator gestures = new GestureAccumulator();
+    private FetchConcurrency fetchConcurrency;
+
+    RenderSimulator(FakeTileSource source, int tileBytes, long textureCacheBytes, int maxInFlight) {
+        this.source = source;
+        this.controller = new MapController(tileBytes, textureCacheBytes, maxInFlight, 2048,
+                new FakeSlots((int) (textureCacheBytes / tileBytes)));
+        this.controller.setDrawListener(drawn::add);
+    }
+
+    MapController controller() {
+        return controller;
+    }
+    // Drives the download limit adaptively from simulated latencies instead of the fixed maxInFlight.
+    void setFetchConcurrency(FetchConcurrency concurrency) {
+        fetchConcurrency = concurrency;
+    }
+
+    Report replay(GestureTrace trace, long settleMillis) {
+        Report report = new Report();
+        long end = START_NANOS + trace.durationNanos() + settleMillis * 1_000_000L;
+        int event = 0;
+        long viewKey = -1;
+        long incompleteSince = -1;
+        for (long now = START_NANOS; now <= end; now += FRAME_NANOS) {
+            // Like MapRenderer, input of one frame interval reaches the controller as one update.
+            while (event < trace.size() && START_NANOS + trace.timeNanos(event) <= now) {
+                if (trace.type(event) == GestureTrace.MOVE) {
+                    gestures.addMove(trace.deltaX(event), trace.deltaY(event));
+                } else {
+                    gestures.addZoom(trace.scaleFactor(event), trace.focusX(event), trace.focusY(event));
+                }
+                event++;
+            }
+            gestures.flush(controller, trace.viewWidth(), trace.viewHeight(), now);
+            long key;
+            while ((key = source.poll(now)) != -1) {
+                delivered.add(key);
+                if (fetchConcurrency != null) fetchConcurrency.onSuccess(source.lastLatencyNanos(), source.tileBytes(), now);
+                controller.onTileLoaded(key, controller.allocateSlot());
+            }
+            source.setNow(now);
+            controller.beginFrame(now);
+            if (fetchConcurrency != null) controller.setFetchLimit(fetchConcurrency.limit());
+            controller.dispatch(source);
+            controller.updateVisibleTiles();
+            controller.rebuildBatch();
+            controller.prefetch(now);
+
+            report.frames++;
+            if (!controller.frameChanged()) report.idleFrames++;
+            if (controller.blankTileCount() > 0) report.blankFrames++;
+            long currentView = TileKey.of(controller.zoom(), controller.tileX(), controller.tileY());
+            if (currentView != viewKey) {
+                viewKey = currentView;
+                if (incompleteSince < 0) incompleteSince = now;
+            }
+            if (controller.missingTileCount() > 0) {
+                report.incompleteFrames++;
+            } else if (incompleteSince >= 0) {
+                long elapsed = now - incompleteSince;
+                report.viewportCompletions++;
+                report.totalCompleteNanos += elapsed;
+                report.maxCompleteNanos = Math.max(report.maxCompleteNanos, elapsed);
+                incompleteSince = -1;
+            }
+        }
+        report.requests = source.requestCount();
+        report.duplicateRequests = source.duplicateCount();
+        report.bytes = source.bytesTransferred();
+        for (Long tile : delivered) {
+            if (!drawn.contains(tile)) report.wastedDownloads++;
+        }
+        return report;
+    }
+}
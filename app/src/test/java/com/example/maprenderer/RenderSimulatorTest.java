@@ -0,0 +1,112 @@
+package com.example.maprenderer;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.Reader;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.*;
+
+public class RenderSimulatorTest {
+    private static final int TILE_BYTES = 256 * 256 * 2;
+    private static final long CACHE_BYTES = 48L * 1024 * 1024;
+
+    private static RenderSimulator simulator(long latencyMillis, long bytesPerSecond) {
+        RenderSimulator simulator = new RenderSimulator(new FakeTileSource(latencyMillis, bytesPerSecond, 24 * 1024),
+                TILE_BYTES, CACHE_BYTES, 6);
+        simulator.controller().setTile(15, 17696, 11106);
+        return simulator;
+    }
+
+    private static GestureTrace fling(int frames, float deltaX, float deltaY) {
+        GestureTrace trace = new GestureTrace(1080, 2160);
+        for (int i = 0; i < frames; i++) trace.recordMove(i * RenderSimulator.FRAME_NANOS, deltaX, deltaY);
+        return trace;
+    }
+
+    private static GestureTrace resourceTrace(String name) throws IOException {
+        try (Reader reader = new InputStreamReader(RenderSimulatorTest.class.getResourceAsStream("/traces/" + name),
+                StandardCharsets.UTF_8)) {
+            return GestureTrace.read(reader);
+        }
+    }
+
+    @Test
+    public void idleViewport_loadsEveryTileOnce() {
+        RenderSimulator.Report report = simulator(50, 2_000_000).replay(new GestureTrace(1080, 2160), 5000);
+        assertEquals(1, report.viewportCompletions);
+        assertEquals(0, report.duplicateRequests);
+        assertTrue(report.requests >= 64);
+        assertTrue(report.blankFrames > 0);
+        assertTrue(report.blankFrames < report.frames);
+    }
+
+    @Test
+    public void settledViewport_onlyRedrawsIdleFrames() {
+        RenderSimulator.Report idle = simulator(50, 2_000_000).replay(new GestureTrace(1080, 2160), 5000);
+        long changed = idle.frames - idle.idleFrames;
+        assertTrue(changed > 0);
+        assertTrue("changed " + changed + " of " + idle.frames, changed < idle.frames / 4);
+
+        RenderSimulator.Report panning = simulator(50, 2_000_000).replay(fling(120, -20, 0), 0);
+        assertTrue(panning.idleFrames < panning.frames / 10);
+    }
+
+    @Test
+    public void replay_isDeterministic() throws IOException {
+        GestureTrace trace = resourceTrace("pan-zoom-pan.trace");
+        String first = simulator(80, 1_000_000).replay(trace, 3000).toString();
+        String second = simulator(80, 1_000_000).replay(trace, 3000).toString();
+        assertEquals(first, second);
+    }
+
+    @Test
+    public void slowLink_showsMoreBlankFrames() {
+        GestureTrace trace = fling(90, -50, 0);
+        RenderSimulator.Report fast = simulator(30, 4_000_000).replay(trace, 20000);
+        RenderSimulator.Report slow = simulator(400, 200_000).replay(trace, 20000);
+        assertTrue(slow.blankFrames > fast.blankFrames);
+        assertTrue(slow.meanCompleteMillis() > fast.meanCompleteMillis());
+    }
+
+    @Test
+    public void adaptiveFetchLimit_fillsViewportNoSlowerThanFixedPool() {
+        GestureTrace trace = fling(90, -50, 0);
+        RenderSimulator.Report fixed = simulator(150, 1_000_000).replay(trace, 20000);
+        RenderSimulator adaptive = simulator(150, 1_000_000);
+        FetchConcurrency concurrency = new FetchConcurrency();
+        adaptive.setFetchConcurrency(concurrency);
+        RenderSimulator.Report report = adaptive.replay(trace, 20000);
+        assertTrue(report.blankFrames <= fixed.blankFrames);
+        assertTrue(report.meanCompleteMillis() <= fixed.meanCompleteMillis());
+        assertTrue(concurrency.throughputBytesPerSecond() > 0);
+    }
+
+    @Test
+    public void trace_roundTripsThroughText() throws IOException {
+        GestureTrace trace = new GestureTrace(720, 1280);
+        trace.recordMove(5_000_000_000L, -12.5f, 3f);
+        trace.recordZoom(5_016_000_000L, 1.07f, 300f, 410.5f);
+        StringWriter text = new StringWriter();
+        trace.write(text);
+
+        GestureTrace parsed = GestureTrace.read(new StringReader(text.toString()));
+        assertEquals(720, parsed.viewWidth());
+        assertEquals(2, parsed.size());
+        assertEquals(GestureTrace.MOVE, parsed.type(0));
+        assertEquals(0, parsed.timeNanos(0));
+        assertEquals(-12.5f, parsed.deltaX(0), 1e-3f);
+        assertEquals(GestureTrace.ZOOM, parsed.type(1));
+        assertEquals(16_000_000L, parsed.timeNanos(1));
+        assertEquals(1.07f, parsed.scaleFactor(1), 1e-4f);
+        assertEquals(410.5f, parsed.focusY(1), 1e-3f);
+
+        GestureTrace centered = GestureTrace.read(new StringReader("# view 720 1280\n0 zoom 0.9\n"));
+        assertEquals(360f, centered.focusX(0), 0f);
+        assertEquals(640f, centered.focusY(0), 0f);
+    }
+}
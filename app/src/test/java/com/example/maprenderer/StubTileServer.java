@@ -0,0 +1,137 @@
+package com.example.maprenderer;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/** Minimal HTTP/1.1 keep-alive server for tile client tests; counts connections and requests. */
+final class StubTileServer implements Closeable {
+    static final class Response {
+        final int status;
+        final byte[] body;
+        final Map<String, String> headers = new LinkedHashMap<>();
+        long delayMs;
+
+        Response(int status, byte[] body) {
+            this.status = status;
+            this.body = body;
+        }
+        Response header(String name, String value) {
+            headers.put(name, value);
+            return this;
+        }
+        Response delay(long millis) {
+            delayMs = millis;
+            return this;
+        }
+    }
+
+    interface Handler {
+        Response handle(String path, Map<String, String> headers);
+    }
+
+    private final ServerSocket serverSocket;
+    private final Handler handler;
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private final AtomicInteger connections = new AtomicInteger();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final ConcurrentHashMap<String, AtomicInteger> requestsByPath = new ConcurrentHashMap<>();
+
+    StubTileServer(Handler handler) throws IOException {
+        this.handler = handler;
+        this.serverSocket = new ServerSocket(0, 50, InetAddress.getLoopbackAddress());
+        executor.execute(this::acceptLoop);
+    }
+
+    static byte[] body(String path) {
+        return ("tile:" + path).getBytes(StandardCharsets.US_ASCII);
+    }
+
+    String url(String path) {
+        return "http://127.0.0.1:" + serverSocket.getLocalPort() + path;
+    }
+    int connectionCount() {
+        return connections.get();
+    }
+    int requestCount() {
+        return requests.get();
+    }
+    int requestCount(String path) {
+        AtomicInteger count = requestsByPath.get(path);
+        return count == null ? 0 : count.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        serverSocket.close();
+        executor.shutdownNow();
+    }
+
+    private void acceptLoop() {
+        while (!serverSocket.isClosed()) {
+            try {
+                Socket socket = serverSocket.accept();
+                connections.incrementAndGet();
+                executor.execute(() -> serve(socket));
+            } catch (IOException e) {
+                return;
+            }
+        }
+    }
+    private void serve(Socket socket) {
+        try (Socket s = socket) {
+            InputStream input = new BufferedInputStream(s.getInputStream());
+            OutputStream output = s.getOutputStream();
+            String requestLine;
+            while ((requestLine = readLine(input)) != null && !requestLine.isEmpty()) {
+                Map<String, String> headers = new HashMap<>();
+                String line;
+                while ((line = readLine(input)) != null && !line.isEmpty()) {
+                    int colon = line.indexOf(':');
+                    headers.put(line.substring(0, colon).trim().toLowerCase(Locale.ROOT), line.substring(colon + 1).trim());
+                }
+                String path = requestLine.split(" ")[1];
+                requests.incrementAndGet();
+                requestsByPath.computeIfAbsent(path, p -> new AtomicInteger()).incrementAndGet();
+                Response response = handler.handle(path, headers);
+                if (response.delayMs > 0) Thread.sleep(response.delayMs);
+                StringBuilder head = new StringBuilder();
+                head.append("HTTP/1.1 ").append(response.status).append(" X\r\n");
+                for (Map.Entry<String, String> header : response.headers.entrySet()) {
+                    head.append(header.getKey()).append(": ").append(header.getValue()).append("\r\n");
+                }
+                head.append("Content-Length: ").append(response.body.length).append("\r\n\r\n");
+                output.write(head.toString().getBytes(StandardCharsets.US_ASCII));
+                output.write(response.body);
+                output.flush();
+            }
+        } catch (IOException | InterruptedException ignored) {
+            // client went away
+        }
+    }
+    private static String readLine(InputStream input) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while ((b = input.read()) != -1) {
+            if (b == '\n') break;
+            if (b != '\r') line.write(b);
+        }
+        if (b == -1 && line.size() == 0) return null;
+        return new String(line.toByteArray(), StandardCharsets.US_ASCII);
+    }
+}
@@ -0,0 +1,66 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.TileKey;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TextureCacheTest {
+    private final List<Integer> deleted = new ArrayList<>();
+    private final TextureCache cache = new TextureCache(3 * 100, 4, (key, textureId) -> deleted.add(textureId));
+
+    @Test
+    public void overBudget_evictsLeastRecentlyUsed() {
+        cache.put(TileKey.of(15, 0, 0), 1, 100);
+        cache.put(TileKey.of(15, 1, 0), 2, 100);
+        cache.put(TileKey.of(15, 2, 0), 3, 100);
+        assertEquals(1, cache.get(TileKey.of(15, 0, 0)));
+        cache.put(TileKey.of(15, 3, 0), 4, 100);
+
+        assertFalse(cache.contains(TileKey.of(15, 1, 0)));
+        assertTrue(cache.contains(TileKey.of(15, 0, 0)));
+        assertEquals(1, cache.evictionCount());
+        assertEquals(300, cache.usedBytes());
+        assertEquals(2, (int) deleted.get(0));
+    }
+
+    @Test
+    public void otherZoomLevels_stayWhileRecentlyUsed() {
+        cache.put(TileKey.of(14, 5, 5), 1, 100);
+        cache.put(TileKey.of(15, 10, 10), 2, 100);
+        cache.get(TileKey.of(14, 5, 5));
+        cache.put(TileKey.of(15, 11, 10), 3, 100);
+        cache.put(TileKey.of(15, 12, 10), 4, 100);
+
+        assertTrue(cache.contains(TileKey.of(14, 5, 5)));
+        assertFalse(cache.contains(TileKey.of(15, 10, 10)));
+    }
+
+    @Test
+    public void counters_trackLookups() {
+        cache.put(TileKey.of(15, 0, 0), 1, 100);
+        cache.get(TileKey.of(15, 0, 0));
+        cache.get(TileKey.of(15, 0, 1));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+        assertEquals(TextureCache.NO_TEXTURE, cache.peek(TileKey.of(15, 0, 1)));
+        assertTrue(cache.touch(TileKey.of(15, 0, 0)));
+        assertFalse(cache.touch(TileKey.of(15, 0, 1)));
+        assertEquals(1, cache.hitCount());
+        assertEquals(1, cache.missCount());
+    }
+
+    @Test
+    public void slotsAreReusedAfterRemoval() {
+        for (int i = 0; i < 1000; i++) {
+            cache.put(TileKey.of(15, i, 0), i, 100);
+            if (i % 2 == 0) cache.remove(TileKey.of(15, i, 0));
+        }
+        assertEquals(3, cache.size());
+        assertEquals(999, cache.peek(TileKey.of(15, 999, 0)));
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.maprenderer;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TileBatchTest {
+    private static final int PAGE = 2048;
+    private static final int TILE = 256;
+    private static final int SLOTS_PER_PAGE = 64;
+    private static final float INSET = 0.5f / PAGE;
+    private static final float SPAN = 1 / 8f - 2 * INSET;
+
+    private final TileBatch batch = new TileBatch(PAGE, TILE);
+
+    @Test
+    public void quad_hasPositionsAndSlotUvs() {
+        batch.reset();
+        batch.add(9, 256, -512, TILE, 0.5f, 1, 0, 0);
+        batch.finish();
+
+        assertEquals(1, batch.quadCount());
+        float u0 = 1 / 8f + INSET;
+        float v0 = 1 / 8f + INSET;
+        float[] expected = {
+                128, -384, 0.5f, u0, v0,
+                128, -640, 0.5f, u0, v0 + SPAN,
+                384, -640, 0.5f, u0 + SPAN, v0 + SPAN,
+                384, -384, 0.5f, u0 + SPAN, v0,
+        };
+        float[] actual = new float[expected.length];
+        System.arraycopy(batch.vertices(), 0, actual, 0, expected.length);
+        assertArrayEquals(expected, actual, 1e-6f);
+    }
+
+    @Test
+    public void ancestorRegion_mapsToSubRectangleOfSlot() {
+        batch.reset();
+        batch.add(0, 0, 0, TILE, 0.2f, 0.25f, 0.75f, 0.5f);
+        batch.finish();
+
+        float[] v = batch.vertices();
+        assertEquals(INSET + 0.75f * SPAN, v[3], 1e-6f);
+        assertEquals(INSET + 0.5f * SPAN, v[4], 1e-6f);
+        assertEquals(INSET + SPAN, v[13], 1e-6f);
+        assertEquals(INSET + 0.75f * SPAN, v[14], 1e-6f);
+    }
+
+    @Test
+    public void quads_areGroupedByPage() {
+        batch.reset();
+        batch.add(SLOTS_PER_PAGE + 1, 0, 0, TILE, 0.5f, 1, 0, 0);
+        batch.add(3, 256, 0, TILE, 0.5f, 1, 0, 0);
+        batch.add(2 * SLOTS_PER_PAGE, 512, 0, TILE, 0.5f, 1, 0, 0);
+        batch.add(4, 768, 0, TILE, 0.5f, 1, 0, 0);
+        batch.finish();
+
+        assertEquals(3, batch.rangeCount());
+        assertEquals(0, batch.rangePage(0));
+        assertEquals(2, batch.rangeQuadCount(0));
+        assertEquals(1, batch.rangePage(1));
+        assertEquals(2, batch.rangeFirstQuad(1));
+        assertEquals(2, batch.rangePage(2));
+        assertEquals(128, batch.vertices()[0], 0);
+        assertEquals(640, batch.vertices()[TileBatch.FLOATS_PER_QUAD], 0);
+    }
+
+    @Test
+    public void indices_describeTwoTrianglesPerQuad() {
+        assertArrayEquals(new short[]{0, 1, 2, 0, 2, 3, 4, 5, 6, 4, 6, 7}, TileBatch.buildIndices(2));
+    }
+}
@@ -0,0 +1,160 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.TileBuffer;
+import com.example.maprenderer.util.TileKey;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.Assert.*;
+
+public class TileHttpClientTest {
+    private StubTileServer server;
+    private final ExecutorService workers = Executors.newFixedThreadPool(8);
+
+    @After
+    public void tearDown() throws IOException {
+        workers.shutdownNow();
+        if (server != null) server.close();
+    }
+
+    private static byte[] fetch(TileHttpClient client, long key, String url) throws IOException {
+        TileBuffer buffer = new TileBuffer(16);
+        client.fetch(key, url, buffer);
+        return Arrays.copyOf(buffer.array(), buffer.length());
+    }
+
+    @Test
+    public void sequentialFetches_reuseOneConnection() throws IOException {
+        server = new StubTileServer((path, headers) -> new StubTileServer.Response(200, StubTileServer.body(path)));
+        TileHttpClient client = new TileHttpClient();
+        for (int x = 0; x < 20; x++) {
+            String path = "/15/" + x + "/7.png";
+            assertArrayEquals(StubTileServer.body(path), fetch(client, TileKey.of(15, x, 7), server.url(path)));
+        }
+        assertEquals(20, server.requestCount());
+        assertEquals(1, server.connectionCount());
+    }
+
+    @Test
+    public void concurrentFetchesOfSameTile_areCoalesced() throws Exception {
+        server = new StubTileServer((path, headers) ->
+                new StubTileServer.Response(200, StubTileServer.body(path)).delay(300));
+        TileHttpClient client = new TileHttpClient();
+        String path = "/12/5/5.png";
+        List<Future<byte[]>> results = new ArrayList<>();
+        for (int i = 0; i < 6; i++) {
+            results.add(workers.submit(() -> fetch(client, TileKey.of(12, 5, 5), server.url(path))));
+        }
+        for (Future<byte[]> result : results) assertArrayEquals(StubTileServer.body(path), result.get());
+        assertEquals(1, server.requestCount(path));
+        assertEquals(5, client.coalescedCount());
+    }
+
+    @Test
+    public void requestsPerHost_areBounded() throws Exception {
+        AtomicInteger active = new AtomicInteger();
+        AtomicInteger maxActive = new AtomicInteger();
+        server = new StubTileServer((path, headers) -> {
+            maxActive.accumulateAndGet(active.incrementAndGet(), Math::max);
+            try {
+                Thread.sleep(40);
+            } catch (InterruptedException ignored) {
+            }
+            active.decrementAndGet();
+            return new StubTileServer.Response(200, StubTileServer.body(path));
+        });
+        TileHttpClient client = new TileHttpClient(2, 1000, 1000);
+        List<Future<byte[]>> results = new ArrayList<>();
+        for (int x = 0; x < 12; x++) {
+            final int tileX = x;
+            Callable<byte[]> task = () -> fetch(client, TileKey.of(14, tileX, 0), server.url("/14/" + tileX + "/0.png"));
+            results.add(workers.submit(task));
+        }
+        for (Future<byte[]> result : results) result.get();
+        assertEquals(12, server.requestCount());
+        assertTrue(maxActive.get() <= 2);
+        assertTrue(server.connectionCount() <= 2);
+    }
+
+    @Test
+    public void requestLatency_leavesOutPermitWait() throws Exception {
+        server = new StubTileServer((path, headers) -> path.startsWith("/broken")
+                ? new StubTileServer.Response(503, new byte[0])
+                : path.startsWith("/missing")
+                ? new StubTileServer.Response(404, new byte[0])
+                : new StubTileServer.Response(200, StubTileServer.body(path)).delay(150));
+        TileHttpClient client = new TileHttpClient(1, 1000, 1000);
+        List<Long> latencies = Collections.synchronizedList(new ArrayList<>());
+        AtomicInteger failures = new AtomicInteger();
+        client.setRequestListener(new TileHttpClient.RequestListener() {
+            @Override
+            public void onSuccess(long latencyNanos, int bytes, long nowNanos) {
+                latencies.add(latencyNanos);
+            }
+            @Override
+            public void onFailure(long nowNanos) {
+                failures.incrementAndGet();
+            }
+        });
+        long start = System.nanoTime();
+        List<Future<byte[]>> results = new ArrayList<>();
+        for (int x = 0; x < 3; x++) {
+            final int tileX = x;
+            results.add(workers.submit(() -> fetch(client, TileKey.of(14, tileX, 0), server.url("/14/" + tileX + "/0.png"))));
+        }
+        for (Future<byte[]> result : results) result.get();
+        // The requests ran one after another, but each is timed from when it got the connection.
+        assertTrue(System.nanoTime() - start >= 3 * 150_000_000L);
+        assertEquals(3, latencies.size());
+        for (long latency : latencies) assertTrue("latency " + latency, latency < 2 * 150_000_000L);
+        try {
+            fetch(client, TileKey.of(3, 1, 1), server.url("/broken/3/1/1.png"));
+            fail("expected IOException");
+        } catch (IOException expected) {
+        }
+        assertEquals(1, failures.get());
+        // A tile the server does not have is an answer, not a failure.
+        try {
+            fetch(client, TileKey.of(3, 1, 2), server.url("/missing/3/1/2.png"));
+            fail("expected NoTileException");
+        } catch (TileHttpClient.NoTileException expected) {
+        }
+        assertEquals(1, failures.get());
+        assertEquals(4, latencies.size());
+    }
+
+    @Test
+    public void errorStatus_failsWithoutDroppingConnection() throws IOException {
+        server = new StubTileServer((path, headers) -> path.startsWith("/missing")
+                ? new StubTileServer.Response(404, new byte[]{'n', 'o'})
+                : new StubTileServer.Response(200, StubTileServer.body(path)));
+        TileHttpClient client = new TileHttpClient();
+        try {
+            fetch(client, TileKey.of(3, 1, 1), server.url("/missing/3/1/1.png"));
+            fail("expected IOException");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("404"));
+        }
+        assertArrayEquals(StubTileServer.body("/3/1/1.png"), fetch(client, TileKey.of(3, 1, 1), server.url("/3/1/1.png")));
+        assertEquals(1, server.connectionCount());
+    }
+
+    @Test(expected = IOException.class)
+    public void slowServer_hitsReadTimeout() throws IOException {
+        server = new StubTileServer((path, headers) ->
+                new StubTileServer.Response(200, StubTileServer.body(path)).delay(1000));
+        fetch(new TileHttpClient(4, 1000, 100), TileKey.of(5, 1, 1), server.url("/5/1/1.png"));
+    }
+}
@@ -0,0 +1,64 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.TileKey;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TilePrefetcherTest {
+    private static final long MS = 1_000_000L;
+    private final TileScheduler scheduler = new TileScheduler(6, 10);
+    private final List<Long> dispatched = new ArrayList<>();
+
+    @Test
+    public void panVelocity_prefetchesLeadingEdge() {
+        TilePrefetcher prefetcher = new TilePrefetcher(1.0f, 4, 1024 * 1024);
+        scheduler.setZoomRange(1, 1);
+        scheduler.setViewport(15, 100, 100);
+        prefetcher.prefetch(15, 100, 100, 4, 4, 1000 * MS, scheduler, key -> false);
+        for (int i = 1; i <= 5; i++) prefetcher.onPan(0.1f, 0, (2000 + i * 16) * MS);
+
+        int issued = prefetcher.prefetch(15, 100, 100, 4, 4, 2100 * MS, scheduler, key -> false);
+        assertTrue(issued > 0);
+        scheduler.dispatch(dispatched::add);
+        for (long key : dispatched) assertTrue(TileKey.x(key) >= 104);
+    }
+
+    @Test
+    public void bandwidthBudget_limitsRequests() {
+        TilePrefetcher prefetcher = new TilePrefetcher(1.0f, 4, 24 * 1024);
+        scheduler.setZoomRange(1, 1);
+        scheduler.setViewport(15, 100, 100);
+        prefetcher.prefetch(15, 100, 100, 4, 4, 1000 * MS, scheduler, key -> false);
+        prefetcher.onZoom(1, 1500 * MS);
+        assertEquals(1, prefetcher.prefetch(15, 100, 100, 4, 4, 2000 * MS, scheduler, key -> false));
+        assertEquals(0, prefetcher.prefetch(15, 100, 100, 4, 4, 2010 * MS, scheduler, key -> false));
+    }
+
+    @Test
+    public void idleViewport_prefetchesNothing() {
+        TilePrefetcher prefetcher = new TilePrefetcher(1.0f, 4, 1024 * 1024);
+        scheduler.setViewport(15, 100, 100);
+        prefetcher.onPan(0.1f, 0, 1000 * MS);
+        assertEquals(0, prefetcher.prefetch(15, 100, 100, 4, 4, 5000 * MS, scheduler, key -> false));
+    }
+
+    @Test
+    public void zoomTrend_staysWithinZoomRange() {
+        TilePrefetcher prefetcher = new TilePrefetcher(1.0f, 4, 1024 * 1024);
+        prefetcher.setZoomRange(4, 14);
+        scheduler.setZoomRange(1, 1);
+        scheduler.setViewport(14, 100, 100);
+        prefetcher.prefetch(14, 100, 100, 4, 4, 1000 * MS, scheduler, key -> false);
+        prefetcher.onZoom(1, 1500 * MS);
+        assertEquals(0, prefetcher.prefetch(14, 100, 100, 4, 4, 2000 * MS, scheduler, key -> false));
+        prefetcher.onZoom(-1, 2500 * MS);
+        assertTrue(prefetcher.prefetch(14, 100, 100, 4, 4, 3000 * MS, scheduler, key -> false) > 0);
+        scheduler.dispatch(dispatched::add);
+        for (long key : dispatched) assertEquals(13, TileKey.zoom(key));
+    }
+}
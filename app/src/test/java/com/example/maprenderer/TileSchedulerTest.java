@@ -0,0 +1,115 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.TileKey;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class TileSchedulerTest {
+    private final List<Long> dispatched = new ArrayList<>();
+    private final TileScheduler scheduler = new TileScheduler(3, 4);
+
+    @Test
+    public void dispatch_startsFromViewportCenter() {
+        scheduler.setViewport(15, 100, 100);
+        for (int y = 96; y < 104; y++) {
+            for (int x = 96; x < 104; x++) scheduler.request(TileKey.of(15, x, y), TileScheduler.PRIORITY_VISIBLE);
+        }
+        assertEquals(3, scheduler.dispatch(dispatched::add));
+        assertEquals(TileKey.of(15, 100, 100), (long) dispatched.get(0));
+        for (long key : dispatched) {
+            assertTrue(Math.abs(TileKey.x(key) - 100) <= 1 && Math.abs(TileKey.y(key) - 100) <= 1);
+        }
+        assertEquals(0, scheduler.dispatch(dispatched::add));
+        scheduler.complete(dispatched.get(0));
+        assertEquals(1, scheduler.dispatch(dispatched::add));
+    }
+
+    @Test
+    public void duplicateRequests_areIgnored() {
+        scheduler.setViewport(15, 100, 100);
+        long key = TileKey.of(15, 101, 100);
+        assertTrue(scheduler.request(key, TileScheduler.PRIORITY_VISIBLE));
+        assertFalse(scheduler.request(key, TileScheduler.PRIORITY_VISIBLE));
+        scheduler.dispatch(dispatched::add);
+        assertFalse(scheduler.request(key, TileScheduler.PRIORITY_VISIBLE));
+        assertTrue(scheduler.isQueued(key));
+        assertEquals(1, dispatched.size());
+    }
+
+    @Test
+    public void viewportChange_dropsStaleRequests() {
+        scheduler.setViewport(15, 100, 100);
+        scheduler.request(TileKey.of(15, 97, 100), TileScheduler.PRIORITY_VISIBLE);
+        scheduler.request(TileKey.of(15, 103, 100), TileScheduler.PRIORITY_VISIBLE);
+        scheduler.setViewport(15, 106, 100);
+        assertEquals(1, scheduler.pendingCount());
+        scheduler.setViewport(16, 212, 200);
+        assertEquals(0, scheduler.pendingCount());
+        assertEquals(2, scheduler.droppedCount());
+    }
+
+    @Test
+    public void prefetch_yieldsToVisibleTiles() {
+        scheduler.setViewport(15, 100, 100);
+        scheduler.request(TileKey.of(15, 100, 100), TileScheduler.PRIORITY_PREFETCH);
+        scheduler.request(TileKey.of(15, 103, 103), TileScheduler.PRIORITY_VISIBLE);
+        scheduler.setMaxInFlight(1);
+        scheduler.dispatch(dispatched::add);
+        assertEquals(TileKey.of(15, 103, 103), (long) dispatched.get(0));
+    }
+
+    @Test
+    public void failedTile_isRetriedAfterBackoff() {
+        long second = 1_000_000_000L;
+        long key = TileKey.of(15, 100, 100);
+        scheduler.setViewport(15, 100, 100);
+        scheduler.request(key, TileScheduler.PRIORITY_VISIBLE);
+        scheduler.dispatch(dispatched::add);
+        scheduler.fail(key, 0);
+        assertFalse(scheduler.isQueued(key));
+        assertFalse(scheduler.request(key, TileScheduler.PRIORITY_VISIBLE));
+        assertEquals(second, scheduler.nextRetryNanos());
+
+        scheduler.setTime(second);
+        assertTrue(scheduler.request(key, TileScheduler.PRIORITY_VISIBLE));
+        scheduler.dispatch(dispatched::add);
+        scheduler.fail(key, second);
+        scheduler.setTime(2 * second);
+        assertFalse(scheduler.request(key, TileScheduler.PRIORITY_VISIBLE));
+        assertEquals(3 * second, scheduler.nextRetryNanos());
+
+        scheduler.setTime(3 * second);
+        assertTrue(scheduler.request(key, TileScheduler.PRIORITY_VISIBLE));
+        scheduler.dispatch(dispatched::add);
+        scheduler.complete(key);
+        assertEquals(Long.MAX_VALUE, scheduler.nextRetryNanos());
+    }
+
+    @Test
+    public void manyFailedTiles_keepTheirOwnBackoff() {
+        long second = 1_000_000_000L;
+        scheduler.setViewport(15, 100, 100);
+        List<Long> keys = new ArrayList<>();
+        for (int y = 96; y < 104; y++) {
+            for (int x = 96; x < 104; x++) keys.add(TileKey.of(15, x, y));
+        }
+        for (int i = 0; i < keys.size(); i++) scheduler.fail(keys.get(i), i);
+        // Completing tiles moves other rows around; each key keeps its own retry time.
+        for (int i = 0; i < keys.size(); i += 2) scheduler.complete(keys.get(i));
+        assertEquals(second + 1, scheduler.nextRetryNanos());
+        scheduler.setTime(second + 2);
+        for (int i = 0; i < keys.size(); i++) {
+            boolean retried = scheduler.request(keys.get(i), TileScheduler.PRIORITY_VISIBLE);
+            assertTrue("key " + i, retried == (i % 2 == 0 || i <= 2));
+        }
+        assertEquals(second + 3, scheduler.nextRetryNanos());
+
+        scheduler.setViewport(15, 1000, 1000);
+        assertEquals(Long.MAX_VALUE, scheduler.nextRetryNanos());
+    }
+}
@@ -0,0 +1,141 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.TileBuffer;
+import com.example.maprenderer.util.TileKey;
+
+import org.junit.After;
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import static org.junit.Assert.*;
+
+public class TileSourceTest {
+    private final ExecutorService executor = Executors.newCachedThreadPool();
+    private StubTileServer primary;
+    private StubTileServer mirror;
+
+    @After
+    public void tearDown() throws IOException {
+        executor.shutdownNow();
+        if (primary != null) primary.close();
+        if (mirror != null) mirror.close();
+    }
+
+    private static String path(long key) {
+        return "/" + TileKey.zoom(key) + "/" + TileKey.x(key) + "/" + TileKey.y(key) + ".png";
+    }
+    private TileSource source(TileSource.Mirror... mirrors) {
+        return new TileSource(new TileHttpClient(), executor, mirrors);
+    }
+    private static byte[] fetch(TileSource source, long key) throws IOException {
+        TileBuffer buffer = new TileBuffer(16);
+        source.fetch(key, buffer);
+        return Arrays.copyOf(buffer.array(), buffer.length());
+    }
+
+    @Test
+    public void subdomains_shardNeighbouringTiles() {
+        TileSource.Mirror sharded = new TileSource.Mirror("https://{s}.tiles.test/%d/%d/%d.png", "a", "b", "c");
+        assertEquals("https://c.tiles.test/3/1/1.png", sharded.url(TileKey.of(3, 1, 1)));
+        assertEquals("https://a.tiles.test/3/2/1.png", sharded.url(TileKey.of(3, 2, 1)));
+        assertEquals("https://b.tiles.test/3/2/2.png", sharded.url(TileKey.of(3, 2, 2)));
+    }
+
+    @Test
+    public void failingMirror_failsOverAndBacksOff() throws IOException {
+        primary = new StubTileServer((path, headers) -> new StubTileServer.Response(503, new byte[0]));
+        mirror = new StubTileServer((path, headers) -> new StubTileServer.Response(200, StubTileServer.body(path)));
+        TileSource source = source(new TileSource.Mirror(primary.url("/%d/%d/%d.png")),
+                new TileSource.Mirror(mirror.url("/%d/%d/%d.png")));
+        for (int x = 0; x < 5; x++) {
+            long key = TileKey.of(12, x, 7);
+            assertArrayEquals(StubTileServer.body(path(key)), fetch(source, key));
+        }
+        assertEquals(1, primary.requestCount());
+        assertEquals(5, mirror.requestCount());
+        assertEquals(1, source.failoverCount());
+        assertFalse(source.mirror(0).isAvailable(System.nanoTime()));
+    }
+
+    @Test
+    public void allMirrorsFailing_reportsError() throws IOException {
+        primary = new StubTileServer((path, headers) -> new StubTileServer.Response(500, new byte[0]));
+        mirror = new StubTileServer((path, headers) -> new StubTileServer.Response(503, new byte[0]));
+        TileSource source = source(new TileSource.Mirror(primary.url("/%d/%d/%d.png")),
+                new TileSource.Mirror(mirror.url("/%d/%d/%d.png")));
+        try {
+            fetch(source, TileKey.of(5, 1, 1));
+            fail("expected IOException");
+        } catch (IOException expected) {
+            assertTrue(expected.getMessage().contains("503"));
+        }
+        assertEquals(1, primary.requestCount());
+        assertEquals(1, mirror.requestCount());
+    }
+
+    @Test
+    public void missingTile_isAnAnswerNotAFailure() throws IOException {
+        primary = new StubTileServer((path, headers) -> new StubTileServer.Response(404, new byte[0]));
+        mirror = new StubTileServer((path, headers) -> new StubTileServer.Response(200, StubTileServer.body(path)));
+        TileHttpClient client = new TileHttpClient();
+        int[] outcomes = new int[2];
+        client.setRequestListener(new TileHttpClient.RequestListener() {
+            @Override
+            public void onSuccess(long latencyNanos, int bytes, long nowNanos) {
+                outcomes[0]++;
+            }
+            @Override
+            public void onFailure(long nowNanos) {
+                outcomes[1]++;
+            }
+        });
+        TileSource source = new TileSource(client, executor, new TileSource.Mirror(primary.url("/%d/%d/%d.png")),
+                new TileSource.Mirror(mirror.url("/%d/%d/%d.png")));
+        try {
+            fetch(source, TileKey.of(18, 1, 1));
+            fail("expected NoTileException");
+        } catch (TileHttpClient.NoTileException expected) {
+        }
+        assertEquals(0, mirror.requestCount());
+        assertEquals(0, source.failoverCount());
+        assertEquals(0, source.mirror(0).failureCount());
+        assertTrue(source.mirror(0).isAvailable(System.nanoTime()));
+        assertEquals(1, outcomes[0]);
+        assertEquals(0, outcomes[1]);
+    }
+
+    @Test
+    public void slowPrimary_isHedgedToMirror() throws IOException {
+        long slow = TileKey.of(14, 3, 3);
+        primary = new StubTileServer((path, headers) -> new StubTileServer.Response(200, StubTileServer.body(path))
+                .delay(path.equals(path(slow)) ? 1500 : 0));
+        mirror = new StubTileServer((path, headers) -> new StubTileServer.Response(200, StubTileServer.body(path)));
+        TileSource.Mirror first = new TileSource.Mirror(primary.url("/%d/%d/%d.png"));
+        first.setDefaultHedgeDelay(100_000_000L);
+        TileSource source = source(first, new TileSource.Mirror(mirror.url("/%d/%d/%d.png")));
+
+        long start = System.nanoTime();
+        assertArrayEquals(StubTileServer.body(path(slow)), fetch(source, slow));
+        long elapsedMillis = (System.nanoTime() - start) / 1_000_000L;
+        assertTrue("took " + elapsedMillis + " ms", elapsedMillis < 1000);
+        assertEquals(1, source.hedgedCount());
+        assertEquals(1, source.hedgeWinCount());
+        assertEquals(1, mirror.requestCount(path(slow)));
+    }
+
+    @Test
+    public void fastPrimary_isNotHedged() throws IOException {
+        primary = new StubTileServer((path, headers) -> new StubTileServer.Response(200, StubTileServer.body(path)));
+        mirror = new StubTileServer((path, headers) -> new StubTileServer.Response(200, StubTileServer.body(path)));
+        TileSource source = source(new TileSource.Mirror(primary.url("/%d/%d/%d.png")),
+                new TileSource.Mirror(mirror.url("/%d/%d/%d.png")));
+        for (int x = 0; x < 30; x++) fetch(source, TileKey.of(10, x, 0));
+        assertEquals(0, source.hedgedCount());
+        assertEquals(30, primary.requestCount() + mirror.requestCount());
+        assertTrue(source.mirror(0).hedgeDelayNanos() >= TileSource.MIN_HEDGE_DELAY_NANOS);
+    }
+}
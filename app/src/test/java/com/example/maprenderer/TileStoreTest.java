@@ -0,0 +1,195 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.TileBuffer;
+import com.example.maprenderer.util.TileKey;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Set;
+
+import static org.junit.Assert.*;
+
+public class TileStoreTest {
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private static byte[] tile(int seed, int length) {
+        byte[] data = new byte[length];
+        for (int i = 0; i < length; i++) data[i] = (byte) (seed * 31 + i);
+        return data;
+    }
+
+    private static long packBytes(File dir) {
+        long bytes = 0;
+        for (File file : dir.listFiles()) {
+            if (file.getName().endsWith(".pack")) bytes += file.length();
+        }
+        return bytes;
+    }
+
+    private static int packFiles(File dir) {
+        int count = 0;
+        for (File file : dir.listFiles()) {
+            if (file.getName().endsWith(".pack")) count++;
+        }
+        return count;
+    }
+
+    @Test
+    public void storedTile_isReadBack() throws IOException {
+        TileStore store = new TileStore(folder.newFolder(), 1024 * 1024);
+        long key = TileKey.of(15, 17600, 11000);
+        store.put(key, tile(1, 5000));
+        assertArrayEquals(tile(1, 5000), store.get(key));
+        assertNull(store.get(TileKey.of(15, 17600, 11001)));
+        store.close();
+    }
+
+    @Test
+    public void index_survivesReopen() throws IOException {
+        File dir = folder.newFolder();
+        TileStore store = new TileStore(dir, 1024 * 1024);
+        for (int i = 0; i < 20; i++) store.put(TileKey.of(12, i, i), tile(i, 1000 + i));
+        store.remove(TileKey.of(12, 3, 3));
+        store.close();
+
+        TileStore reopened = new TileStore(dir, 1024 * 1024);
+        assertEquals(19, reopened.size());
+        assertNull(reopened.get(TileKey.of(12, 3, 3)));
+        assertArrayEquals(tile(7, 1007), reopened.get(TileKey.of(12, 7, 7)));
+        reopened.close();
+    }
+
+    @Test
+    public void overflow_evictsLeastRecentlyUsed() throws IOException {
+        TileStore store = new TileStore(folder.newFolder(), 3000);
+        store.put(TileKey.of(10, 0, 0), tile(0, 1000));
+        store.put(TileKey.of(10, 1, 0), tile(1, 1000));
+        store.put(TileKey.of(10, 2, 0), tile(2, 1000));
+        store.get(TileKey.of(10, 0, 0));
+        store.put(TileKey.of(10, 3, 0), tile(3, 1000));
+        assertTrue(store.contains(TileKey.of(10, 0, 0)));
+        assertFalse(store.contains(TileKey.of(10, 1, 0)));
+        assertTrue(store.sizeBytes() <= 3000);
+        store.close();
+    }
+
+    @Test
+    public void nonEvictingStore_refusesOverflow() throws IOException {
+        TileStore store = new TileStore(folder.newFolder(), 10_000, false);
+        store.put(TileKey.of(12, 1, 1), tile(1, 4000));
+        store.put(TileKey.of(12, 2, 2), tile(2, 4000));
+        try {
+            store.put(TileKey.of(12, 3, 3), tile(3, 4000));
+            fail("store is full");
+        } catch (TileStore.FullException expected) {
+        }
+        // Replacing a tile only needs room for the difference.
+        store.put(TileKey.of(12, 2, 2), tile(4, 6000));
+        assertEquals(2, store.size());
+        assertArrayEquals(tile(1, 4000), store.get(TileKey.of(12, 1, 1)));
+        assertArrayEquals(tile(4, 6000), store.get(TileKey.of(12, 2, 2)));
+        store.close();
+    }
+
+    @Test
+    public void compaction_keepsLiveTiles() throws IOException {
+        File dir = folder.newFolder();
+        TileStore store = new TileStore(dir, 512 * 1024);
+        for (int i = 0; i < 200; i++) store.put(TileKey.of(14, i, 0), tile(i, 40 * 1024));
+        for (int i = 188; i < 200; i++) assertArrayEquals(tile(i, 40 * 1024), store.get(TileKey.of(14, i, 0)));
+        assertTrue(packBytes(dir) < 200L * 40 * 1024);
+        store.close();
+
+        TileStore reopened = new TileStore(dir, 512 * 1024);
+        assertArrayEquals(tile(199, 40 * 1024), reopened.get(TileKey.of(14, 199, 0)));
+        reopened.close();
+    }
+
+    @Test
+    public void tileWhoseBytesDidNotReachThePack_isDropped() throws IOException {
+        File dir = folder.newFolder();
+        TileStore store = new TileStore(dir, 1024 * 1024);
+        store.put(TileKey.of(13, 1, 1), tile(1, 3000));
+        store.put(TileKey.of(13, 2, 2), tile(2, 3000));
+        store.close();
+        // As if the index record was written back before the second tile's pack pages.
+        for (File file : dir.listFiles()) {
+            if (!file.getName().endsWith(".pack")) continue;
+            try (RandomAccessFile pack = new RandomAccessFile(file, "rw")) {
+                pack.seek(3000 + 100);
+                pack.write(new byte[500]);
+            }
+        }
+
+        TileStore reopened = new TileStore(dir, 1024 * 1024);
+        assertArrayEquals(tile(1, 3000), reopened.get(TileKey.of(13, 1, 1)));
+        TileBuffer out = new TileBuffer(16);
+        assertFalse(reopened.get(TileKey.of(13, 2, 2), out));
+        assertEquals(0, out.length());
+        assertEquals(1, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void interruptedCompaction_leavesTheCommittedFiles() throws IOException {
+        File dir = folder.newFolder();
+        TileStore store = new TileStore(dir, 1024 * 1024);
+        for (int i = 0; i < 5; i++) store.put(TileKey.of(12, i, i), tile(i, 2000));
+        store.close();
+        Set<String> committed = new HashSet<>(Arrays.asList(dir.list()));
+        // A next generation written but not committed: its index points into the new pack.
+        for (String name : committed) {
+            if (name.endsWith(".pack")) {
+                Files.write(new File(dir, name.replace("0.pack", "1.pack")).toPath(), tile(9, 4000));
+            } else if (name.endsWith(".idx")) {
+                Files.copy(new File(dir, name).toPath(), new File(dir, name.replace("0.idx", "1.idx")).toPath());
+            }
+        }
+
+        TileStore reopened = new TileStore(dir, 1024 * 1024);
+        for (int i = 0; i < 5; i++) assertArrayEquals(tile(i, 2000), reopened.get(TileKey.of(12, i, i)));
+        assertEquals(committed, new HashSet<>(Arrays.asList(dir.list())));
+        reopened.close();
+    }
+
+    @Test
+    public void compaction_spreadsOverWritesAndKeepsServingReads() throws IOException {
+        File dir = folder.newFolder();
+        TileStore store = new TileStore(dir, 3 * 1024 * 1024);
+        int next = 0;
+        while (packFiles(dir) < 2) {
+            store.put(TileKey.of(14, next, 0), tile(next, 64 * 1024));
+            next++;
+            assertTrue("compaction started", next < 200);
+        }
+        // Mid compaction: reads still come from the old pack, writes and removals still land.
+        int first = next - 3 * 1024 / 64;
+        for (int i = first; i < next; i++) assertArrayEquals(tile(i, 64 * 1024), store.get(TileKey.of(14, i, 0)));
+        store.remove(TileKey.of(14, first, 0));
+        store.put(TileKey.of(14, first + 1, 0), tile(1000, 32 * 1024));
+        while (packFiles(dir) > 1) {
+            store.put(TileKey.of(14, next, 0), tile(next, 64 * 1024));
+            next++;
+            assertTrue("compaction finished", next < 200);
+        }
+        assertNull(store.get(TileKey.of(14, first, 0)));
+        assertArrayEquals(tile(1000, 32 * 1024), store.get(TileKey.of(14, first + 1, 0)));
+        assertArrayEquals(tile(next - 1, 64 * 1024), store.get(TileKey.of(14, next - 1, 0)));
+        store.close();
+
+        TileStore reopened = new TileStore(dir, 3 * 1024 * 1024);
+        assertNull(reopened.get(TileKey.of(14, first, 0)));
+        assertArrayEquals(tile(1000, 32 * 1024), reopened.get(TileKey.of(14, first + 1, 0)));
+        for (int i = next - 10; i < next; i++) assertArrayEquals(tile(i, 64 * 1024), reopened.get(TileKey.of(14, i, 0)));
+        reopened.close();
+    }
+}
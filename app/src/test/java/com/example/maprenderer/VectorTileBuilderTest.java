@@ -0,0 +1,83 @@
+package com.example.maprenderer;
+
+import com.example.maprenderer.util.MvtDecoder;
+import com.example.maprenderer.util.MvtWriter;
+import com.example.maprenderer.util.VectorMesh;
+
+import org.junit.Test;
+
+import java.io.IOException;
+
+import static org.junit.Assert.*;
+
+public class VectorTileBuilderTest {
+    private static VectorMesh build(byte[] tile) throws IOException {
+        return new VectorTileBuilder(MapController.TILE_SIZE).build(tile, 0, tile.length);
+    }
+
+    @Test
+    public void features_areStyledAndPlacedInTileUnits() throws IOException {
+        byte[] tile = new MvtWriter()
+                .layer("water", 4096)
+                .feature(MvtDecoder.POLYGON, new int[][] { { 0, 0, 2048, 0, 2048, 2048, 0, 2048 } })
+                .layer("streets", 4096)
+                .feature(MvtDecoder.LINESTRING, new int[][] { { 0, 3000, 4096, 3000 } }, "kind", "primary")
+                .feature(MvtDecoder.LINESTRING, new int[][] { { 0, 3500, 4096, 3500 } }, "kind", "footway")
+                .layer("pois", 4096)
+                .feature(MvtDecoder.POINT, new int[][] { { 100, 100 } })
+                .toByteArray();
+        VectorMesh mesh = build(tile);
+        assertEquals(6, mesh.indexCount(VectorStyle.BACKGROUND));
+        assertEquals(6, mesh.indexCount(VectorStyle.WATER));
+        assertEquals(6, mesh.indexCount(VectorStyle.MAJOR_ROAD));
+        assertEquals(6, mesh.indexCount(VectorStyle.MINOR_ROAD));
+        assertEquals(6 * 4, mesh.indexCount());
+        assertEquals(0, mesh.droppedFeatures());
+
+        // The top left quarter of the extent, y up around the tile centre.
+        float[] v = mesh.vertices();
+        short[] water = mesh.indices(VectorStyle.WATER);
+        for (int i = 0; i < 6; i++) {
+            int offset = water[i] * VectorMesh.FLOATS_PER_VERTEX;
+            assertTrue(v[offset] >= -128 && v[offset] <= 0);
+            assertTrue(v[offset + 1] >= 0 && v[offset + 1] <= 128);
+            assertEquals(VectorStyle.WATER, v[offset + 4], 0);
+        }
+        // Lines carry their width in the extrusion, not in the position.
+        short[] road = mesh.indices(VectorStyle.MAJOR_ROAD);
+        int offset = road[0] * VectorMesh.FLOATS_PER_VERTEX;
+        assertEquals(128 - 3000 / 16f, v[offset + 1], 1e-4);
+        assertEquals(VectorStyle.halfWidth(VectorStyle.MAJOR_ROAD), Math.abs(v[offset + 3]), 1e-5);
+    }
+
+    @Test
+    public void packedIndices_followPaintOrder() throws IOException {
+        byte[] tile = new MvtWriter()
+                .layer("streets", 4096)
+                .feature(MvtDecoder.LINESTRING, new int[][] { { 0, 3000, 4096, 3000 } }, "kind", "motorway")
+                .layer("water", 4096)
+                .feature(MvtDecoder.POLYGON, new int[][] { { 0, 0, 2048, 0, 2048, 2048, 0, 2048 } })
+                .toByteArray();
+        VectorMesh mesh = build(tile);
+        VectorMesh.Packed packed = mesh.pack();
+        assertEquals(18, packed.indexCount());
+        // Background, then water although it came last in the tile, then the road on top.
+        short[] expected = new short[18];
+        System.arraycopy(mesh.indices(VectorStyle.BACKGROUND), 0, expected, 0, 6);
+        System.arraycopy(mesh.indices(VectorStyle.WATER), 0, expected, 6, 6);
+        System.arraycopy(mesh.indices(VectorStyle.MAJOR_ROAD), 0, expected, 12, 6);
+        for (int i = 0; i < 18; i++) assertEquals(expected[i], packed.indices.get(i));
+        assertEquals(mesh.vertexCount() * VectorMesh.FLOATS_PER_VERTEX, packed.vertices.limit());
+    }
+
+    @Test
+    public void gzippedTile_buildsTheSameMesh() throws IOException {
+        byte[] tile = new MvtWriter()
+                .layer("land", 4096)
+                .feature(MvtDecoder.POLYGON, new int[][] { { 0, 0, 4096, 0, 4096, 4096, 0, 4096 } }, "kind", "forest")
+                .toByteArray();
+        int plain = build(tile).indexCount(VectorStyle.GREEN);
+        assertEquals(6, plain);
+        assertEquals(plain, build(MvtWriter.gzip(tile)).indexCount(VectorStyle.GREEN));
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.maprenderer.util;
+
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class Etc1Test {
+    private static double psnr(int[] expected, int[] actual) {
+        double sum = 0;
+        for (int i = 0; i < expected.length; i++) {
+            for (int shift = 0; shift <= 16; shift += 8) {
+                int d = (expected[i] >> shift & 0xff) - (actual[i] >> shift & 0xff);
+                sum += d * d;
+            }
+        }
+        double mse = sum / (3.0 * expected.length);
+        return mse == 0 ? Double.POSITIVE_INFINITY : 10 * Math.log10(255 * 255 / mse);
+    }
+    private static int[] roundTrip(int[] argb, int width, int height) {
+        byte[] packed = Etc1.pack(argb, width, height);
+        int[] decoded = new int[width * height];
+        Etc1.decode(packed, Etc1.HEADER_BYTES, width, height, decoded);
+        return decoded;
+    }
+
+    @Test
+    public void decode_followsBlockLayout() {
+        // Differential mode, flipped: top half base (16,8,4) -> (132,66,33), bottom half delta (+1,-1,0),
+        // tables 2 and 5, every pixel selector 1 (large positive modifier).
+        long bits = 16L << 59 | 1L << 56 | 8L << 51 | 7L << 48 | 4L << 43 | 0L << 40
+                | 2L << 37 | 5L << 34 | 1L << 33 | 1L << 32 | 0xffffL;
+        byte[] block = new byte[8];
+        for (int i = 0; i < 8; i++) block[i] = (byte) (bits >>> (56 - 8 * i));
+        int[] pixels = new int[16];
+        Etc1.decode(block, 0, 4, 4, pixels);
+        assertEquals(0xff000000 | (132 + 29) << 16 | (66 + 29) << 8 | (33 + 29), pixels[0]);
+        assertEquals(0xff000000 | (140 + 80) << 16 | (57 + 80) << 8 | (33 + 80), pixels[15]);
+    }
+
+    @Test
+    public void flatColors_surviveAlmostExactly() {
+        int[] colors = {0xff000000, 0xffffffff, 0xfff2efe9, 0xffaad3df, 0xffc8facc};
+        for (int color : colors) {
+            int[] tile = new int[16 * 16];
+            java.util.Arrays.fill(tile, color);
+            assertTrue(Integer.toHexString(color), psnr(tile, roundTrip(tile, 16, 16)) > 38);
+        }
+    }
+
+    @Test
+    public void mapLikeImage_keepsReasonableQuality() {
+        int size = 256;
+        int[] tile = new int[size * size];
+        Random random = new Random(7);
+        for (int y = 0; y < size; y++) {
+            for (int x = 0; x < size; x++) {
+                int r = 200 + (x * 40) / size;
+                int g = 230 - (y * 30) / size;
+                tile[y * size + x] = 0xff000000 | r << 16 | g << 8 | 180;
+            }
+        }
+        for (int road = 0; road < 20; road++) {
+            int y0 = random.nextInt(size - 3);
+            for (int x = 0; x < size; x++) {
+                for (int w = 0; w < 3; w++) tile[(y0 + w) * size + x] = 0xffffffff;
+            }
+        }
+        assertTrue(psnr(tile, roundTrip(tile, size, size)) > 30);
+    }
+
+    @Test
+    public void pack_writesHeaderAndQuarterSizedPayload() {
+        byte[] packed = Etc1.pack(new int[256 * 256], 256, 256);
+        assertEquals(Etc1.HEADER_BYTES + 256 * 256 / 2, packed.length);
+        assertTrue(Etc1.isPacked(packed, packed.length));
+        assertEquals(256, Etc1.packedWidth(packed));
+        assertEquals(256, Etc1.packedHeight(packed));
+        assertFalse(Etc1.isPacked(packed, packed.length - 1));
+        assertFalse(Etc1.isPacked(new byte[]{(byte) 0x89, 'P', 'N', 'G', 0, 0, 0, 0}, 8));
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.maprenderer.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class HistogramTest {
+    @Test
+    public void percentiles_stayWithinBucketError() {
+        Histogram histogram = new Histogram();
+        for (long i = 1; i <= 10000; i++) histogram.record(i * 1000);
+        assertEquals(10000, histogram.count());
+        assertEquals(10_000_000, histogram.max());
+        assertEquals(5_000_000, histogram.percentile(50), 5_000_000 * 0.125);
+        assertEquals(9_900_000, histogram.percentile(99), 9_900_000 * 0.125);
+        assertEquals(5_000_500, histogram.mean(), 1);
+    }
+
+    @Test
+    public void buckets_coverWholeRange() {
+        for (long value : new long[]{0, 1, 15, 16, 17, 1000, 1L << 40, Long.MAX_VALUE}) {
+            int bucket = Histogram.bucketOf(value);
+            assertTrue(Histogram.upperBound(bucket) >= value);
+            assertTrue(bucket == 0 || Histogram.upperBound(bucket - 1) < value);
+        }
+    }
+}
@@ -0,0 +1,45 @@
+package com.example.maprenderer.util;
+
+import org.junit.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+import static org.junit.Assert.*;
+
+public class LongIntMapTest {
+    @Test
+    public void tileKey_roundTrips() {
+        long key = TileKey.of(20, 1048575, 123456);
+        assertEquals(20, TileKey.zoom(key));
+        assertEquals(1048575, TileKey.x(key));
+        assertEquals(123456, TileKey.y(key));
+    }
+
+    @Test
+    public void randomOperations_matchHashMap() {
+        LongIntMap map = new LongIntMap(8, -1);
+        Map<Long, Integer> reference = new HashMap<>();
+        Random random = new Random(42);
+        for (int i = 0; i < 20000; i++) {
+            long key = TileKey.of(15, random.nextInt(40), random.nextInt(40));
+            if (random.nextInt(3) == 0) {
+                Integer expected = reference.remove(key);
+                assertEquals(expected == null ? -1 : expected, map.remove(key));
+            } else {
+                reference.put(key, i);
+                map.put(key, i);
+            }
+        }
+        assertEquals(reference.size(), map.size());
+        int visited = 0;
+        for (int slot = 0; slot < map.capacity(); slot++) {
+            long key = map.keyAt(slot);
+            if (key == LongIntMap.EMPTY_KEY) continue;
+            assertEquals((int) reference.get(key), map.valueAt(slot));
+            visited++;
+        }
+        assertEquals(reference.size(), visited);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.maprenderer.util;
+
+import org.junit.Test;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.Assert.*;
+
+public class MvtDecoderTest {
+    private static final int[] SQUARE = { 0, 0, 100, 0, 100, 100, 0, 100 };
+    private static final int[] HOLE = { 25, 25, 25, 75, 75, 75, 75, 25 };
+
+    private static byte[] tile() {
+        return new MvtWriter()
+                .layer("water", 4096)
+                .feature(MvtDecoder.POLYGON, new int[][] { SQUARE, HOLE }, "kind", "lake")
+                .layer("streets", 512)
+                .feature(MvtDecoder.LINESTRING, new int[][] { { 10, 10, 20, 10, 20, 30 }, { 5, 5, 6, 6 } }, "kind", "primary", "name", "Hlavní")
+                .feature(MvtDecoder.POINT, new int[][] { { 7, 8 } })
+                .toByteArray();
+    }
+
+    private static final class Recorder implements MvtDecoder.Handler {
+        final MvtDecoder decoder;
+        final String skip;
+        final List<String> events = new ArrayList<>();
+
+        Recorder(MvtDecoder decoder, String skip) {
+            this.decoder = decoder;
+            this.skip = skip;
+        }
+        @Override
+        public boolean onLayer(String name, int extent) {
+            events.add("layer " + name + " " + extent);
+            return !name.equals(skip);
+        }
+        @Override
+        public void onFeature(int type, int[] xy, int pointCount, int[] partEnds, int partCount) {
+            events.add("feature " + type + " " + Arrays.toString(Arrays.copyOf(xy, 2 * pointCount))
+                    + " " + Arrays.toString(Arrays.copyOf(partEnds, partCount)) + " kind=" + decoder.tag("kind"));
+        }
+    }
+
+    @Test
+    public void layersAndFeatures_areDecoded() throws IOException {
+        MvtDecoder decoder = new MvtDecoder();
+        Recorder recorder = new Recorder(decoder, null);
+        byte[] tile = tile();
+        decoder.decode(tile, 0, tile.length, recorder);
+        assertEquals(Arrays.asList(
+                "layer water 4096",
+                "feature 3 [0, 0, 100, 0, 100, 100, 0, 100, 25, 25, 25, 75, 75, 75, 75, 25] [4, 8] kind=lake",
+                "layer streets 512",
+                "feature 2 [10, 10, 20, 10, 20, 30, 5, 5, 6, 6] [3, 5] kind=primary",
+                "feature 1 [7, 8] [1] kind=null"), recorder.events);
+    }
+
+    @Test
+    public void gzippedTile_isInflated() throws IOException {
+        MvtDecoder decoder = new MvtDecoder();
+        byte[] tile = tile();
+        Recorder plain = new Recorder(decoder, null);
+        decoder.decode(tile, 0, tile.length, plain);
+        byte[] gzipped = MvtWriter.gzip(tile);
+        assertTrue(MvtDecoder.isGzip(gzipped, 0, gzipped.length));
+        Recorder inflated = new Recorder(decoder, null);
+        decoder.decode(gzipped, 0, gzipped.length, inflated);
+        assertEquals(plain.events, inflated.events);
+    }
+
+    @Test
+    public void skippedLayer_hasNoFeatures() throws IOException {
+        MvtDecoder decoder = new MvtDecoder();
+        Recorder recorder = new Recorder(decoder, "water");
+        byte[] tile = tile();
+        decoder.decode(tile, 0, tile.length, recorder);
+        assertEquals("layer water 4096", recorder.events.get(0));
+        assertEquals("layer streets 512", recorder.events.get(1));
+        assertEquals(4, recorder.events.size());
+    }
+
+    @Test(expected = IOException.class)
+    public void truncatedTile_fails() throws IOException {
+        byte[] tile = tile();
+        MvtDecoder decoder = new MvtDecoder();
+        decoder.decode(tile, 0, tile.length - 5, new Recorder(decoder, null));
+    }
+
+    @Test
+    public void outOfRangeTagIndices_areIgnored() throws IOException {
+        byte[] tile = new MvtWriter()
+                .layer("streets", 4096)
+                .feature(MvtDecoder.LINESTRING, new int[][] { { 0, 0, 10, 10 } }, "kind", "primary")
+                .featureWithTagIndices(MvtDecoder.LINESTRING, new int[][] { { 0, 0, 10, 10 } }, 0x80000000, 0, 0, 0xffffffff, 7, 7)
+                .toByteArray();
+        MvtDecoder decoder = new MvtDecoder();
+        Recorder recorder = new Recorder(decoder, null);
+        decoder.decode(tile, 0, tile.length, recorder);
+        assertEquals(3, recorder.events.size());
+        assertTrue(recorder.events.get(1).endsWith("kind=primary"));
+        assertTrue(recorder.events.get(2).endsWith("kind=null"));
+    }
+}
@@ -0,0 +1,126 @@
+package com.example.maprenderer.util;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Minimal Mapbox Vector Tile encoder for tests. Parts are given as x,y arrays in extent
+ * coordinates; polygon parts are closed with ClosePath. The extent is written after the features,
+ * which the spec allows and the decoder has to cope with.
+ */
+public final class MvtWriter {
+    private final ByteArrayOutputStream tile = new ByteArrayOutputStream();
+    private ByteArrayOutputStream features;
+    private String name;
+    private int extent;
+    private final List<String> keys = new ArrayList<>();
+    private final List<String> values = new ArrayList<>();
+
+    public MvtWriter layer(String name, int extent) {
+        finishLayer();
+        this.name = name;
+        this.extent = extent;
+        this.features = new ByteArrayOutputStream();
+        keys.clear();
+        values.clear();
+        return this;
+    }
+    // tags: key, value, key, value...
+    public MvtWriter feature(int type, int[][] parts, String... tags) {
+        int[] indices = new int[tags.length & ~1];
+        for (int i = 0; i < indices.length; i += 2) {
+            indices[i] = index(keys, tags[i]);
+            indices[i + 1] = index(values, tags[i + 1]);
+        }
+        return featureWithTagIndices(type, parts, indices);
+    }
+    // Tag indices as written on the wire, unsigned, e.g. to produce out of range ones.
+    public MvtWriter featureWithTagIndices(int type, int[][] parts, int... tagIndices) {
+        ByteArrayOutputStream feature = new ByteArrayOutputStream();
+        ByteArrayOutputStream packedTags = new ByteArrayOutputStream();
+        for (int index : tagIndices) varint(packedTags, index);
+        if (packedTags.size() > 0) bytes(feature, 2, packedTags.toByteArray());
+        varint(feature, 3 << 3);
+        varint(feature, type);
+        ByteArrayOutputStream geometry = new ByteArrayOutputStream();
+        int x = 0;
+        int y = 0;
+        for (int[] part : parts) {
+            int points = part.length / 2;
+            varint(geometry, 1 | 1 << 3);
+            varint(geometry, zigzag(part[0] - x));
+            varint(geometry, zigzag(part[1] - y));
+            x = part[0];
+            y = part[1];
+            if (points > 1) {
+                varint(geometry, 2 | (points - 1) << 3);
+                for (int i = 1; i < points; i++) {
+                    varint(geometry, zigzag(part[2 * i] - x));
+                    varint(geometry, zigzag(part[2 * i + 1] - y));
+                    x = part[2 * i];
+                    y = part[2 * i + 1];
+                }
+            }
+            if (type == MvtDecoder.POLYGON) varint(geometry, 7 | 1 << 3);
+        }
+        bytes(feature, 4, geometry.toByteArray());
+        bytes(features, 2, feature.toByteArray());
+        return this;
+    }
+    public byte[] toByteArray() {
+        finishLayer();
+        return tile.toByteArray();
+    }
+    public static byte[] gzip(byte[] data) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        try (GZIPOutputStream gzip = new GZIPOutputStream(out)) {
+            gzip.write(data);
+        }
+        return out.toByteArray();
+    }
+
+    private void finishLayer() {
+        if (features == null) return;
+        ByteArrayOutputStream layer = new ByteArrayOutputStream();
+        varint(layer, 15 << 3);
+        varint(layer, 2);
+        bytes(layer, 1, name.getBytes(StandardCharsets.UTF_8));
+        byte[] encoded = features.toByteArray();
+        layer.write(encoded, 0, encoded.length);
+        for (String key : keys) bytes(layer, 3, key.getBytes(StandardCharsets.UTF_8));
+        for (String value : values) {
+            ByteArrayOutputStream message = new ByteArrayOutputStream();
+            bytes(message, 1, value.getBytes(StandardCharsets.UTF_8));
+            bytes(layer, 4, message.toByteArray());
+        }
+        varint(layer, 5 << 3);
+        varint(layer, extent);
+        bytes(tile, 3, layer.toByteArray());
+        features = null;
+    }
+    private static int index(List<String> list, String value) {
+        int index = list.indexOf(value);
+        if (index >= 0) return index;
+        list.add(value);
+        return list.size() - 1;
+    }
+    private static void bytes(ByteArrayOutputStream out, int field, byte[] data) {
+        varint(out, field << 3 | 2);
+        varint(out, data.length);
+        out.write(data, 0, data.length);
+    }
+    private static void varint(ByteArrayOutputStream out, int value) {
+        while ((value & ~0x7f) != 0) {
+            out.write((value & 0x7f) | 0x80);
+            value >>>= 7;
+        }
+        out.write(value);
+    }
+    private static int zigzag(int n) {
+        return (n << 1) ^ (n >> 31);
+    }
+}
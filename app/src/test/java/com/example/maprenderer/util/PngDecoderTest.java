@@ -0,0 +1,112 @@
+package com.example.maprenderer.util;
+
+import org.junit.Test;
+
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+import static org.junit.Assert.*;
+
+public class PngDecoderTest {
+    private static final int SIZE = 64;
+
+    private static BufferedImage mapLike(int type) {
+        BufferedImage image = new BufferedImage(SIZE, SIZE, type);
+        Graphics2D g = image.createGraphics();
+        g.setColor(new Color(242, 239, 233));
+        g.fillRect(0, 0, SIZE, SIZE);
+        Random random = new Random(3);
+        for (int i = 0; i < 8; i++) {
+            g.setColor(new Color(random.nextInt(256), random.nextInt(256), random.nextInt(256), 128 + random.nextInt(128)));
+            g.fillOval(random.nextInt(SIZE), random.nextInt(SIZE), 5 + random.nextInt(30), 5 + random.nextInt(30));
+        }
+        g.dispose();
+        return image;
+    }
+    private static byte[] png(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        assertTrue(ImageIO.write(image, "png", out));
+        return out.toByteArray();
+    }
+    private static short rgb565(int argb) {
+        return (short) ((argb >> 8 & 0xf800) | (argb >> 5 & 0x07e0) | (argb >> 3 & 0x001f));
+    }
+    private static void assertDecodesLike(BufferedImage image) throws IOException {
+        byte[] png = png(image);
+        BufferedImage expected = ImageIO.read(new java.io.ByteArrayInputStream(png));
+        PngDecoder decoder = new PngDecoder();
+        ByteBuffer rgb = ByteBuffer.allocateDirect(SIZE * SIZE * 2).order(ByteOrder.nativeOrder());
+        ByteBuffer rgba = ByteBuffer.allocateDirect(SIZE * SIZE * 4);
+        assertTrue(decoder.decode(png, 0, png.length, rgb, PngDecoder.RGB565));
+        assertTrue(decoder.decode(png, 0, png.length, rgba, PngDecoder.RGBA8888));
+        assertEquals(SIZE, decoder.width());
+        rgb.flip();
+        rgba.flip();
+        for (int y = 0; y < SIZE; y++) {
+            for (int x = 0; x < SIZE; x++) {
+                // getRGB() would run gray through a color space conversion; PNG gray is stored as is.
+                int gray = expected.getRaster().getSample(x, y, 0);
+                int argb = expected.getType() == BufferedImage.TYPE_BYTE_GRAY
+                        ? 0xff000000 | gray << 16 | gray << 8 | gray : expected.getRGB(x, y);
+                assertEquals("565 at " + x + "," + y, rgb565(argb), rgb.getShort());
+                assertEquals("rgba at " + x + "," + y, (argb << 8) | (argb >>> 24), rgba.getInt());
+            }
+        }
+    }
+
+    @Test
+    public void decodesTruecolorAndAlpha() throws IOException {
+        assertDecodesLike(mapLike(BufferedImage.TYPE_INT_RGB));
+        assertDecodesLike(mapLike(BufferedImage.TYPE_INT_ARGB));
+    }
+
+    @Test
+    public void decodesGrayAndPalettes() throws IOException {
+        assertDecodesLike(mapLike(BufferedImage.TYPE_BYTE_GRAY));
+        assertDecodesLike(mapLike(BufferedImage.TYPE_BYTE_INDEXED));
+        assertDecodesLike(mapLike(BufferedImage.TYPE_BYTE_BINARY));
+    }
+
+    @Test
+    public void rejectsUnsupportedAndCorruptInput() throws IOException {
+        PngDecoder decoder = new PngDecoder();
+        ByteBuffer out = ByteBuffer.allocateDirect(SIZE * SIZE * 4);
+        byte[] jpeg = {(byte) 0xff, (byte) 0xd8, (byte) 0xff, (byte) 0xe0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0,
+                0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0};
+        assertFalse(decoder.decode(jpeg, 0, jpeg.length, out, PngDecoder.RGBA8888));
+        assertFalse("buffer too small", decoder.decode(png(mapLike(BufferedImage.TYPE_INT_RGB)), 0, 100,
+                ByteBuffer.allocateDirect(16), PngDecoder.RGB565));
+        byte[] png = png(mapLike(BufferedImage.TYPE_INT_RGB));
+        byte[] truncated = Arrays.copyOf(png, png.length / 2);
+        try {
+            decoder.decode(truncated, 0, truncated.length, out, PngDecoder.RGBA8888);
+            fail("truncated PNG decoded");
+        } catch (IOException expected) {
+        }
+    }
+
+    @Test
+    public void bufferPool_reusesReleasedBuffers() {
+        DirectBufferPool pool = new DirectBufferPool(SIZE * SIZE * 2, 2);
+        ByteBuffer first = pool.acquire();
+        assertTrue(first.isDirect());
+        assertEquals(ByteOrder.nativeOrder(), first.order());
+        first.putInt(7);
+        pool.release(first);
+        ByteBuffer again = pool.acquire();
+        assertSame(first, again);
+        assertEquals(0, again.position());
+        assertEquals(1, pool.allocatedCount());
+        pool.release(ByteBuffer.allocateDirect(8));
+        assertEquals(0, pool.size());
+    }
+}
@@ -0,0 +1,157 @@
+package com.example.maprenderer.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TessellatorTest {
+    private static final int STYLE = 0;
+
+    private static VectorMesh fill(float[][] rings) {
+        int points = 0;
+        for (float[] ring : rings) points += ring.length / 2;
+        float[] xy = new float[2 * points];
+        int[] ends = new int[rings.length];
+        int offset = 0;
+        for (int r = 0; r < rings.length; r++) {
+            System.arraycopy(rings[r], 0, xy, 2 * offset, rings[r].length);
+            offset += rings[r].length / 2;
+            ends[r] = offset;
+        }
+        VectorMesh mesh = new VectorMesh(1);
+        new Tessellator().fill(xy, ends, rings.length, STYLE, mesh);
+        return mesh;
+    }
+    private static float x(VectorMesh mesh, int index) {
+        return mesh.vertices()[(mesh.indices(STYLE)[index] & 0xffff) * VectorMesh.FLOATS_PER_VERTEX];
+    }
+    private static float y(VectorMesh mesh, int index) {
+        return mesh.vertices()[(mesh.indices(STYLE)[index] & 0xffff) * VectorMesh.FLOATS_PER_VERTEX + 1];
+    }
+    // Signed area of each triangle; all have to be counter-clockwise.
+    private static double area(VectorMesh mesh) {
+        double total = 0;
+        for (int i = 0; i < mesh.indexCount(STYLE); i += 3) {
+            double a = ((x(mesh, i + 1) - x(mesh, i)) * (y(mesh, i + 2) - y(mesh, i))
+                    - (y(mesh, i + 1) - y(mesh, i)) * (x(mesh, i + 2) - x(mesh, i))) / 2;
+            assertTrue("triangle " + i / 3 + " is clockwise", a >= 0);
+            total += a;
+        }
+        return total;
+    }
+    private static boolean covered(VectorMesh mesh, float px, float py) {
+        for (int i = 0; i < mesh.indexCount(STYLE); i += 3) {
+            float ax = x(mesh, i), ay = y(mesh, i);
+            float bx = x(mesh, i + 1), by = y(mesh, i + 1);
+            float cx = x(mesh, i + 2), cy = y(mesh, i + 2);
+            if ((bx - ax) * (py - ay) - (by - ay) * (px - ax) > 0
+                    && (cx - bx) * (py - by) - (cy - by) * (px - bx) > 0
+                    && (ax - cx) * (py - cy) - (ay - cy) * (px - cx) > 0) return true;
+        }
+        return false;
+    }
+
+    @Test
+    public void square_becomesTwoTriangles() {
+        VectorMesh mesh = fill(new float[][] { { 0, 0, 10, 0, 10, 10, 0, 10 } });
+        assertEquals(4, mesh.vertexCount());
+        assertEquals(6, mesh.indexCount(STYLE));
+        assertEquals(100, area(mesh), 1e-3);
+    }
+
+    @Test
+    public void clockwiseConcaveRing_keepsItsArea() {
+        // A comb with three teeth, wound clockwise as MVT exterior rings are after flipping y.
+        VectorMesh mesh = fill(new float[][] { { 0, 0, 0, 10, 2, 10, 2, 4, 4, 4, 4, 10, 6, 10, 6, 4, 8, 4, 8, 10, 10, 10, 10, 0 } });
+        assertEquals(100 - 2 * 6 * 2, area(mesh), 1e-3);
+        assertFalse(covered(mesh, 3, 8));
+        assertTrue(covered(mesh, 1, 8));
+    }
+
+    @Test
+    public void holes_areLeftOpen() {
+        VectorMesh mesh = fill(new float[][] {
+                { 0, 0, 20, 0, 20, 20, 0, 20 },
+                { 2, 2, 2, 8, 8, 8, 8, 2 },
+                { 12, 12, 12, 18, 18, 18, 18, 12 },
+                { 12, 2, 12, 6, 18, 6, 18, 2 } });
+        assertEquals(400 - 36 - 36 - 24, area(mesh), 1e-3);
+        assertFalse(covered(mesh, 5, 5));
+        assertFalse(covered(mesh, 15, 15));
+        assertFalse(covered(mesh, 15, 4));
+        assertTrue(covered(mesh, 10.3f, 10.7f));
+        assertTrue(covered(mesh, 15.2f, 9.3f));
+        // Each ring point becomes one vertex; bridges reuse them.
+        assertEquals(16, mesh.vertexCount());
+    }
+
+    @Test
+    public void largeRingWithHoles_isClippedInZOrder() {
+        // A comb of 30 teeth (120 points) with a small hole under each tooth.
+        int teeth = 30;
+        float[][] rings = new float[1 + teeth][];
+        float[] comb = new float[2 * 4 * teeth];
+        int i = 0;
+        comb[i++] = 0; comb[i++] = 0;
+        comb[i++] = 2 * teeth - 1; comb[i++] = 0;
+        for (int k = teeth - 1; k >= 0; k--) {
+            comb[i++] = 2 * k + 1; comb[i++] = 10;
+            comb[i++] = 2 * k; comb[i++] = 10;
+            if (k > 0) {
+                comb[i++] = 2 * k; comb[i++] = 4;
+                comb[i++] = 2 * k - 1; comb[i++] = 4;
+            }
+        }
+        rings[0] = comb;
+        for (int k = 0; k < teeth; k++) {
+            rings[1 + k] = new float[] { 2 * k + 0.25f, 1, 2 * k + 0.25f, 3, 2 * k + 0.75f, 3, 2 * k + 0.75f, 1 };
+        }
+        VectorMesh mesh = fill(rings);
+        // Counter-clockwise triangles adding up to the area only fit without overlaps.
+        assertEquals(4 * (2 * teeth - 1) + 6 * teeth - teeth, area(mesh), 1e-2);
+        assertFalse(covered(mesh, 20.5f, 2));
+        assertFalse(covered(mesh, 21.5f, 8));
+        assertTrue(covered(mesh, 20.5f, 8));
+        assertTrue(covered(mesh, 21.5f, 3.5f));
+    }
+
+    @Test
+    public void secondOuterRing_startsNewPolygon() {
+        VectorMesh mesh = fill(new float[][] {
+                { 0, 0, 4, 0, 4, 4, 0, 4 },
+                { 1, 1, 1, 3, 3, 3, 3, 1 },
+                { 10, 0, 14, 0, 14, 4, 10, 4 } });
+        assertEquals(16 - 4 + 16, area(mesh), 1e-3);
+        assertFalse(covered(mesh, 7, 2));
+    }
+
+    @Test
+    public void lines_areExtrudedWithMiteredJoins() {
+        float[] xy = { 0, 0, 10, 0, 10, 10 };
+        VectorMesh mesh = new VectorMesh(1);
+        new Tessellator().stroke(xy, new int[] { 3 }, 1, false, 2f, STYLE, mesh);
+        assertEquals(6, mesh.vertexCount());
+        assertEquals(4 * 3, mesh.indexCount(STYLE));
+        float[] v = mesh.vertices();
+        int stride = VectorMesh.FLOATS_PER_VERTEX;
+        // Start: perpendicular to the first segment, half the width on each side.
+        assertEquals(0, v[2], 1e-5);
+        assertEquals(2, v[3], 1e-5);
+        assertEquals(-2, v[stride + 3], 1e-5);
+        // Corner: along the bisector, stretched so both edges keep their width.
+        float miterX = v[2 * stride + 2];
+        float miterY = v[2 * stride + 3];
+        assertEquals(2 * Math.sqrt(2), Math.hypot(miterX, miterY), 1e-4);
+        assertEquals(-2, miterX, 1e-4);
+        assertEquals(2, miterY, 1e-4);
+    }
+
+    @Test
+    public void fullMesh_dropsFeature() {
+        VectorMesh mesh = new VectorMesh(1);
+        for (int i = 0; i < VectorMesh.MAX_VERTICES - 2; i++) mesh.addVertex(0, 0, 0, 0, STYLE);
+        new Tessellator().fill(new float[] { 0, 0, 1, 0, 1, 1, 0, 1 }, new int[] { 4 }, 1, STYLE, mesh);
+        assertEquals(1, mesh.droppedFeatures());
+        assertEquals(0, mesh.indexCount());
+    }
+}
@@ -0,0 +1,27 @@
+package com.example.maprenderer.util;
+
+import org.junit.Test;
+
+import static org.junit.Assert.*;
+
+public class TileMathTest {
+    @Test
+    public void worldEdges_mapToTileGridEdges() {
+        assertEquals(0, TileMath.tileX(-180, 15), 1e-9);
+        assertEquals(1 << 15, TileMath.tileX(180, 15), 1e-9);
+        assertEquals(0, TileMath.tileY(85.0511287798, 15), 1e-3);
+        assertEquals(1 << 15, TileMath.tileY(-85.0511287798, 15), 1e-3);
+        assertEquals(1, TileMath.tileX(0, 1), 1e-9);
+        assertEquals(1, TileMath.tileY(0, 1), 1e-9);
+    }
+
+    @Test
+    public void tileCoordinates_roundTripToDegrees() {
+        for (int zoom = 0; zoom <= 20; zoom += 5) {
+            double x = TileMath.tileX(-73.9857, zoom);
+            double y = TileMath.tileY(40.7484, zoom);
+            assertEquals(-73.9857, TileMath.longitude(x, zoom), 1e-9);
+            assertEquals(40.7484, TileMath.latitude(y, zoom), 1e-9);
+        }
+    }
+}
@@ -0,0 +1,44 @@
+package android.opengl;
+
+/**
+ * JVM stand-in for the subset of android.opengl.Matrix used by the renderer, so the per-tile
+ * matrix code can be benchmarked unchanged. Matrices are column-major float[16], as on Android.
+ */
+public class Matrix {
+    public static void setIdentityM(float[] sm, int smOffset) {
+        for (int i = 0; i < 16; i++) sm[smOffset + i] = 0;
+        for (int i = 0; i < 16; i += 5) sm[smOffset + i] = 1.0f;
+    }
+    public static void translateM(float[] m, int mOffset, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            int mi = mOffset + i;
+            m[12 + mi] += m[mi] * x + m[4 + mi] * y + m[8 + mi] * z;
+        }
+    }
+    public static void scaleM(float[] m, int mOffset, float x, float y, float z) {
+        for (int i = 0; i < 4; i++) {
+            int mi = mOffset + i;
+            m[mi] *= x;
+            m[4 + mi] *= y;
+            m[8 + mi] *= z;
+        }
+    }
+    public static void multiplyMM(float[] result, int resultOffset, float[] lhs, int lhsOffset, float[] rhs, int rhsOffset) {
+        for (int j = 0; j < 4; j++) {
+            for (int i = 0; i < 4; i++) {
+                float sum = 0;
+                for (int k = 0; k < 4; k++) sum += lhs[lhsOffset + i + 4 * k] * rhs[rhsOffset + k + 4 * j];
+                result[resultOffset + i + 4 * j] = sum;
+            }
+        }
+    }
+    public static void orthoM(float[] m, int mOffset, float left, float right, float bottom, float top, float near, float far) {
+        setIdentityM(m, mOffset);
+        m[mOffset] = 2.0f / (right - left);
+        m[mOffset + 5] = 2.0f / (top - bottom);
+        m[mOffset + 10] = -2.0f / (far - near);
+        m[mOffset + 12] = -(right + left) / (right - left);
+        m[mOffset + 13] = -(top + bottom) / (top - bottom);
+        m[mOffset + 14] = -(far + near) / (far - near);
+    }
+}
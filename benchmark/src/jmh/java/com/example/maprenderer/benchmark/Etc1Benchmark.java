@@ -0,0 +1,54 @@
+package com.example.maprenderer.benchmark;
+
+import com.example.maprenderer.util.Etc1;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * ETC1 transcoding of a 256x256 map-like tile, done once per tile on a worker thread, and the
+ * decode used to check quality.
+ */
+@State(Scope.Thread)
+public class Etc1Benchmark {
+    private static final int TILE_SIZE = 256;
+
+    private final int[] pixels = new int[TILE_SIZE * TILE_SIZE];
+    private final int[] decoded = new int[TILE_SIZE * TILE_SIZE];
+    private final byte[] blocks = new byte[Etc1.encodedSize(TILE_SIZE, TILE_SIZE)];
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(15);
+        for (int i = 0; i < pixels.length; i++) pixels[i] = 0xfff2efe9;
+        for (int area = 0; area < 12; area++) {
+            int color = 0xff000000 | (170 + random.nextInt(60)) << 16 | (200 + random.nextInt(40)) << 8 | (160 + random.nextInt(60));
+            int x0 = random.nextInt(TILE_SIZE - 64);
+            int y0 = random.nextInt(TILE_SIZE - 64);
+            for (int y = y0; y < y0 + 20 + random.nextInt(44); y++) {
+                for (int x = x0; x < x0 + 20 + random.nextInt(44); x++) pixels[y * TILE_SIZE + x] = color;
+            }
+        }
+        for (int road = 0; road < 10; road++) {
+            int y0 = random.nextInt(TILE_SIZE - 4);
+            for (int x = 0; x < TILE_SIZE; x++) pixels[y0 * TILE_SIZE + x] = 0xffffffff;
+        }
+        Etc1.encode(pixels, TILE_SIZE, TILE_SIZE, blocks, 0);
+    }
+
+    @Benchmark
+    public byte[] encode() {
+        Etc1.encode(pixels, TILE_SIZE, TILE_SIZE, blocks, 0);
+        return blocks;
+    }
+
+    @Benchmark
+    public int[] decode() {
+        Etc1.decode(blocks, 0, TILE_SIZE, TILE_SIZE, decoded);
+        return decoded;
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.maprenderer.benchmark;
+
+import android.opengl.Matrix;
+
+import com.example.maprenderer.TileBatch;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Per-frame geometry cost for an 8x8 viewport: the old drawTile (model matrix and MVP per tile,
+ * two float[16] allocations each) against filling one TileBatch vertex buffer.
+ */
+@State(Scope.Thread)
+public class MatrixBenchmark {
+    private static final int TILE_SIZE = 256;
+    private static final int TILES = 4;
+
+    private final float[] projection = new float[16];
+    private final TileBatch batch = new TileBatch(2048, TILE_SIZE);
+    private float offsetX = 37;
+    private float offsetY = -12;
+
+    @Setup
+    public void setUp() {
+        Matrix.orthoM(projection, 0, -1024, 1024, -512, 512, -1, 1);
+    }
+
+    @Benchmark
+    public void drawTile_perTileMatrices(Blackhole blackhole) {
+        for (int x = -TILES; x < TILES; x++) {
+            for (int y = -TILES; y < TILES; y++) {
+                float tileScreenX = (x * TILE_SIZE) - offsetX;
+                float tileScreenY = (-y * TILE_SIZE) + offsetY;
+                float[] tileModelMatrix = new float[16];
+                Matrix.setIdentityM(tileModelMatrix, 0);
+                Matrix.translateM(tileModelMatrix, 0, tileScreenX, tileScreenY, 0);
+                Matrix.scaleM(tileModelMatrix, 0, TILE_SIZE, TILE_SIZE, 1);
+                float[] mvpMatrix = new float[16];
+                Matrix.multiplyMM(mvpMatrix, 0, projection, 0, tileModelMatrix, 0);
+                blackhole.consume(mvpMatrix);
+            }
+        }
+    }
+
+    @Benchmark
+    public float[] tileBatch_singleBuffer() {
+        batch.reset();
+        int slot = 0;
+        for (int x = -TILES; x < TILES; x++) {
+            for (int y = -TILES; y < TILES; y++) {
+                batch.add(slot++, x * TILE_SIZE, -y * TILE_SIZE, TILE_SIZE, 0.5f, 1, 0, 0);
+            }
+        }
+        batch.finish();
+        return batch.vertices();
+    }
+}
@@ -0,0 +1,103 @@
+package com.example.maprenderer.benchmark;
+
+import com.example.maprenderer.util.DirectBufferPool;
+import com.example.maprenderer.util.PngDecoder;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.awt.BasicStroke;
+import java.awt.Color;
+import java.awt.Graphics2D;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.Random;
+
+import javax.imageio.ImageIO;
+
+/**
+ * PNG decode throughput for a 256x256 map-like tile (flat areas and roads), as true colour and as
+ * a palette image like the OSM raster tiles. PngDecoder writes into a pooled direct buffer as
+ * TileLoader does; ImageIO stands in for the BitmapFactory fallback, so its absolute numbers
+ * differ from a device and the benchmark tracks relative changes.
+ */
+@State(Scope.Thread)
+public class PngDecodeBenchmark {
+    private static final int TILE_SIZE = 256;
+
+    private final PngDecoder decoder = new PngDecoder();
+    private final DirectBufferPool rgb565Pool = new DirectBufferPool(TILE_SIZE * TILE_SIZE * PngDecoder.RGB565, 2);
+    private final DirectBufferPool rgba8888Pool = new DirectBufferPool(TILE_SIZE * TILE_SIZE * PngDecoder.RGBA8888, 2);
+    private byte[] png;
+    private byte[] palettePng;
+
+    @Setup
+    public void setUp() throws IOException {
+        BufferedImage tile = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = tile.createGraphics();
+        g.setColor(new Color(242, 239, 233));
+        g.fillRect(0, 0, TILE_SIZE, TILE_SIZE);
+        Random random = new Random(15);
+        for (int i = 0; i < 12; i++) {
+            g.setColor(new Color(170 + random.nextInt(60), 200 + random.nextInt(40), 160 + random.nextInt(60)));
+            g.fillRect(random.nextInt(TILE_SIZE), random.nextInt(TILE_SIZE), 20 + random.nextInt(80), 20 + random.nextInt(80));
+        }
+        g.setColor(Color.WHITE);
+        for (int i = 0; i < 10; i++) {
+            g.setStroke(new BasicStroke(2 + random.nextInt(6)));
+            g.drawLine(random.nextInt(TILE_SIZE), random.nextInt(TILE_SIZE), random.nextInt(TILE_SIZE), random.nextInt(TILE_SIZE));
+        }
+        g.dispose();
+        png = encode(tile);
+        BufferedImage indexed = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_BYTE_INDEXED);
+        Graphics2D gi = indexed.createGraphics();
+        gi.drawImage(tile, 0, 0, null);
+        gi.dispose();
+        palettePng = encode(indexed);
+        for (byte[] data : new byte[][] { png, palettePng }) {
+            ByteBuffer pixels = rgb565Pool.acquire();
+            boolean supported = decoder.decode(data, 0, data.length, pixels, PngDecoder.RGB565);
+            rgb565Pool.release(pixels);
+            if (!supported) throw new IllegalStateException("PngDecoder does not support the benchmark tiles");
+        }
+    }
+    private static byte[] encode(BufferedImage image) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ImageIO.write(image, "png", out);
+        return out.toByteArray();
+    }
+
+    @Benchmark
+    public BufferedImage decode() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(png));
+    }
+
+    @Benchmark
+    public int decodeRgb565() throws IOException {
+        return decodeInto(png, rgb565Pool, PngDecoder.RGB565);
+    }
+
+    @Benchmark
+    public int decodeRgba8888() throws IOException {
+        return decodeInto(png, rgba8888Pool, PngDecoder.RGBA8888);
+    }
+
+    @Benchmark
+    public int decodePaletteRgb565() throws IOException {
+        return decodeInto(palettePng, rgb565Pool, PngDecoder.RGB565);
+    }
+
+    // Acquire, decode and release like a tile worker handing the buffer to the GL thread and back.
+    private int decodeInto(byte[] data, DirectBufferPool pool, int format) throws IOException {
+        ByteBuffer pixels = pool.acquire();
+        decoder.decode(data, 0, data.length, pixels, format);
+        int first = pixels.get(0);
+        pool.release(pixels);
+        return first;
+    }
+}
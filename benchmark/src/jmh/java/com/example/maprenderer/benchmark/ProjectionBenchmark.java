@@ -0,0 +1,34 @@
+package com.example.maprenderer.benchmark;
+
+import com.example.maprenderer.util.TileMath;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.State;
+
+/** Tile to lat/lon and back, as Position.changeZoom does on every zoom step. */
+@State(Scope.Thread)
+public class ProjectionBenchmark {
+    private int x = 17696;
+    private int y = 11106;
+    private int z = 15;
+
+    @Benchmark
+    public long changeZoom_mathPow() {
+        double lon = x / Math.pow(2, z) * 360.0 - 180.0;
+        double lat = Math.toDegrees(Math.atan(Math.sinh(Math.PI - 2.0 * Math.PI * y / Math.pow(2, z))));
+        int zoom = z + 1;
+        long newX = Math.round((lon + 180) / 360 * Math.pow(2, zoom));
+        long newY = Math.round((1 - Math.log(Math.tan(Math.toRadians(lat)) +
+                1 / Math.cos(Math.toRadians(lat))) / Math.PI) / 2 * Math.pow(2, zoom));
+        return newX ^ newY;
+    }
+
+    @Benchmark
+    public long changeZoom_tileMath() {
+        double lon = TileMath.longitude(x, z);
+        double lat = TileMath.latitude(y, z);
+        int zoom = z + 1;
+        return Math.round(TileMath.tileX(lon, zoom)) ^ Math.round(TileMath.tileY(lat, zoom));
+    }
+}
@@ -0,0 +1,61 @@
+package com.example.maprenderer.benchmark;
+
+import com.example.maprenderer.TileScheduler;
+import com.example.maprenderer.util.TileKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.LinkedList;
+import java.util.Queue;
+
+/**
+ * One frame of tile request de-duplication while downloads are stalled: every visible tile is
+ * offered again. The old LinkedList.contains scan is linear in the backlog; the scheduler is not.
+ */
+@State(Scope.Thread)
+public class QueueBenchmark {
+    private static final int ZOOM = 15;
+    private static final int CENTER_X = 17696;
+    private static final int CENTER_Y = 11106;
+
+    @Param({"4", "8"})
+    public int tiles;
+
+    private final Queue<String> legacyQueue = new LinkedList<>();
+    private TileScheduler scheduler;
+
+    @Setup
+    public void setUp() {
+        scheduler = new TileScheduler(6, tiles + 2);
+        scheduler.setViewport(ZOOM, CENTER_X, CENTER_Y);
+        legacyQueue.clear();
+        frame_linkedListContains();
+        frame_scheduler();
+    }
+
+    @Benchmark
+    public int frame_linkedListContains() {
+        for (int x = -tiles; x < tiles; x++) {
+            for (int y = -tiles; y < tiles; y++) {
+                String key = ZOOM + "_" + (CENTER_X + x) + "_" + (CENTER_Y + y);
+                if (!legacyQueue.contains(key)) legacyQueue.add(key);
+            }
+        }
+        return legacyQueue.size();
+    }
+
+    @Benchmark
+    public int frame_scheduler() {
+        scheduler.setViewport(ZOOM, CENTER_X, CENTER_Y);
+        for (int x = -tiles; x < tiles; x++) {
+            for (int y = -tiles; y < tiles; y++) {
+                scheduler.request(TileKey.of(ZOOM, CENTER_X + x, CENTER_Y + y), TileScheduler.PRIORITY_VISIBLE);
+            }
+        }
+        return scheduler.pendingCount();
+    }
+}
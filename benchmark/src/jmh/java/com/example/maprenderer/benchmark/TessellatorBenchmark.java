@@ -0,0 +1,82 @@
+package com.example.maprenderer.benchmark;
+
+import com.example.maprenderer.util.Tessellator;
+import com.example.maprenderer.util.VectorMesh;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import java.util.Random;
+
+/**
+ * Vector tile tessellation on a worker thread: a ragged 1000 point water polygon with lakes cut
+ * out of it, and 60 roads of 30 points, in tile units like VectorTileBuilder produces them.
+ */
+@State(Scope.Thread)
+public class TessellatorBenchmark {
+    private static final int OUTLINE_POINTS = 1000;
+    private static final int HOLES = 8;
+    private static final int HOLE_POINTS = 40;
+    private static final int ROADS = 60;
+    private static final int ROAD_POINTS = 30;
+
+    private final Tessellator tessellator = new Tessellator();
+    private final VectorMesh mesh = new VectorMesh(1);
+    private float[] polygon;
+    private int[] ringEnds;
+    private float[] roads;
+    private int[] roadEnds;
+
+    @Setup
+    public void setUp() {
+        Random random = new Random(23);
+        polygon = new float[2 * (OUTLINE_POINTS + HOLES * HOLE_POINTS)];
+        ringEnds = new int[1 + HOLES];
+        ring(random, 0, 0, 0, 90, 120, OUTLINE_POINTS, true);
+        ringEnds[0] = OUTLINE_POINTS;
+        for (int h = 0; h < HOLES; h++) {
+            double angle = 2 * Math.PI * h / HOLES;
+            ring(random, ringEnds[h], (float) (55 * Math.cos(angle)), (float) (55 * Math.sin(angle)), 8, 16, HOLE_POINTS, false);
+            ringEnds[h + 1] = ringEnds[h] + HOLE_POINTS;
+        }
+        roads = new float[2 * ROADS * ROAD_POINTS];
+        roadEnds = new int[ROADS];
+        for (int r = 0; r < ROADS; r++) {
+            float x = -128 + random.nextFloat() * 256;
+            float y = -128 + random.nextFloat() * 256;
+            for (int i = 0; i < ROAD_POINTS; i++) {
+                x += random.nextFloat() * 8 - 4;
+                y += random.nextFloat() * 8 - 4;
+                roads[2 * (r * ROAD_POINTS + i)] = x;
+                roads[2 * (r * ROAD_POINTS + i) + 1] = y;
+            }
+            roadEnds[r] = (r + 1) * ROAD_POINTS;
+        }
+    }
+
+    private void ring(Random random, int first, float centerX, float centerY, float minRadius, float maxRadius,
+                      int points, boolean counterClockwise) {
+        for (int i = 0; i < points; i++) {
+            double angle = (counterClockwise ? 1 : -1) * 2 * Math.PI * i / points;
+            float radius = minRadius + random.nextFloat() * (maxRadius - minRadius);
+            polygon[2 * (first + i)] = centerX + (float) (radius * Math.cos(angle));
+            polygon[2 * (first + i) + 1] = centerY + (float) (radius * Math.sin(angle));
+        }
+    }
+
+    @Benchmark
+    public int fill() {
+        mesh.reset();
+        tessellator.fill(polygon, ringEnds, ringEnds.length, 0, mesh);
+        return mesh.indexCount();
+    }
+
+    @Benchmark
+    public int stroke() {
+        mesh.reset();
+        tessellator.stroke(roads, roadEnds, roadEnds.length, false, 1.5f, 0, mesh);
+        return mesh.indexCount();
+    }
+}
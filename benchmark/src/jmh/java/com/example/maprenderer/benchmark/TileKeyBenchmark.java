@@ -0,0 +1,85 @@
+package com.example.maprenderer.benchmark;
+
+import com.example.maprenderer.util.LongIntMap;
+import com.example.maprenderer.util.TileKey;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Key handling for one 8x8 viewport: the old "z_x_y" string keys against packed long keys.
+ * drawTileGrid builds and looks up every visible key, cleanupOldTextures parses every cached key.
+ */
+@State(Scope.Thread)
+public class TileKeyBenchmark {
+    private static final int ZOOM = 15;
+    private static final int CENTER_X = 17696;
+    private static final int CENTER_Y = 11106;
+    private static final int TILES = 4;
+
+    private final Map<String, Integer> stringTextures = new HashMap<>();
+    private final LongIntMap packedTextures = new LongIntMap(64, -1);
+
+    @Setup
+    public void setUp() {
+        int texture = 1;
+        for (int x = -TILES; x < TILES; x++) {
+            for (int y = -TILES; y < TILES; y++) {
+                stringTextures.put(ZOOM + "_" + (CENTER_X + x) + "_" + (CENTER_Y + y), texture);
+                packedTextures.put(TileKey.of(ZOOM, CENTER_X + x, CENTER_Y + y), texture);
+                texture++;
+            }
+        }
+    }
+
+    @Benchmark
+    public int drawTileGrid_stringKeys() {
+        int sum = 0;
+        for (int x = -TILES; x < TILES; x++) {
+            for (int y = -TILES; y < TILES; y++) {
+                String key = ZOOM + "_" + (CENTER_X + x) + "_" + (CENTER_Y + y);
+                sum += stringTextures.getOrDefault(key, -1);
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public int drawTileGrid_packedKeys() {
+        int sum = 0;
+        for (int x = -TILES; x < TILES; x++) {
+            for (int y = -TILES; y < TILES; y++) {
+                sum += packedTextures.get(TileKey.of(ZOOM, CENTER_X + x, CENTER_Y + y));
+            }
+        }
+        return sum;
+    }
+
+    @Benchmark
+    public void cleanup_stringKeys(Blackhole blackhole) {
+        for (String key : stringTextures.keySet()) {
+            String[] parts = key.split("_");
+            int zoom = Integer.parseInt(parts[0]);
+            int tileX = Integer.parseInt(parts[1]);
+            int tileY = Integer.parseInt(parts[2]);
+            blackhole.consume(zoom);
+            blackhole.consume(Math.abs(tileX - CENTER_X) > TILES + 2 || Math.abs(tileY - CENTER_Y) > TILES + 2);
+        }
+    }
+
+    @Benchmark
+    public void cleanup_packedKeys(Blackhole blackhole) {
+        for (int slot = 0; slot < packedTextures.capacity(); slot++) {
+            long key = packedTextures.keyAt(slot);
+            if (key == LongIntMap.EMPTY_KEY) continue;
+            blackhole.consume(TileKey.zoom(key));
+            blackhole.consume(Math.abs(TileKey.x(key) - CENTER_X) > TILES + 2 || Math.abs(TileKey.y(key) - CENTER_Y) > TILES + 2);
+        }
+    }
+}